@@ -0,0 +1,9 @@
+#!/bin/sh
+# Verifica codarea binara a cadrelor (PacketCodec): fiecare tip de cadru,
+# mesaje trunchiate, tipuri necunoscute. Iese cu codul 1 la o eroare.
+# Exemplu: ./codec.sh
+cd "$(dirname "$0")" || exit 1
+if [ ! -d target/classes ]; then
+	mvn -B -q package || exit 1
+fi
+exec java -cp "target/classes" checkers.bench.CodecCheck "$@"
@@ -0,0 +1,9 @@
+#!/bin/sh
+# Verifica generatorul de mutari (numarul de frunze pe pozitiile de test) si
+# afiseaza nodurile pe secunda. Iese cu codul 1 la o nepotrivire.
+# Exemplu: ./perft.sh 9
+cd "$(dirname "$0")" || exit 1
+if [ ! -d target/classes ]; then
+	mvn -B -q package || exit 1
+fi
+exec java -cp "target/classes" checkers.bench.PerftCheck "$@"
@@ -0,0 +1,10 @@
+#!/bin/sh
+# Ruleaza masuratorile JMH si scrie rezultatele (JSON) in results/.
+# Exemplu: ./run.sh EventListenerList -p listeners=4
+cd "$(dirname "$0")" || exit 1
+if [ ! -d target/classes ]; then
+	mvn -B -q package || exit 1
+fi
+mkdir -p results
+exec java -cp "target/classes:target/lib/*:../lib/peerdroid-1.1.jar" org.openjdk.jmh.Main \
+	-rf json -rff "results/$(date +%Y%m%d-%H%M%S).json" "$@"
@@ -0,0 +1,9 @@
+#!/bin/sh
+# Compara marimea unei mutari in formatul vechi (elemente text) si in cadrele
+# binare (PacketCodec), in octeti trimisi prin retea.
+# Exemplu: ./size.sh 60
+cd "$(dirname "$0")" || exit 1
+if [ ! -d target/classes ]; then
+	mvn -B -q package || exit 1
+fi
+exec java -cp "target/classes:../lib/peerdroid-1.1.jar" checkers.bench.MessageSizeCheck "$@"
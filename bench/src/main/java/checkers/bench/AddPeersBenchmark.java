@@ -0,0 +1,118 @@
+package checkers.bench;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.jxta.id.IDFactory;
+import net.jxta.peergroup.PeerGroupID;
+import net.jxta.protocol.PeerAdvertisement;
+
+import checkers.p2p.Dispatcher;
+import checkers.p2p.JxtaTransport;
+import checkers.p2p.LoopbackNetwork;
+import checkers.p2p.Peers;
+
+/**
+ * Costul adaugarii in lista a partenerilor dintr-un raspuns de descoperire
+ * mare: parteneri noi (lista golita inainte de fiecare apel) si parteneri
+ * deja cunoscuti, cazul obisnuit la cautarile repetate.
+ * 
+ * Variantele add* dau lista gata facuta lui {@link Peers#peersFound}; cele
+ * search* trec si prin {@link JxtaTransport}, care parcurge enumerarea de
+ * advertisement-uri intoarsa de cache-ul local (un serviciu de descoperire
+ * fals, din {@link JxtaStubs}).
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddPeersBenchmark
+{
+	@Param({ "100", "1000", "10000" })
+	public int count;
+
+	private Peers fresh, known, cachedFresh, cachedKnown;
+	private HashMap<String, String> found;
+
+	@Setup
+	public void setup()
+	{
+		List<PeerAdvertisement> advs = JxtaStubs.peerAdvertisements(count);
+		found = new HashMap<String, String>();
+		for (PeerAdvertisement adv : advs)
+		{
+			found.put(adv.getPeerID().toString(), adv.getName());
+		}
+		LoopbackNetwork network = new LoopbackNetwork();
+		fresh = new Peers(network.createTransport("fresh"), Dispatcher.getShared());
+		known = new Peers(network.createTransport("known"), Dispatcher.getShared());
+		known.peersFound(found, true);
+
+		String pipeId = IDFactory.newPipeID(PeerGroupID.defaultNetPeerGroupID).toString();
+		cachedFresh = new Peers(JxtaStubs.peerGroup("fresh", advs), pipeId, "bench", Dispatcher.getShared());
+		cachedKnown = new Peers(JxtaStubs.peerGroup("known", advs), pipeId, "bench", Dispatcher.getShared());
+		// JxtaTransport trimite partenerii gasiti doar dupa pornire
+		cachedFresh.start();
+		cachedKnown.start();
+		cachedKnown.search(null, 0);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		cachedFresh.stop();
+		cachedKnown.stop();
+	}
+
+	@Setup(Level.Invocation)
+	public void clear()
+	{
+		fresh.flush();
+		cachedFresh.flush();
+	}
+
+	@Benchmark
+	public void addNew()
+	{
+		fresh.peersFound(found, true);
+	}
+
+	@Benchmark
+	public void refreshKnown()
+	{
+		known.peersFound(found, true);
+	}
+
+	@Benchmark
+	public void searchNew()
+	{
+		// maxPeers 0: doar cautarea in cache-ul local
+		cachedFresh.search(null, 0);
+	}
+
+	@Benchmark
+	public void searchKnown()
+	{
+		cachedKnown.search(null, 0);
+	}
+}
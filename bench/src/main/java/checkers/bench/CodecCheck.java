@@ -0,0 +1,199 @@
+package checkers.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import checkers.p2p.Packet;
+import checkers.p2p.PacketCodec;
+
+/**
+ * Verifica {@link PacketCodec}: fiecare tip de cadru, cu si fara cerere de
+ * confirmare, trebuie sa iasa din decode exact cum a intrat in encode. Se mai
+ * verifica mesajele trunchiate (decode arunca IOException sau intoarce doar
+ * cadrele complete), cadrele cu un tip necunoscut (sunt sarite), campurile
+ * necunoscute de la sfarsitul unui cadru (sunt ignorate) si o versiune
+ * necunoscuta (este refuzata).
+ * 
+ * Rulat cu codec.sh, afiseaza fiecare verificare si iese cu codul 1 daca
+ * vreuna a esuat.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class CodecCheck
+{
+	private final static String ID_A = "urn:jxta:uuid-59616261646162614E50472050325033A1";
+	private final static String ID_B = "urn:jxta:uuid-59616261646162614E50472050325033B2";
+
+	private static boolean ok = true;
+
+	private CodecCheck()
+	{
+	}
+
+	/**
+	 * @return un cadru din fiecare tip, cu valori la limita (siruri goale si
+	 *         diacritice, numere negative si mari)
+	 */
+	private static List<Packet> samples()
+	{
+		List<Packet> list = new ArrayList<Packet>();
+		list.add(Packet.full(-7, ID_A, "Octa", ID_B, "\u0011AB"));
+		list.add(Packet.full(0, ID_A, "", ID_B, ""));
+		list.add(Packet.full(Integer.MAX_VALUE, ID_B, "\u0218tefan", ID_A, "mutare \u021b"));
+		list.add(Packet.handle(123456789, ID_B, ID_A, 1));
+		list.add(Packet.handle(-1, ID_A, ID_B, Integer.MAX_VALUE));
+		list.add(Packet.data(42, 7, "x"));
+		list.add(Packet.data(Integer.MIN_VALUE, 300, ""));
+		list.add(Packet.ack(5, ID_A, new int[] { 1, 2, 128, 70000 }));
+		list.add(Packet.ack(5, ID_B, new int[0]));
+		list.add(Packet.heartbeat(99, ID_A, "Octa"));
+		list.add(Packet.flow(-99, ID_B, ID_A, 250));
+		list.add(Packet.flow(1, ID_A, ID_B, 0));
+		return list;
+	}
+
+	/**
+	 * @return toate campurile cadrului, pentru comparare
+	 */
+	private static String describe(Packet p)
+	{
+		return p.getType() + "/" + p.getFlags() + "/" + p.getSeq() + "/" + p.getEpoch() + "/" + p.getHandle() + "/"
+				+ p.getPause() + "/" + Arrays.toString(p.getAcks()) + "/" + p.getSenderID() + "/" + p.getSenderName()
+				+ "/" + p.getReceiverID() + "/" + p.getData();
+	}
+
+	private static void check(String name, boolean condition)
+	{
+		ok &= condition;
+		System.out.println(name + (condition ? ": corect" : ": GRESIT"));
+	}
+
+	private static boolean same(List<Packet> expected, List<Packet> actual, int count)
+	{
+		if (actual.size() != count) return false;
+		for (int i = 0; i < count; i++)
+		{
+			if (!describe(expected.get(i)).equals(describe(actual.get(i)))) return false;
+		}
+		return true;
+	}
+
+	private static byte[] prefix(byte[] bytes, int length)
+	{
+		byte[] result = new byte[length];
+		System.arraycopy(bytes, 0, result, 0, Math.min(length, bytes.length));
+		return result;
+	}
+
+	private static void roundTrips() throws IOException
+	{
+		List<Packet> plain = samples();
+		for (int i = 0; i < plain.size(); i++)
+		{
+			Packet p = plain.get(i);
+			List<Packet> decoded = PacketCodec.decode(PacketCodec.encode(p));
+			check("cadrul " + i + " (tip " + p.getType() + ")", decoded.size() == 1
+					&& describe(decoded.get(0)).equals(describe(p)));
+		}
+
+		List<Packet> acked = samples();
+		int seq = 1;
+		for (Packet p : acked)
+		{
+			if (p.getType() == Packet.FULL || p.getType() == Packet.DATA) p.requestAck(seq++ * 1000);
+		}
+		check("cadre cu confirmare", same(acked, PacketCodec.decode(PacketCodec.encode(acked)), acked.size()));
+	}
+
+	private static void truncated()
+	{
+		List<Packet> packets = samples();
+		byte[] bytes = PacketCodec.encode(packets);
+		boolean good = true;
+		for (int length = 0; length < bytes.length; length++)
+		{
+			try
+			{
+				List<Packet> decoded = PacketCodec.decode(prefix(bytes, length));
+				// taietura a cazut intre doua cadre
+				good &= same(packets, decoded, decoded.size()) && decoded.size() < packets.size();
+			}
+			catch (IOException e)
+			{
+				// asteptat
+			}
+			catch (RuntimeException e)
+			{
+				good = false;
+				System.out.println("lungime " + length + ": " + e);
+			}
+		}
+		check("mesaje trunchiate (" + bytes.length + " lungimi)", good);
+	}
+
+	private static void unknownType() throws IOException
+	{
+		Packet known = Packet.data(3, 4, "dupa");
+		byte[] tail = PacketCodec.encode(known);
+		// [versiune][lungime 4][tip 99][flags 0][2 octeti] + cadrul cunoscut
+		byte[] bytes = new byte[6 + tail.length - 1];
+		bytes[0] = (byte) PacketCodec.VERSION;
+		bytes[1] = 4;
+		bytes[2] = 99;
+		bytes[3] = 0;
+		bytes[4] = 1;
+		bytes[5] = 2;
+		System.arraycopy(tail, 1, bytes, 6, tail.length - 1);
+		List<Packet> decoded = PacketCodec.decode(bytes);
+		check("tip necunoscut sarit", decoded.size() == 1 && describe(decoded.get(0)).equals(describe(known)));
+	}
+
+	private static void trailingFields() throws IOException
+	{
+		Packet known = Packet.heartbeat(8, ID_A, "Octa");
+		byte[] bytes = PacketCodec.encode(known);
+		// cadrul are sub 127 octeti, deci lungimea este un singur octet
+		byte[] longer = prefix(bytes, bytes.length + 3);
+		longer[1] = (byte) (bytes[1] + 3);
+		List<Packet> decoded = PacketCodec.decode(longer);
+		check("campuri noi la sfarsitul cadrului ignorate", decoded.size() == 1
+				&& describe(decoded.get(0)).equals(describe(known)));
+	}
+
+	private static void unknownVersion()
+	{
+		byte[] bytes = PacketCodec.encode(Packet.data(1, 1, "x"));
+		bytes[0] = (byte) (PacketCodec.VERSION + 1);
+		boolean refused;
+		try
+		{
+			PacketCodec.decode(bytes);
+			refused = false;
+		}
+		catch (IOException e)
+		{
+			refused = true;
+		}
+		check("versiune necunoscuta refuzata", refused);
+	}
+
+	/**
+	 * Ruleaza toate verificarile.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		roundTrips();
+		truncated();
+		unknownType();
+		trailingFields();
+		unknownVersion();
+		if (!ok)
+		{
+			System.out.println("au aparut erori");
+			System.exit(1);
+		}
+	}
+}
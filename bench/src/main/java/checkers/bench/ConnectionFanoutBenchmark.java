@@ -0,0 +1,67 @@
+package checkers.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import checkers.p2p.Connection;
+import checkers.p2p.event.P2PEvent;
+import checkers.p2p.event.P2PListener;
+
+/**
+ * Costul retrimiterii unui mesaj primit catre listenerii conexiunii, prin
+ * {@link Connection#stateChanged(P2PEvent)}. Reteaua JXTA nu este pornita.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionFanoutBenchmark
+{
+	@Param({ "1", "4", "16" })
+	public int listeners;
+
+	private Connection connection;
+	private P2PEvent received;
+
+	@Setup
+	public void setup(final Blackhole bh) throws IOException
+	{
+		File cache = new File(System.getProperty("java.io.tmpdir"), "joc-dame-bench");
+		connection = new Connection("bench", cache);
+		for (int i = 0; i < listeners; i++)
+		{
+			connection.addP2PListener(new P2PListener() {
+				public void stateChanged(P2PEvent event)
+				{
+					bh.consume(event);
+				}
+			});
+		}
+		received = new P2PEvent(this, P2PEvent.MESSAGE_RECEIVED, "urn:jxta:uuid-00", "Player", "m 11-15");
+	}
+
+	@Benchmark
+	public void messageReceived()
+	{
+		connection.stateChanged(received);
+	}
+}
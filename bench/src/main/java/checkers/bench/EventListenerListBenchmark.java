@@ -0,0 +1,92 @@
+package checkers.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import checkers.p2p.event.EventListenerList;
+import checkers.p2p.event.P2PEvent;
+import checkers.p2p.event.P2PListener;
+
+/**
+ * Costul inregistrarii listenerilor si al notificarii lor prin
+ * {@link EventListenerList}: copia nemodificabila folosita de metodele fire*
+ * si, pentru comparatie, vechiul {@link EventListenerList#getListeners(Class)}.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventListenerListBenchmark
+{
+	@Param({ "1", "4", "16" })
+	public int listeners;
+
+	private EventListenerList list;
+	private P2PEvent event;
+	private P2PListener extra;
+
+	@Setup
+	public void setup(final Blackhole bh)
+	{
+		list = new EventListenerList();
+		for (int i = 0; i < listeners; i++)
+		{
+			list.add(P2PListener.class, new P2PListener() {
+				public void stateChanged(P2PEvent event)
+				{
+					bh.consume(event);
+				}
+			});
+		}
+		extra = new P2PListener() {
+			public void stateChanged(P2PEvent event)
+			{
+			}
+		};
+		event = new P2PEvent(this, P2PEvent.MESSAGE_RECEIVED, "id", "name", "data");
+	}
+
+	@Benchmark
+	public void fire()
+	{
+		P2PListener[] ls = list.getSnapshot(P2PListener.class);
+		for (int i = ls.length - 1; i >= 0; --i)
+		{
+			ls[i].stateChanged(event);
+		}
+	}
+
+	@Benchmark
+	public void fireWithGetListeners()
+	{
+		P2PListener[] ls = list.getListeners(P2PListener.class);
+		for (int i = ls.length - 1; i >= 0; --i)
+		{
+			ls[i].stateChanged(event);
+		}
+	}
+
+	@Benchmark
+	public void addRemove()
+	{
+		list.add(P2PListener.class, extra);
+		list.remove(P2PListener.class, extra);
+	}
+}
@@ -0,0 +1,141 @@
+package checkers.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.jxta.discovery.DiscoveryService;
+import net.jxta.document.Advertisement;
+import net.jxta.document.AdvertisementFactory;
+import net.jxta.id.IDFactory;
+import net.jxta.peer.PeerID;
+import net.jxta.peergroup.PeerGroup;
+import net.jxta.peergroup.PeerGroupID;
+import net.jxta.pipe.PipeService;
+import net.jxta.protocol.PeerAdvertisement;
+
+/**
+ * Servicii JXTA false pentru masuratori: un grup care nu porneste reteaua,
+ * un serviciu de descoperire cu un cache fix si un serviciu de pipe-uri care
+ * nu face nimic. Sunt suficiente pentru a construi {@link checkers.p2p.Peers}
+ * pe un JVM obisnuit.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public final class JxtaStubs
+{
+	private JxtaStubs()
+	{
+	}
+
+	/**
+	 * @param peerName numele partenerului local
+	 * @param cache advertisement-urile intoarse de fiecare cautare locala
+	 * @return un grup fals, cu un id de partener nou
+	 */
+	public static PeerGroup peerGroup(final String peerName, final List<? extends Advertisement> cache)
+	{
+		final PeerGroupID groupID = PeerGroupID.defaultNetPeerGroupID;
+		final PeerID peerID = IDFactory.newPeerID(groupID);
+		final PeerAdvertisement peerAdv = peerAdvertisement(peerID, peerName);
+		final DiscoveryService discovery = stub(DiscoveryService.class, new Answer() {
+			public Object answer(Method m, Object[] args)
+			{
+				if (m.getName().equals("getLocalAdvertisements"))
+				{
+					return Collections.enumeration(cache);
+				}
+				return null;
+			}
+		});
+		final PipeService pipes = stub(PipeService.class, null);
+
+		return stub(PeerGroup.class, new Answer() {
+			public Object answer(Method m, Object[] args)
+			{
+				String name = m.getName();
+				if (name.equals("getDiscoveryService")) return discovery;
+				if (name.equals("getPipeService")) return pipes;
+				if (name.equals("getPeerID")) return peerID;
+				if (name.equals("getPeerGroupID")) return groupID;
+				if (name.equals("getPeerName")) return peerName;
+				if (name.equals("getPeerAdvertisement")) return peerAdv;
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @param count
+	 * @return count advertisement-uri de parteneri, cu id-uri si nume diferite
+	 */
+	public static List<PeerAdvertisement> peerAdvertisements(int count)
+	{
+		List<PeerAdvertisement> advs = new ArrayList<PeerAdvertisement>(count);
+		for (int i = 0; i < count; i++)
+		{
+			PeerID id = IDFactory.newPeerID(PeerGroupID.defaultNetPeerGroupID);
+			advs.add(peerAdvertisement(id, "Player" + i));
+		}
+		return advs;
+	}
+
+	private static PeerAdvertisement peerAdvertisement(PeerID peerID, String name)
+	{
+		PeerAdvertisement adv = (PeerAdvertisement) AdvertisementFactory.newAdvertisement(PeerAdvertisement
+				.getAdvertisementType());
+		adv.setPeerID(peerID);
+		adv.setPeerGroupID(PeerGroupID.defaultNetPeerGroupID);
+		adv.setName(name);
+		return adv;
+	}
+
+	/**
+	 * Raspunsul unui obiect fals la un apel.
+	 */
+	private interface Answer
+	{
+		public Object answer(Method m, Object[] args);
+	}
+
+	/**
+	 * Creeaza un obiect fals care implementeaza interfata data. Metodele fara
+	 * raspuns intorc null, 0 sau false.
+	 */
+	private static <T> T stub(Class<T> type, final Answer answer)
+	{
+		Object proxy = Proxy.newProxyInstance(JxtaStubs.class.getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					public Object invoke(Object self, Method m, Object[] args)
+					{
+						if (m.getName().equals("hashCode")) return Integer.valueOf(System.identityHashCode(self));
+						if (m.getName().equals("equals")) return Boolean.valueOf(self == args[0]);
+						if (m.getName().equals("toString")) return "stub " + m.getDeclaringClass().getSimpleName();
+						Object result = (answer == null) ? null : answer.answer(m, args);
+						if (result == null && m.getReturnType().isPrimitive())
+						{
+							return defaultValue(m.getReturnType());
+						}
+						return result;
+					}
+				});
+		return type.cast(proxy);
+	}
+
+	private static Object defaultValue(Class<?> type)
+	{
+		if (type == boolean.class) return Boolean.FALSE;
+		if (type == void.class) return null;
+		if (type == long.class) return Long.valueOf(0);
+		if (type == int.class) return Integer.valueOf(0);
+		if (type == short.class) return Short.valueOf((short) 0);
+		if (type == byte.class) return Byte.valueOf((byte) 0);
+		if (type == char.class) return Character.valueOf((char) 0);
+		if (type == float.class) return Float.valueOf(0);
+		return Double.valueOf(0);
+	}
+}
@@ -0,0 +1,121 @@
+package checkers.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.ByteArrayMessageElement;
+import net.jxta.endpoint.Message;
+import net.jxta.endpoint.MessageElement;
+import net.jxta.endpoint.StringMessageElement;
+
+import checkers.p2p.Packet;
+import checkers.p2p.PacketCodec;
+
+/**
+ * Costul codarii si decodarii unei mutari, cu aceiasi pasi ca
+ * {@code Peers.sendMessage} si {@code Peers.pipeMsgEvent}: formatul vechi cu
+ * patru elemente text si formatul binar (cadru FULL pentru primul mesaj,
+ * cadru DATA pentru urmatoarele).
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark
+{
+	final static String SENDER = "urn:jxta:uuid-59616261646162614E50472050325033CA0C951EAD6D4F8ABF09CC0ED2DFF97803";
+	final static String RECEIVER = "urn:jxta:uuid-59616261646162614E504720503250337B3F5E21C6A64E0C9D4B7AF1E6A3C29A03";
+	final static String MOVE = "m 11-15";
+
+	private Message legacy, compactFull, compactData;
+
+	@Setup
+	public void setup()
+	{
+		legacy = encodeLegacy();
+		compactFull = wrap(PacketCodec.encode(Packet.full(7, SENDER, "Player", RECEIVER, MOVE)));
+		compactData = wrap(PacketCodec.encode(Packet.data(7, 3, MOVE)));
+	}
+
+	/**
+	 * @return mutarea in formatul vechi, cum o trimitea Peers.sendMessage
+	 */
+	static Message encodeLegacy()
+	{
+		Message msg = new Message();
+		msg.addMessageElement(null, new StringMessageElement("SenderID", SENDER, null));
+		msg.addMessageElement(null, new StringMessageElement("SenderName", "Player", null));
+		msg.addMessageElement(null, new StringMessageElement("ReceiverID", RECEIVER, null));
+		msg.addMessageElement(null, new StringMessageElement("Data", MOVE, null));
+		return msg;
+	}
+
+	/**
+	 * @return cadrele codate, in elementul trimis de JxtaTransport
+	 */
+	static Message wrap(byte[] bytes)
+	{
+		Message msg = new Message();
+		msg.addMessageElement(null, new ByteArrayMessageElement("Packet", MimeMediaType.AOS, bytes, null));
+		return msg;
+	}
+
+	@Benchmark
+	public Message encodeLegacyMessage()
+	{
+		return encodeLegacy();
+	}
+
+	@Benchmark
+	public Message encodeFull()
+	{
+		return wrap(PacketCodec.encode(Packet.full(7, SENDER, "Player", RECEIVER, MOVE)));
+	}
+
+	@Benchmark
+	public Message encodeData()
+	{
+		return wrap(PacketCodec.encode(Packet.data(7, 3, MOVE)));
+	}
+
+	@Benchmark
+	public void decodeLegacyMessage(Blackhole bh)
+	{
+		MessageElement receiverID = legacy.getMessageElement(null, "ReceiverID");
+		bh.consume(receiverID.toString().equals(RECEIVER));
+		bh.consume(legacy.getMessageElement(null, "SenderID").toString());
+		bh.consume(legacy.getMessageElement(null, "SenderName").toString());
+		bh.consume(legacy.getMessageElement(null, "Data").toString());
+	}
+
+	@Benchmark
+	public List<Packet> decodeFull() throws IOException
+	{
+		return PacketCodec.decode(compactFull.getMessageElement(null, "Packet").getBytes(false));
+	}
+
+	@Benchmark
+	public List<Packet> decodeData() throws IOException
+	{
+		return PacketCodec.decode(compactData.getMessageElement(null, "Packet").getBytes(false));
+	}
+}
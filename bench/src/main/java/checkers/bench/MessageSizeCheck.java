@@ -0,0 +1,77 @@
+package checkers.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.Message;
+import net.jxta.impl.endpoint.WireFormatMessageFactory;
+
+import checkers.p2p.Packet;
+import checkers.p2p.PacketCodec;
+
+/**
+ * Compara marimea unei mutari in formatul vechi (patru elemente text) cu
+ * formatul binar, pentru aceleasi mesaje ca {@link MessageCodecBenchmark}. Se
+ * afiseaza atat continutul elementelor, cat si mesajul JXTA intreg, in
+ * formatul binar de transmisie; rezultatul nu depinde de masina.
+ * 
+ * Rulat cu size.sh; cu un argument, numarul de mutari dintr-un joc (implicit
+ * 40).
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class MessageSizeCheck
+{
+	private final static MimeMediaType WIRE = new MimeMediaType("application/x-jxta-msg");
+
+	private MessageSizeCheck()
+	{
+	}
+
+	/**
+	 * @return octetii mesajului, asa cum sunt trimisi prin retea
+	 */
+	private static long wire(Message msg)
+	{
+		return WireFormatMessageFactory.toWire(msg, WIRE, null).getByteLength();
+	}
+
+	private static void print(String name, long payload, long wire, long legacyWire)
+	{
+		System.out.println(String.format("%-26s %8d %8d %7.1f%%", name, payload, wire, 100.0 * wire / legacyWire));
+	}
+
+	public static void main(String[] args)
+	{
+		int moves = (args.length > 0) ? Integer.parseInt(args[0]) : 40;
+
+		String legacyPayload = MessageCodecBenchmark.SENDER + "Player" + MessageCodecBenchmark.RECEIVER
+				+ MessageCodecBenchmark.MOVE;
+		long legacy = wire(MessageCodecBenchmark.encodeLegacy());
+
+		byte[] full = PacketCodec.encode(Packet.full(7, MessageCodecBenchmark.SENDER, "Player",
+				MessageCodecBenchmark.RECEIVER, MessageCodecBenchmark.MOVE));
+		byte[] data = PacketCodec.encode(Packet.data(7, 3, MessageCodecBenchmark.MOVE));
+		byte[] reliable = PacketCodec.encode(Packet.data(7, 3, MessageCodecBenchmark.MOVE).requestAck(moves));
+		List<Packet> batch = new ArrayList<Packet>();
+		for (int i = 0; i < 4; i++)
+		{
+			batch.add(Packet.data(7, 3, MessageCodecBenchmark.MOVE));
+		}
+		byte[] batched = PacketCodec.encode(batch);
+
+		System.out.println(String.format("%-26s %8s %8s %8s", "mesaj", "continut", "retea", "fata de"));
+		print("vechi (4 elemente text)", legacyPayload.length(), legacy, legacy);
+		print("FULL (primul mesaj)", full.length, wire(MessageCodecBenchmark.wrap(full)), legacy);
+		print("DATA", data.length, wire(MessageCodecBenchmark.wrap(data)), legacy);
+		print("DATA cu confirmare", reliable.length, wire(MessageCodecBenchmark.wrap(reliable)), legacy);
+		print("4 x DATA intr-un mesaj", batched.length, wire(MessageCodecBenchmark.wrap(batched)), legacy);
+
+		long before = legacy * moves;
+		long after = wire(MessageCodecBenchmark.wrap(full)) + wire(MessageCodecBenchmark.wrap(reliable)) * (moves - 1);
+		System.out.println(String.format("joc de %d mutari: %d octeti in formatul vechi, %d cu cadre (%.1f%%)", moves,
+				before, after, 100.0 * after / before));
+	}
+}
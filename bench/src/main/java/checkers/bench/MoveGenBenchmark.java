@@ -0,0 +1,120 @@
+package checkers.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import checkers.game.MoveCodec;
+import checkers.game.MoveList;
+import checkers.game.Perft;
+import checkers.game.Position;
+
+/**
+ * Costul unei generari de mutari, al unei perechi make/unmake si al
+ * validarii unei mutari primite ({@link MoveCodec#decode}), pe pozitiile
+ * intalnite in primele 4 mutari de la fiecare pozitie de test a lui
+ * {@link Perft}.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenBenchmark
+{
+	private final static int SAMPLE_DEPTH = 4;
+
+	private Position[] positions;
+	private long[] moves;
+	private String[] messages;
+	private MoveList list;
+	private int next;
+
+	@Setup
+	public void setup()
+	{
+		List<Position> found = new ArrayList<Position>();
+		for (int c = 0; c < Perft.getCaseCount(); c++)
+		{
+			collect(Perft.getPosition(c), SAMPLE_DEPTH, found);
+		}
+		positions = new Position[found.size()];
+		moves = new long[found.size()];
+		messages = new String[found.size()];
+		list = new MoveList();
+		int n = 0;
+		for (Position p : found)
+		{
+			list.clear();
+			if (p.generate(list) == 0) continue;
+			// o mutare din mijlocul listei, ca sa nu fie mereu prima
+			positions[n] = p;
+			moves[n] = list.get(list.size() / 2);
+			messages[n] = MoveCodec.encode(p, moves[n]);
+			n++;
+		}
+		Position[] p = new Position[n];
+		System.arraycopy(positions, 0, p, 0, n);
+		positions = p;
+	}
+
+	private static void collect(Position position, int depth, List<Position> found)
+	{
+		found.add(new Position(position));
+		if (depth == 0) return;
+		MoveList list = new MoveList();
+		position.generate(list);
+		for (int i = 0; i < list.size(); i++)
+		{
+			position.make(list.get(i));
+			collect(position, depth - 1, found);
+			position.unmake(list.get(i));
+		}
+	}
+
+	private int nextIndex()
+	{
+		int i = next;
+		next = (i + 1 == positions.length) ? 0 : i + 1;
+		return i;
+	}
+
+	@Benchmark
+	public int generate()
+	{
+		list.clear();
+		return positions[nextIndex()].generate(list);
+	}
+
+	@Benchmark
+	public void makeUnmake(Blackhole bh)
+	{
+		int i = nextIndex();
+		positions[i].make(moves[i]);
+		bh.consume(positions[i].getSide());
+		positions[i].unmake(moves[i]);
+	}
+
+	@Benchmark
+	public long decode()
+	{
+		int i = nextIndex();
+		return MoveCodec.decode(positions[i], messages[i]);
+	}
+}
@@ -0,0 +1,87 @@
+package checkers.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import checkers.game.Perft;
+
+/**
+ * Viteza generatorului de mutari masurata cu {@link Perft}, pe pozitiile de
+ * test ale clasei. Pe langa numarul de rulari pe secunda, JMH raporteaza
+ * contorul "nodes", adica nodurile pe secunda. Inainte de masurare se
+ * verifica numarul de frunze, deci un generator gresit nu ajunge sa fie
+ * masurat.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PerftBenchmark
+{
+	@Param({ "start", "kings", "jumps", "midgame" })
+	public String position;
+
+	@Param({ "6" })
+	public int depth;
+
+	/**
+	 * Nodurile numarate intr-o iteratie.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Nodes
+	{
+		public long nodes;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			nodes = 0;
+		}
+	}
+
+	private Perft perft;
+
+	@Setup
+	public void setup()
+	{
+		int index = Perft.findCase(position);
+		if (index < 0 || depth > Perft.getMaxDepth(index))
+		{
+			throw new IllegalArgumentException("Pozitie sau adancime necunoscuta: " + position + " " + depth);
+		}
+		perft = new Perft(Perft.getPosition(index));
+		long nodes = perft.run(depth);
+		if (nodes != Perft.getExpected(index, depth))
+		{
+			throw new IllegalStateException(position + " adancime " + depth + ": " + nodes + " noduri, trebuia "
+					+ Perft.getExpected(index, depth));
+		}
+	}
+
+	@Benchmark
+	public long perft(Nodes counter)
+	{
+		long nodes = perft.run(depth);
+		counter.nodes += nodes;
+		return nodes;
+	}
+}
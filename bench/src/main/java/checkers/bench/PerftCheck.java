@@ -0,0 +1,50 @@
+package checkers.bench;
+
+import checkers.game.Perft;
+
+/**
+ * Verifica toate pozitiile de test din {@link Perft} pana la o adancime data
+ * si afiseaza nodurile pe secunda.
+ * 
+ * Rulat cu perft.sh [adancime], iese cu codul 1 daca vreun numar nu se
+ * potriveste.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class PerftCheck
+{
+	private PerftCheck()
+	{
+	}
+
+	/**
+	 * @param args [adancime maxima], implicit 7
+	 */
+	public static void main(String[] args)
+	{
+		int maxDepth = (args.length > 0) ? Integer.parseInt(args[0]) : 7;
+		boolean ok = true;
+		long totalNodes = 0, totalTime = 0;
+		for (int c = 0; c < Perft.getCaseCount(); c++)
+		{
+			Perft perft = new Perft(Perft.getPosition(c));
+			int last = Math.min(maxDepth, Perft.getMaxDepth(c));
+			for (int depth = 1; depth <= last; depth++)
+			{
+				long start = System.nanoTime();
+				long nodes = perft.run(depth);
+				long time = System.nanoTime() - start;
+				totalNodes += nodes;
+				totalTime += time;
+				boolean match = nodes == Perft.getExpected(c, depth);
+				ok &= match;
+				System.out.println(Perft.getName(c) + " adancime " + depth + ": " + nodes + " noduri, "
+						+ (time / 1000000) + " ms" + (match ? "" : " GRESIT, trebuia " + Perft.getExpected(c, depth)));
+			}
+		}
+		long rate = (totalTime == 0) ? 0 : totalNodes * 1000000000L / totalTime;
+		System.out.println(totalNodes + " noduri, " + rate + " noduri/s" + (ok ? "" : ", au aparut erori"));
+		if (!ok) System.exit(1);
+	}
+}
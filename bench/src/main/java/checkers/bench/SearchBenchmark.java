@@ -0,0 +1,87 @@
+package checkers.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import checkers.game.Engine;
+import checkers.game.Perft;
+import checkers.game.Position;
+import checkers.game.TranspositionTable;
+
+/**
+ * Timpul pana la o adancime fixa al lui {@link Engine}, cu 1..N fire (Lazy
+ * SMP). Tabela de transpozitie este golita inaintea fiecarei cautari, deci
+ * fiecare masuratoare porneste de la zero. Accelerarea pentru N fire este
+ * raportul dintre scorul pentru threads=1 si scorul pentru threads=N.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 4)
+@Fork(1)
+public class SearchBenchmark
+{
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	@Param({ "start", "midgame" })
+	public String position;
+
+	@Param({ "14" })
+	public int depth;
+
+	@Param({ "16" })
+	public int tableSize;
+
+	private TranspositionTable table;
+	private Engine engine;
+	private Position root;
+
+	@Setup
+	public void setup()
+	{
+		int index = Perft.findCase(position);
+		if (index < 0) throw new IllegalArgumentException("Pozitie necunoscuta: " + position);
+		root = Perft.getPosition(index);
+		table = new TranspositionTable(tableSize);
+		engine = new Engine(table);
+		engine.setThreads(threads);
+	}
+
+	@Setup(Level.Invocation)
+	public void clearTable()
+	{
+		table.clear();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		engine.shutdown();
+	}
+
+	@Benchmark
+	public long timeToDepth()
+	{
+		long move = engine.think(root, Long.MAX_VALUE, depth);
+		if (engine.getDepth() != depth) throw new IllegalStateException("Adancime atinsa: " + engine.getDepth());
+		return move;
+	}
+}
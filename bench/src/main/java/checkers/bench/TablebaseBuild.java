@@ -0,0 +1,40 @@
+package checkers.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import checkers.game.TablebaseGenerator;
+
+/**
+ * Genereaza un fisier de tablebase cu {@link TablebaseGenerator} si afiseaza
+ * marimea si timpul. Rulat cu tablebase.sh.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class TablebaseBuild
+{
+	private TablebaseBuild()
+	{
+	}
+
+	/**
+	 * @param args fisierul, numarul maxim de piese (implicit 4) si numarul de
+	 *            fire (implicit numarul de procesoare)
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length == 0)
+		{
+			System.out.println("Folosire: tablebase.sh fisier [piese] [fire]");
+			System.exit(1);
+		}
+		int pieces = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		File file = new File(args[0]);
+		long start = System.currentTimeMillis();
+		int slices = new TablebaseGenerator(pieces, threads).generate(file);
+		System.out.println(file + ": " + slices + " felii, " + file.length() + " octeti, "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+}
@@ -0,0 +1,9 @@
+#!/bin/sh
+# Genereaza tablebase-ul pentru pozitiile cu cel mult n piese (implicit 4),
+# pe toate procesoarele sau pe numarul de fire dat.
+# Exemplu: ./tablebase.sh dame4.tb 4
+cd "$(dirname "$0")" || exit 1
+if [ ! -d target/classes ]; then
+	mvn -B -q package || exit 1
+fi
+exec java -Xmx1g -cp "target/classes" checkers.bench.TablebaseBuild "$@"
@@ -0,0 +1,166 @@
+package checkers.android;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+import checkers.game.Game;
+import checkers.game.Move;
+import checkers.game.MoveCodec;
+import checkers.game.MoveList;
+import checkers.game.Position;
+
+/**
+ * Tabla jocului in curs, cu piesele jucatorului local jos. Jucatorul muta
+ * atingand o piesa si apoi campul de sosire; mutarea este facuta cu
+ * {@link Game#play(long)} doar daca este printre mutarile legale. Se foloseste
+ * doar pe firul UI; ceilalti cer redesenarea cu {@link #postInvalidate()}.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class BoardView extends View
+{
+	private final static int LIGHT = Color.rgb(240, 220, 180);
+	private final static int DARK = Color.rgb(120, 80, 40);
+	private final static int BLACK_PIECE = Color.rgb(40, 40, 40);
+	private final static int WHITE_PIECE = Color.rgb(250, 250, 240);
+
+	private Game game;
+	/* campul piesei alese (0..31), sau -1 */
+	private int selected = -1;
+	private Paint paint;
+	private MoveList legal;
+
+	public BoardView(Context context, AttributeSet attrs)
+	{
+		super(context, attrs);
+		paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		legal = new MoveList();
+	}
+
+	/**
+	 * @param game jocul afisat, sau null pentru o tabla goala
+	 */
+	public void setGame(Game game)
+	{
+		this.game = game;
+		selected = -1;
+		invalidate();
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+	{
+		// tabla este patrata
+		int size = MeasureSpec.getSize(widthMeasureSpec);
+		if (MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.UNSPECIFIED)
+		{
+			size = Math.min(size, MeasureSpec.getSize(heightMeasureSpec));
+		}
+		setMeasuredDimension(size, size);
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas)
+	{
+		float cell = getWidth() / 8f;
+		for (int y = 0; y < 8; y++)
+		{
+			for (int x = 0; x < 8; x++)
+			{
+				paint.setColor((x + y) % 2 == 0 ? DARK : LIGHT);
+				canvas.drawRect(x * cell, y * cell, (x + 1) * cell, (y + 1) * cell, paint);
+			}
+		}
+		Game current = game;
+		if (current == null) return;
+
+		Position position = current.getPosition();
+		int black = position.getPieces(Position.BLACK);
+		int white = position.getPieces(Position.WHITE);
+		int kings = position.getKings();
+		boolean flipped = current.getLocalSide() == Position.WHITE;
+		for (int square = 0; square < 32; square++)
+		{
+			int bit = 1 << square;
+			if (((black | white) & bit) == 0 && square != selected) continue;
+			int row = square / 4;
+			// randurile pare au campurile pe coloanele impare
+			int col = 2 * (square % 4) + (row % 2 == 0 ? 1 : 0);
+			float cx = ((flipped ? 7 - col : col) + 0.5f) * cell;
+			float cy = ((flipped ? row : 7 - row) + 0.5f) * cell;
+			if (square == selected)
+			{
+				paint.setColor(Color.YELLOW);
+				canvas.drawCircle(cx, cy, cell * 0.46f, paint);
+			}
+			if (((black | white) & bit) == 0) continue;
+			paint.setColor((black & bit) != 0 ? BLACK_PIECE : WHITE_PIECE);
+			canvas.drawCircle(cx, cy, cell * 0.4f, paint);
+			if ((kings & bit) != 0)
+			{
+				paint.setColor(Color.RED);
+				canvas.drawCircle(cx, cy, cell * 0.15f, paint);
+			}
+		}
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event)
+	{
+		Game current = game;
+		if (event.getAction() != MotionEvent.ACTION_DOWN || current == null) return true;
+		int square = squareAt(current, event.getX(), event.getY());
+		legal.clear();
+		current.getLegalMoves(legal);
+
+		long chosen = MoveCodec.NONE;
+		boolean movable = false;
+		for (int i = 0; i < legal.size(); i++)
+		{
+			long move = legal.get(i);
+			if (Move.getFrom(move) == square) movable = true;
+			if (Move.getFrom(move) == selected && Move.getTo(move) == square && chosen == MoveCodec.NONE)
+			{
+				chosen = move;
+			}
+		}
+		if (chosen != MoveCodec.NONE)
+		{
+			selected = -1;
+			try
+			{
+				current.play(chosen);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// adversarul a mutat intre timp
+				Log.e("BoardView", e.getMessage());
+			}
+		}
+		else selected = movable ? square : -1;
+		invalidate();
+		return true;
+	}
+
+	/**
+	 * @return campul (0..31) de la coordonatele date, sau -1 pentru un camp
+	 *         alb
+	 */
+	private int squareAt(Game current, float x, float y)
+	{
+		float cell = getWidth() / 8f;
+		int sx = Math.min(7, Math.max(0, (int) (x / cell)));
+		int sy = Math.min(7, Math.max(0, (int) (y / cell)));
+		boolean flipped = current.getLocalSide() == Position.WHITE;
+		int col = flipped ? 7 - sx : sx;
+		int row = flipped ? sy : 7 - sy;
+		if ((row + col) % 2 == 0) return -1;
+		return row * 4 + col / 2;
+	}
+}
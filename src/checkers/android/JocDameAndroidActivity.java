@@ -1,12 +1,21 @@
 package checkers.android;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import net.jxta.exception.PeerGroupException;
-
+import checkers.game.ComputerGame;
+import checkers.game.Game;
+import checkers.game.NetworkGame;
+import checkers.game.Position;
+import checkers.game.Tablebase;
 import checkers.p2p.Connection;
+import checkers.p2p.Session;
+import checkers.p2p.Sessions;
 import checkers.p2p.event.P2PEvent;
 import checkers.p2p.event.P2PListener;
+import checkers.p2p.event.PeerDelta;
 import android.app.Activity;
 import android.os.Bundle;
 import android.util.Log;
@@ -16,11 +25,22 @@ import android.widget.TextView;
 
 public class JocDameAndroidActivity extends Activity implements View.OnClickListener, P2PListener
 {
+	/* creat cu checkers.game.TablebaseGenerator si copiat in directorul "tablebase" al aplicatiei */
+	private final static String TABLEBASE_FILE = "dame4.tb";
 
 	private Connection managerJXTA;
 	private Thread jxtaThread;
 	private Button startJXTAService, searchPeers;
-	private TextView txt;
+	/* txt: lista de parteneri; status: mesajele jocului in curs */
+	private TextView txt, status;
+	/* tabla jocului in curs; jucatorul local muta prin ea */
+	private BoardView board;
+	/* jocul in curs; creat pe firul UI */
+	private Game game;
+
+	/* copia locala a listei de parteneri; modificata doar pe firul UI */
+	private LinkedHashMap<String, String> peerList = new LinkedHashMap<String, String>();
+	private long peerListVersion = 0;
 
 	/** Called when the activity is first created. */
 	@Override
@@ -32,6 +52,8 @@ public class JocDameAndroidActivity extends Activity implements View.OnClickList
 		Button startJXTAService = (Button) findViewById(R.id.startJXTAService);
 		searchPeers = (Button) findViewById(R.id.searchPeers);
 		txt = (TextView) findViewById(R.id.textView1);
+		status = (TextView) findViewById(R.id.status);
+		board = (BoardView) findViewById(R.id.board);
 
 		startJXTAService.setOnClickListener(this);
 
@@ -46,22 +68,44 @@ public class JocDameAndroidActivity extends Activity implements View.OnClickList
 		});
 	}
 
+	@Override
+	protected void onDestroy()
+	{
+		if (game != null)
+		{
+			game.close();
+			game = null;
+		}
+		super.onDestroy();
+	}
+
 	public void onClick(View v)
 	{
 		try
 		{
 			managerJXTA = new Connection("Octa", getDir("jxta", MODE_PRIVATE));
 			managerJXTA.addP2PListener(this);
-			managerJXTA.start();
+			managerJXTA.getSessions().setListener(new Sessions.Listener() {
+				public void sessionRequested(Session session, String senderID, final String senderName)
+				{
+					if (!NetworkGame.SESSION_TYPE.equals(session.getType())) return;
+					// handler-ul trebuie setat acum, altfel sesiunea este refuzata
+					final NetworkGame invited = new NetworkGame(session, senderID, Position.WHITE);
+					runOnUiThread(new Runnable() {
+						public void run()
+						{
+							startNetworkGame(invited, senderName);
+						}
+					});
+				}
+			});
+			// pornirea platformei JXTA dureaza; nu se blocheaza firul UI
+			managerJXTA.startAsync();
 		}
 		catch (IOException e)
 		{
 			Log.e("JocDameAndroidActivity", e.getMessage());
 		}
-		catch (PeerGroupException e)
-		{
-			Log.e("JocDameAndroidActivity", e.getMessage());
-		}
 
 	}
 	
@@ -78,26 +122,209 @@ public class JocDameAndroidActivity extends Activity implements View.OnClickList
 				}
 			});
 		}
-		else if (event.getTip() == P2PEvent.PEER_FOUND)
+		else if (event.getTip() == P2PEvent.PEERS_CHANGED)
 		{
 			this.runOnUiThread(new Runnable() {
 				
 				public void run()
 				{
-					txt.setText("");
-					for(String item: event.getList().values())
-					{
-						txt.append(item + "\n");
-					}
-					
+					applyPeerDelta(event.getDelta());
 				}
 			});
 			
 		}
-		else if (event.getTip() == P2PEvent.MESSAGE_RECEIVED)
+		else if (event.getTip() == P2PEvent.PEER_SEARCH_FINISHED
+				&& (event.getList() == null || event.getList().isEmpty()))
+		{
+			this.runOnUiThread(new Runnable() {
+
+				public void run()
+				{
+					startComputerGame();
+				}
+			});
+		}
+		else if (event.getTip() == P2PEvent.PEER_SEARCH_FINISHED)
 		{
+			this.runOnUiThread(new Runnable() {
+
+				public void run()
+				{
+					invitePeer(event.getList());
+				}
+			});
+		}
+		else if (event.getTip() == P2PEvent.STARTUP_PROGRESS)
+		{
+			Log.i("JocDameAndroidActivity", "Pornire " + event.getStage() + "/" + event.getStageCount() + " "
+					+ event.getPhase() + ": " + event.getDuration() + " ms");
+		}
+		else if (event.getTip() == P2PEvent.STARTUP_FAILED)
+		{
+			Log.e("JocDameAndroidActivity", "Pornirea a esuat la etapa " + event.getPhase());
+		}
+
+	}
+
+	/**
+	 * Deschide un joc cu primul partener gasit al carui id este mai mare decat
+	 * cel local; ceilalti parteneri ne invita ei, astfel incat doi parteneri nu
+	 * deschid fiecare cate un joc unul cu celalalt. Jucatorul care invita are
+	 * piesele negre.
+	 */
+	private void invitePeer(Map<String, String> found)
+	{
+		String myID = managerJXTA.getPeerID();
+		if (game != null || myID == null) return;
+		for (Map.Entry<String, String> peer : found.entrySet())
+		{
+			if (myID.compareTo(peer.getKey()) < 0)
+			{
+				Session session = managerJXTA.getSessions().open(NetworkGame.SESSION_TYPE, null, null);
+				NetworkGame invitation = new NetworkGame(session, peer.getKey(), Position.BLACK);
+				session.invite(peer.getKey());
+				startNetworkGame(invitation, peer.getValue());
+				return;
+			}
+		}
+	}
 
+	/**
+	 * Incepe un joc in retea, daca nu este deja un joc in curs.
+	 */
+	private void startNetworkGame(NetworkGame network, String opponentName)
+	{
+		if (game != null)
+		{
+			network.close();
+			return;
 		}
+		startGame(network);
+		status.setText("Jucati cu " + opponentName + ".");
+	}
 
+	/**
+	 * Face din joc jocul in curs; cand se termina, este inchis.
+	 */
+	private void startGame(final Game started)
+	{
+		game = started;
+		started.setListener(new Game.Listener() {
+			public void moveMade(Game g, long move, boolean local)
+			{
+				// apelat si de pe firele retelei sau ale calculatorului
+				board.postInvalidate();
+			}
+
+			public void illegalMove(Game g, String data)
+			{
+				runOnUiThread(new Runnable() {
+					public void run()
+					{
+						status.setText("Adversarul a trimis o mutare incorecta.");
+					}
+				});
+			}
+
+			public void gameOver(Game g, final int winner)
+			{
+				runOnUiThread(new Runnable() {
+					public void run()
+					{
+						endGame(started, winner == started.getLocalSide() ? "Ati castigat." : "Ati pierdut.");
+					}
+				});
+			}
+
+			public void gameAborted(Game g)
+			{
+				runOnUiThread(new Runnable() {
+					public void run()
+					{
+						endGame(started, "Legatura cu adversarul s-a pierdut, jocul s-a oprit.");
+					}
+				});
+			}
+		});
+		board.setGame(started);
+	}
+
+	/**
+	 * Inchide jocul terminat; tabla ramane cu pozitia finala.
+	 */
+	private void endGame(Game ended, String result)
+	{
+		if (game != ended) return;
+		ended.close();
+		game = null;
+		status.setText(result);
+	}
+
+	/**
+	 * Nu a fost gasit niciun partener: se joaca cu calculatorul. Un joc cu
+	 * calculatorul in curs este inchis si inlocuit; un joc in retea continua.
+	 */
+	private void startComputerGame()
+	{
+		if (game instanceof NetworkGame) return;
+		if (game != null) game.close();
+		ComputerGame computer = new ComputerGame(Position.BLACK, ComputerGame.DEFAULT_THINK_TIME);
+		File file = new File(getDir("tablebase", MODE_PRIVATE), TABLEBASE_FILE);
+		if (file.exists())
+		{
+			try
+			{
+				computer.setTablebase(new Tablebase(file));
+			}
+			catch (IOException e)
+			{
+				Log.e("JocDameAndroidActivity", "Tablebase-ul nu a putut fi deschis: " + e.getMessage());
+			}
+		}
+		startGame(computer);
+		status.setText("Niciun partener gasit, jucati cu calculatorul.");
+	}
+
+	/**
+	 * Aplica schimbarile listei de parteneri. Partenerii noi sunt doar adaugati
+	 * la sfarsitul listei afisate; lista este redesenata numai cand se modifica
+	 * sau se sterg parteneri, ori cand s-a ratat o versiune.
+	 */
+	private void applyPeerDelta(PeerDelta delta)
+	{
+		if (delta.getVersion() <= peerListVersion)
+		{
+			return;
+		}
+		if (delta.getVersion() != peerListVersion + 1)
+		{
+			PeerDelta snapshot = managerJXTA.getPeerSnapshot();
+			if (snapshot == null) return;
+			peerList.clear();
+			snapshot.applyTo(peerList);
+			peerListVersion = snapshot.getVersion();
+			redrawPeers();
+			return;
+		}
+
+		delta.applyTo(peerList);
+		peerListVersion = delta.getVersion();
+		if (delta.getUpdated().isEmpty() && delta.getRemoved().isEmpty())
+		{
+			for (String item : delta.getAdded().values())
+			{
+				txt.append(item + "\n");
+			}
+		}
+		else redrawPeers();
+	}
+
+	private void redrawPeers()
+	{
+		txt.setText("");
+		for (String item : peerList.values())
+		{
+			txt.append(item + "\n");
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package checkers.game;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import android.util.Log;
+
+/**
+ * Un joc cu calculatorul, cand nu exista parteneri in retea. Calculatorul
+ * gandeste pe un fir separat, cu {@link Engine}, cel mult timpul dat pentru
+ * fiecare mutare. Cu un {@link Tablebase}, finalurile cu putine piese sunt
+ * jucate perfect.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class ComputerGame extends Game
+{
+	/* timpul de gandire implicit (ms) pentru o mutare */
+	public final static long DEFAULT_THINK_TIME = 1000;
+	/* memoria tabelei de transpozitie (MB) */
+	private final static int TABLE_SIZE = 4;
+	private final static int MAX_DEPTH = 64;
+
+	private Engine engine;
+	private Tablebase tablebase;
+	private long thinkTime;
+	private ExecutorService executor;
+
+	/**
+	 * Constructorul pentru clasa ComputerGame; calculatorul foloseste toate
+	 * procesoarele.
+	 * 
+	 * @param localSide culoarea jucatorului local
+	 * @param thinkTime timpul de gandire (ms) pentru o mutare
+	 */
+	public ComputerGame(int localSide, long thinkTime)
+	{
+		this(localSide, thinkTime, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructorul pentru clasa ComputerGame. Daca jucatorul local are albul,
+	 * calculatorul incepe imediat sa gandeasca.
+	 * 
+	 * @param localSide culoarea jucatorului local
+	 * @param thinkTime timpul de gandire (ms) pentru o mutare
+	 * @param threads numarul de fire folosite de cautare
+	 */
+	public ComputerGame(int localSide, long thinkTime, int threads)
+	{
+		super(localSide);
+		if (thinkTime <= 0) throw new IllegalArgumentException("Timp incorect: " + thinkTime);
+		this.thinkTime = thinkTime;
+		engine = new Engine(new TranspositionTable(TABLE_SIZE));
+		engine.setThreads(threads);
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Checkers-AI");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		if (localSide == Position.WHITE) reply();
+	}
+
+	/**
+	 * @return motorul de cautare, pentru statistici
+	 */
+	public Engine getEngine()
+	{
+		return engine;
+	}
+
+	/**
+	 * Foloseste un tablebase pentru finaluri; este inchis impreuna cu jocul.
+	 * 
+	 * @param tablebase
+	 */
+	public void setTablebase(Tablebase tablebase)
+	{
+		this.tablebase = tablebase;
+		engine.setTablebase(tablebase);
+	}
+
+	protected boolean sendMove(Position before, long move)
+	{
+		reply();
+		return true;
+	}
+
+	private void reply()
+	{
+		try
+		{
+			executor.execute(new Runnable() {
+				public void run()
+				{
+					Position position = getPosition();
+					if (isOver() || position.getSide() == getLocalSide()) return;
+					long move = engine.think(position, thinkTime, MAX_DEPTH);
+					if (move == MoveCodec.NONE || engine.isCancelled()) return;
+					Log.i("ComputerGame","calculatorul muta " + Move.toString(move) + " (adancime " + engine.getDepth()
+							+ ", " + engine.getNodesPerSecond() + " noduri/s, TT " + engine.getHitRate() + "%)");
+					opponentMove(move);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// jocul a fost inchis
+		}
+	}
+
+	/**
+	 * Opreste calculatorul fara sa astepte cautarea in curs: motorul si
+	 * tablebase-ul sunt inchise pe firul calculatorului, dupa ce cautarea se
+	 * termina.
+	 */
+	public void close()
+	{
+		engine.cancel();
+		try
+		{
+			executor.execute(new Runnable() {
+				public void run()
+				{
+					engine.shutdown();
+					closeTablebase();
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// deja inchis
+			return;
+		}
+		executor.shutdown();
+	}
+
+	private void closeTablebase()
+	{
+		if (tablebase == null) return;
+		try
+		{
+			tablebase.close();
+		}
+		catch (IOException e)
+		{
+			Log.e("ComputerGame","tablebase-ul nu a putut fi inchis: " + e.getMessage());
+		}
+	}
+}
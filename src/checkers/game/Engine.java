@@ -0,0 +1,620 @@
+package checkers.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.util.Log;
+
+/**
+ * Adversarul calculator: cautare alfa-beta (variatia principala) cu adancire
+ * iterativa, pana la expirarea timpului dat pentru o mutare. Pozitiile deja
+ * cautate sunt pastrate in {@link TranspositionTable}, iar mutarile sunt
+ * ordonate astfel: mutarea din tabela, capturile (cele mai multe piese
+ * intai), mutarile care fac dame, cele doua mutari "killer" ale nivelului si
+ * apoi dupa istoria taierilor.
+ * 
+ * Capturile fiind obligatorii, o pozitie cu o capturare nu este evaluata
+ * static: cautarea continua pana la o pozitie linistita.
+ * 
+ * Cu mai multe fire (Lazy SMP), firele ajutatoare cauta aceeasi pozitie in
+ * paralel cu firul apelantului, fara nicio alta comunicare decat tabela de
+ * transpozitie comuna: ce afla ele umple tabela, iar firul principal ajunge
+ * mai repede la aceeasi adancime. Jumatate din ajutoare incep cu o adancime
+ * mai mare, ca sa nu caute toate in acelasi loc.
+ * 
+ * Cu un {@link Tablebase}, pozitiile cu putine piese nu mai sunt cautate:
+ * rezultatul lor exact este citit din tablebase.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Engine
+{
+	/* scorul unei pozitii castigate, minus distanta pana la castig */
+	public final static int WIN = 30000;
+	private final static int INFINITY = 32000;
+	private final static int MAX_PLY = 128;
+	/* scorurile peste WIN - MAX_DISTANCE sunt castiguri sigure (din cautare sau din tablebase) */
+	private final static int MAX_DISTANCE = MAX_PLY + 256;
+
+	private final static int MAN = 100;
+	private final static int KING = 130;
+	/* bonusul pieselor simple negre pe fiecare rand; pentru alb se citeste invers */
+	private final static int[] ADVANCE = { 0, 0, 1, 2, 4, 6, 8, 0 };
+	private final static long[] ROWS = new long[8];
+	private final static long CENTER;
+
+	static
+	{
+		for (int r = 0; r < 8; r++)
+		{
+			ROWS[r] = 0xFL << (r * 4 + r / 2);
+		}
+		CENTER = Position.squaresToBits((1 << 9) | (1 << 10) | (1 << 13) | (1 << 14) | (1 << 17) | (1 << 18)
+				| (1 << 21) | (1 << 22));
+	}
+
+	private TranspositionTable table;
+	private Tablebase tablebase;
+	private Worker[] workers;
+	private ExecutorService helpers;
+
+	private long start, budget;
+	private volatile boolean stopRequested;
+	/* ramane setat dupa cancel(); think nu il reseteaza */
+	private volatile boolean cancelled;
+	/* firul principal a terminat; ajutoarele se opresc */
+	private volatile boolean finished;
+
+	private long nodes, probes, hits, tablebaseHits, elapsed;
+	private int depth, score;
+
+	/**
+	 * @param table tabela de transpozitie, comuna tuturor firelor
+	 */
+	public Engine(TranspositionTable table)
+	{
+		this.table = table;
+		workers = new Worker[] { new Worker(0) };
+	}
+
+	/**
+	 * Schimba numarul de fire folosite de cautare. Nu se apeleaza in timpul
+	 * unei cautari.
+	 * 
+	 * @param threads numarul de fire, inclusiv firul care apeleaza
+	 *            {@link #think}
+	 */
+	public synchronized void setThreads(int threads)
+	{
+		if (threads < 1) throw new IllegalArgumentException("Numar de fire incorect: " + threads);
+		if (threads == workers.length) return;
+		shutdown();
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+		{
+			workers[i] = new Worker(i);
+		}
+		if (threads > 1)
+		{
+			helpers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				private int count = 0;
+
+				public synchronized Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "Checkers-AI-" + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	public synchronized int getThreads()
+	{
+		return workers.length;
+	}
+
+	/**
+	 * Foloseste un tablebase pentru pozitiile cu putine piese. Nu se apeleaza
+	 * in timpul unei cautari.
+	 * 
+	 * @param tablebase tablebase-ul, sau null
+	 */
+	public synchronized void setTablebase(Tablebase tablebase)
+	{
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Opreste firele ajutatoare; cautarile urmatoare folosesc un singur fir.
+	 */
+	public synchronized void shutdown()
+	{
+		if (helpers != null)
+		{
+			helpers.shutdownNow();
+			helpers = null;
+		}
+		if (workers.length > 1) workers = new Worker[] { workers[0] };
+	}
+
+	/**
+	 * Cauta cea mai buna mutare.
+	 * 
+	 * @param root pozitia; nu este modificata
+	 * @param millis timpul de gandire
+	 * @param maxDepth adancimea maxima
+	 * @return mutarea aleasa, sau {@link MoveCodec#NONE} daca nu exista
+	 *         mutari sau motorul a fost oprit cu {@link #cancel()}
+	 */
+	public synchronized long think(Position root, long millis, final int maxDepth)
+	{
+		if (cancelled) return MoveCodec.NONE;
+		start = System.nanoTime();
+		budget = (millis >= Long.MAX_VALUE / 1000000L) ? Long.MAX_VALUE : millis * 1000000L;
+		stopRequested = false;
+		finished = false;
+		depth = 0;
+		score = 0;
+		table.newSearch();
+		for (Worker w : workers)
+		{
+			w.reset(root);
+		}
+
+		Worker main = workers[0];
+		int n = main.lists[0].size();
+		long best = (n == 0) ? MoveCodec.NONE : main.lists[0].get(0);
+		if (n > 1)
+		{
+			List<Future<?>> running = new ArrayList<Future<?>>();
+			for (int i = 1; i < workers.length; i++)
+			{
+				final Worker helper = workers[i];
+				running.add(helpers.submit(new Runnable() {
+					public void run()
+					{
+						helper.help(maxDepth);
+					}
+				}));
+			}
+			for (int d = 1; d <= Math.min(maxDepth, MAX_PLY - 1); d++)
+			{
+				long move = main.searchRoot(d, best);
+				if (main.stopped) break;
+				best = move;
+				depth = d;
+				score = main.rootScore;
+				long now = System.nanoTime();
+				collect(now);
+				Log.i("Engine","adancime " + d + ": " + Move.toString(best) + ", scor " + score + ", " + nodes + " noduri, "
+						+ getNodesPerSecond() + " noduri/s, TT " + getHitRate() + "%");
+				// urmatoarea iteratie ar dura mai mult decat timpul ramas
+				if (Math.abs(score) > WIN - MAX_DISTANCE || (now - start) > budget / 2) break;
+			}
+			finished = true;
+			for (Future<?> f : running)
+			{
+				try
+				{
+					f.get();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				catch (ExecutionException e)
+				{
+					Log.e("Engine","eroare in firul ajutator: " + e.getCause());
+				}
+			}
+		}
+		collect(System.nanoTime());
+		return best;
+	}
+
+	/**
+	 * Aduna statisticile firelor.
+	 */
+	private void collect(long now)
+	{
+		nodes = probes = hits = tablebaseHits = 0;
+		for (Worker w : workers)
+		{
+			nodes += w.nodes;
+			probes += w.probes;
+			hits += w.hits;
+			tablebaseHits += w.tablebaseHits;
+		}
+		elapsed = now - start;
+	}
+
+	/**
+	 * Opreste cautarea in curs; {@link #think} intoarce cea mai buna mutare
+	 * gasita pana atunci.
+	 */
+	public void stop()
+	{
+		stopRequested = true;
+	}
+
+	/**
+	 * Opreste cautarea in curs si toate cautarile urmatoare, inclusiv una care
+	 * nu a intrat inca in {@link #think}. Nu asteapta monitorul motorului, deci
+	 * poate fi apelat de pe firul UI in timpul unei cautari.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * @return true dupa {@link #cancel()}
+	 */
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * @return true daca firul trebuie sa se opreasca
+	 */
+	private boolean mustStop()
+	{
+		return stopRequested || cancelled || finished || System.nanoTime() - start > budget;
+	}
+
+	/**
+	 * Starea unui fir de cautare. Firele au in comun doar tabela de
+	 * transpozitie.
+	 */
+	private final class Worker
+	{
+		private int id;
+		private Position position;
+		private MoveList[] lists;
+		private int[][] keys;
+		private long[][] killers;
+		private int[][] history;
+		private long[] entry;
+		private boolean stopped;
+		private long nodes, probes, hits, tablebaseHits;
+		private int rootScore;
+
+		private Worker(int id)
+		{
+			this.id = id;
+			lists = new MoveList[MAX_PLY + 1];
+			keys = new int[MAX_PLY + 1][];
+			for (int i = 0; i <= MAX_PLY; i++)
+			{
+				lists[i] = new MoveList();
+				keys[i] = new int[64];
+			}
+			killers = new long[MAX_PLY + 1][2];
+			history = new int[2][35 * 35];
+			entry = new long[2];
+		}
+
+		private void reset(Position root)
+		{
+			position = new Position(root);
+			stopped = false;
+			nodes = probes = hits = tablebaseHits = 0;
+			for (int i = 0; i <= MAX_PLY; i++)
+			{
+				killers[i][0] = killers[i][1] = 0;
+			}
+			for (int[] h : history)
+			{
+				for (int i = 0; i < h.length; i++)
+				{
+					h[i] >>= 2;
+				}
+			}
+			lists[0].clear();
+			int n = position.generate(lists[0]);
+			// fiecare ajutor incepe cu alta mutare
+			if (n > 1 && id > 0) lists[0].swap(0, id % n);
+		}
+
+		/**
+		 * Adancirea iterativa a unui fir ajutator, pana la oprirea firului
+		 * principal.
+		 */
+		private void help(int maxDepth)
+		{
+			long best = lists[0].get(0);
+			for (int d = 1 + (id & 1); d <= Math.min(maxDepth, MAX_PLY - 1) && !stopped; d++)
+			{
+				best = searchRoot(d, best);
+			}
+		}
+
+		private long searchRoot(int depth, long previous)
+		{
+			MoveList list = lists[0];
+			int n = list.size();
+			// cea mai buna mutare a iteratiei anterioare este cautata prima
+			for (int i = 0; i < n; i++)
+			{
+				if (list.get(i) == previous)
+				{
+					list.swap(0, i);
+					break;
+				}
+			}
+			int alpha = -INFINITY, beta = INFINITY;
+			long best = list.get(0);
+			for (int i = 0; i < n; i++)
+			{
+				long move = list.get(i);
+				position.make(move);
+				int s;
+				if (i == 0) s = -search(depth - 1, -beta, -alpha, 1);
+				else
+				{
+					s = -search(depth - 1, -alpha - 1, -alpha, 1);
+					if (s > alpha && !stopped) s = -search(depth - 1, -beta, -alpha, 1);
+				}
+				position.unmake(move);
+				if (stopped) break;
+				if (s > alpha)
+				{
+					alpha = s;
+					best = move;
+					// mutarea buna se pastreaza in fata pentru iteratia urmatoare
+					for (int j = i; j > 0; j--)
+					{
+						list.swap(j, j - 1);
+					}
+				}
+			}
+			if (!stopped)
+			{
+				rootScore = alpha;
+				table.store(position.hash, best, alpha, depth, TranspositionTable.EXACT);
+			}
+			return best;
+		}
+
+		private int search(int depth, int alpha, int beta, int ply)
+		{
+			if ((++nodes & 1023) == 0 && mustStop()) stopped = true;
+			if (stopped) return 0;
+			if (ply >= MAX_PLY) return evaluate();
+			if (tablebase != null && ply > 0)
+			{
+				int v = tablebase.probe(position);
+				if (v != Tablebase.UNKNOWN)
+				{
+					tablebaseHits++;
+					if (v == Tablebase.DRAW) return 0;
+					int d = Tablebase.getDistance(v);
+					return Tablebase.isWin(v) ? WIN - ply - d : -WIN + ply + d;
+				}
+			}
+			if (depth <= 0)
+			{
+				if (!position.hasCapture()) return evaluate();
+				depth = 0;
+			}
+
+			long ttMove = 0;
+			probes++;
+			if (table.probe(position.hash, entry))
+			{
+				hits++;
+				ttMove = entry[0];
+				long info = entry[1];
+				if (TranspositionTable.getDepth(info) >= depth)
+				{
+					int s = fromTable(TranspositionTable.getScore(info), ply);
+					int type = TranspositionTable.getType(info);
+					if (type == TranspositionTable.EXACT || (type == TranspositionTable.LOWER && s >= beta)
+							|| (type == TranspositionTable.UPPER && s <= alpha))
+					{
+						return s;
+					}
+				}
+			}
+
+			MoveList list = lists[ply];
+			list.clear();
+			int n = position.generate(list);
+			if (n == 0) return -WIN + ply;
+			int[] key = order(list, n, ply, ttMove);
+
+			int alphaStart = alpha, best = -INFINITY;
+			long bestMove = 0;
+			for (int i = 0; i < n; i++)
+			{
+				long move = pick(list, key, i, n);
+				position.make(move);
+				int s;
+				if (i == 0) s = -search(depth - 1, -beta, -alpha, ply + 1);
+				else
+				{
+					s = -search(depth - 1, -alpha - 1, -alpha, ply + 1);
+					if (s > alpha && s < beta && !stopped) s = -search(depth - 1, -beta, -alpha, ply + 1);
+				}
+				position.unmake(move);
+				if (stopped) return 0;
+				if (s > best)
+				{
+					best = s;
+					bestMove = move;
+					if (s > alpha)
+					{
+						alpha = s;
+						if (alpha >= beta)
+						{
+							if (!Move.isCapture(move)) cutoff(move, depth, ply);
+							break;
+						}
+					}
+				}
+			}
+			int type = (best <= alphaStart) ? TranspositionTable.UPPER : (best >= beta) ? TranspositionTable.LOWER
+					: TranspositionTable.EXACT;
+			table.store(position.hash, bestMove, toTable(best, ply), depth, type);
+			return best;
+		}
+
+		/**
+		 * Da fiecarei mutari o cheie de ordonare.
+		 */
+		private int[] order(MoveList list, int n, int ply, long ttMove)
+		{
+			if (keys[ply].length < n) keys[ply] = new int[n * 2];
+			int[] key = keys[ply];
+			int[] h = history[position.side];
+			for (int i = 0; i < n; i++)
+			{
+				long move = list.get(i);
+				int k;
+				if (move == ttMove) k = 1 << 30;
+				else if (Move.isCapture(move)) k = (1 << 29) + Long.bitCount(Move.capturedBits(move)) * 16
+						+ (Move.isPromotion(move) ? 1 : 0);
+				else if (Move.isPromotion(move)) k = 1 << 28;
+				else if (move == killers[ply][0]) k = (1 << 27) + 1;
+				else if (move == killers[ply][1]) k = 1 << 27;
+				else k = h[Move.fromBit(move) * 35 + Move.toBit(move)];
+				key[i] = k;
+			}
+			return key;
+		}
+
+		/**
+		 * O mutare linistita a produs o taiere beta.
+		 */
+		private void cutoff(long move, int depth, int ply)
+		{
+			if (killers[ply][0] != move)
+			{
+				killers[ply][1] = killers[ply][0];
+				killers[ply][0] = move;
+			}
+			int[] h = history[position.side];
+			int i = Move.fromBit(move) * 35 + Move.toBit(move);
+			h[i] += depth * depth;
+			if (h[i] >= 1 << 26)
+			{
+				for (int j = 0; j < h.length; j++)
+				{
+					h[j] >>= 1;
+				}
+			}
+		}
+
+		/**
+		 * Evaluarea statica, din punctul de vedere al jucatorului la mutare.
+		 */
+		private int evaluate()
+		{
+			long black = position.black, white = position.white, kings = position.kings;
+			long bm = black & ~kings, wm = white & ~kings;
+			int bk = Long.bitCount(black & kings), wk = Long.bitCount(white & kings);
+			int bn = Long.bitCount(bm), wn = Long.bitCount(wm);
+			int s = (bn - wn) * MAN + (bk - wk) * KING;
+			for (int r = 1; r < 7; r++)
+			{
+				s += ADVANCE[r] * Long.bitCount(bm & ROWS[r]) - ADVANCE[7 - r] * Long.bitCount(wm & ROWS[r]);
+			}
+			// randul din spate impiedica adversarul sa faca dame
+			s += 4 * (Long.bitCount(bm & ROWS[0]) - Long.bitCount(wm & ROWS[7]));
+			s += 5 * (Long.bitCount(black & kings & CENTER) - Long.bitCount(white & kings & CENTER));
+			// cu mai putine piese pe tabla, acelasi avantaj valoreaza mai mult
+			int total = bn + wn + bk + wk;
+			s += Math.max(-400, Math.min(s, 400)) * 4 / (total + 4);
+			return (position.side == Position.BLACK) ? s : -s;
+		}
+	}
+
+	/**
+	 * Aduce pe pozitia i mutarea cu cheia cea mai mare dintre cele ramase.
+	 */
+	private static long pick(MoveList list, int[] key, int i, int n)
+	{
+		int best = i;
+		for (int j = i + 1; j < n; j++)
+		{
+			if (key[j] > key[best]) best = j;
+		}
+		if (best != i)
+		{
+			list.swap(i, best);
+			int k = key[i];
+			key[i] = key[best];
+			key[best] = k;
+		}
+		return list.get(i);
+	}
+
+	/* scorurile de castig sunt pastrate in tabela fata de pozitia curenta */
+	private static int toTable(int s, int ply)
+	{
+		if (s > WIN - MAX_DISTANCE) return s + ply;
+		if (s < -WIN + MAX_DISTANCE) return s - ply;
+		return s;
+	}
+
+	private static int fromTable(int s, int ply)
+	{
+		if (s > WIN - MAX_DISTANCE) return s - ply;
+		if (s < -WIN + MAX_DISTANCE) return s + ply;
+		return s;
+	}
+
+	/**
+	 * @return adancimea ultimei iteratii terminate de firul principal
+	 */
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * @return scorul ultimei iteratii terminate, in sutimi de piesa
+	 */
+	public int getScore()
+	{
+		return score;
+	}
+
+	/**
+	 * @return nodurile cautate de toate firele
+	 */
+	public long getNodes()
+	{
+		return nodes;
+	}
+
+	public long getNodesPerSecond()
+	{
+		return (elapsed <= 0) ? 0 : nodes * 1000000000L / elapsed;
+	}
+
+	/**
+	 * @return procentul cautarilor in tabela de transpozitie care au gasit
+	 *         pozitia
+	 */
+	public int getHitRate()
+	{
+		return (probes == 0) ? 0 : (int) (hits * 100 / probes);
+	}
+
+	/**
+	 * @return pozitiile rezolvate din tablebase de toate firele
+	 */
+	public long getTablebaseHits()
+	{
+		return tablebaseHits;
+	}
+}
@@ -0,0 +1,238 @@
+package checkers.game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.util.Log;
+
+/**
+ * Un joc intre jucatorul local si un adversar. Clasa pastreaza pozitia si
+ * mutarile si verifica fiecare mutare cu generatorul de mutari; subclasele
+ * decid cum ajunge mutarea locala la adversar si de unde vin mutarile lui.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public abstract class Game
+{
+	/**
+	 * Cel care urmareste jocul (de obicei interfata grafica). Metodele sunt
+	 * apelate in ordinea mutarilor, cu jocul blocat, deci trebuie sa se termine
+	 * repede.
+	 */
+	public interface Listener
+	{
+		/**
+		 * S-a facut o mutare.
+		 * 
+		 * @param game
+		 * @param move mutarea
+		 * @param local true daca mutarea este a jucatorului local
+		 */
+		public void moveMade(Game game, long move, boolean local);
+
+		/**
+		 * Adversarul a trimis o mutare care nu este legala.
+		 * 
+		 * @param game
+		 * @param data mesajul primit
+		 */
+		public void illegalMove(Game game, String data);
+
+		/**
+		 * Jocul s-a terminat: jucatorul la mutare nu mai are mutari, sau
+		 * adversarul a iesit din joc.
+		 * 
+		 * @param game
+		 * @param winner {@link Position#BLACK} sau {@link Position#WHITE}
+		 */
+		public void gameOver(Game game, int winner);
+
+		/**
+		 * Jocul s-a oprit fara castigator, de exemplu pentru ca o mutare nu a
+		 * ajuns la adversar si pozitiile celor doi jucatori nu mai sunt la
+		 * fel.
+		 * 
+		 * @param game
+		 */
+		public void gameAborted(Game game);
+	}
+
+	private int localSide;
+	private Position position;
+	private List<Long> history;
+	private volatile Listener listener;
+	private boolean over;
+
+	/**
+	 * @param localSide culoarea jucatorului local
+	 */
+	protected Game(int localSide)
+	{
+		if (localSide != Position.BLACK && localSide != Position.WHITE)
+		{
+			throw new IllegalArgumentException("Culoare incorecta: " + localSide);
+		}
+		this.localSide = localSide;
+		position = new Position();
+		history = new ArrayList<Long>();
+	}
+
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+
+	public int getLocalSide()
+	{
+		return localSide;
+	}
+
+	/**
+	 * @return o copie a pozitiei curente
+	 */
+	public synchronized Position getPosition()
+	{
+		return new Position(position);
+	}
+
+	/**
+	 * @return mutarile facute pana acum
+	 */
+	public synchronized List<Long> getHistory()
+	{
+		return new ArrayList<Long>(history);
+	}
+
+	public synchronized boolean isLocalTurn()
+	{
+		return !over && position.getSide() == localSide;
+	}
+
+	public synchronized boolean isOver()
+	{
+		return over;
+	}
+
+	/**
+	 * @param list lista in care se adauga mutarile legale ale jucatorului
+	 *            local; ramane goala daca nu este randul lui
+	 */
+	public synchronized void getLegalMoves(MoveList list)
+	{
+		if (isLocalTurn()) position.generate(list);
+	}
+
+	/**
+	 * Face o mutare a jucatorului local si o trimite adversarului.
+	 * 
+	 * @param move o mutare din {@link #getLegalMoves(MoveList)}
+	 * @return true daca mutarea a fost trimisa adversarului
+	 * @throws IllegalArgumentException daca nu este randul jucatorului local
+	 *             sau mutarea nu este legala
+	 */
+	public boolean play(long move) throws IllegalArgumentException
+	{
+		Position before;
+		synchronized (this)
+		{
+			if (!isLocalTurn() || !isLegal(move))
+			{
+				throw new IllegalArgumentException("Mutare incorecta: " + Move.toString(move));
+			}
+			before = new Position(position);
+			apply(move);
+			notifyMove(move, true);
+		}
+		return sendMove(before, move);
+	}
+
+	/**
+	 * Trimite adversarului o mutare a jucatorului local, deja facuta.
+	 * 
+	 * @param before pozitia dinaintea mutarii
+	 * @param move mutarea
+	 * @return true daca mutarea a fost trimisa adversarului; daca nu ajunge
+	 *         totusi la el, subclasa opreste jocul cu {@link #abort()}
+	 */
+	protected abstract boolean sendMove(Position before, long move);
+
+	/**
+	 * Face o mutare a adversarului, daca este legala.
+	 * 
+	 * @param move
+	 * @return false daca nu era randul adversarului sau mutarea nu este legala
+	 */
+	protected boolean opponentMove(long move)
+	{
+		synchronized (this)
+		{
+			if (over || position.getSide() == localSide || !isLegal(move)) return false;
+			apply(move);
+			notifyMove(move, false);
+		}
+		return true;
+	}
+
+	/**
+	 * Anunta o mutare primita care nu a putut fi facuta.
+	 * 
+	 * @param data mesajul primit
+	 */
+	protected void illegalMove(String data)
+	{
+		Log.e("Game","mutare incorecta primita de la adversar.");
+		Listener l = listener;
+		if (l != null) l.illegalMove(this, data);
+	}
+
+	/**
+	 * Adversarul a iesit din joc: jocul se termina, castigat de jucatorul
+	 * local.
+	 */
+	protected synchronized void opponentLeft()
+	{
+		if (over) return;
+		over = true;
+		Listener l = listener;
+		if (l != null) l.gameOver(this, localSide);
+	}
+
+	/**
+	 * Opreste jocul fara castigator.
+	 */
+	protected synchronized void abort()
+	{
+		if (over) return;
+		over = true;
+		Listener l = listener;
+		if (l != null) l.gameAborted(this);
+	}
+
+	private boolean isLegal(long move)
+	{
+		MoveList legal = new MoveList();
+		position.generate(legal);
+		return legal.contains(move);
+	}
+
+	private void apply(long move)
+	{
+		position.make(move);
+		history.add(move);
+		over = position.isLost();
+	}
+
+	private void notifyMove(long move, boolean local)
+	{
+		Listener l = listener;
+		if (l == null) return;
+		l.moveMade(this, move, local);
+		if (over) l.gameOver(this, position.getSide() ^ 1);
+	}
+
+	/**
+	 * Opreste jocul: nu mai sunt primite mutari.
+	 */
+	public abstract void close();
+}
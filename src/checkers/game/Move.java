@@ -0,0 +1,96 @@
+package checkers.game;
+
+/**
+ * Mutarile sunt valori long, fara obiecte: bitii 0-34 sunt piesele capturate
+ * (in formatul intern al lui {@link Position}), bitii 35-40 campul de
+ * plecare, bitii 41-46 campul de sosire, iar bitul 47 arata ca piesa devine
+ * dama. Clasa are doar metode statice pentru a citi si scrie aceste valori.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public final class Move
+{
+	private final static long CAPTURED = (1L << 35) - 1;
+	private final static int FROM = 35;
+	private final static int TO = 41;
+	private final static long PROMOTION = 1L << 47;
+
+	private Move()
+	{
+	}
+
+	/**
+	 * @param from bitul intern de plecare
+	 * @param to bitul intern de sosire
+	 * @param captured piesele capturate (biti interni)
+	 * @param promotion true daca piesa devine dama
+	 */
+	static long create(int from, int to, long captured, boolean promotion)
+	{
+		long move = captured | ((long) from << FROM) | ((long) to << TO);
+		return promotion ? move | PROMOTION : move;
+	}
+
+	static int fromBit(long move)
+	{
+		return (int) (move >>> FROM) & 0x3F;
+	}
+
+	static int toBit(long move)
+	{
+		return (int) (move >>> TO) & 0x3F;
+	}
+
+	static long capturedBits(long move)
+	{
+		return move & CAPTURED;
+	}
+
+	/**
+	 * @param move
+	 * @return campul de plecare, 0..31
+	 */
+	public static int getFrom(long move)
+	{
+		return Position.square(fromBit(move));
+	}
+
+	/**
+	 * @param move
+	 * @return campul de sosire, 0..31
+	 */
+	public static int getTo(long move)
+	{
+		return Position.square(toBit(move));
+	}
+
+	/**
+	 * @param move
+	 * @return campurile pieselor capturate (bitul i = campul i)
+	 */
+	public static int getCaptured(long move)
+	{
+		return Position.bitsToSquares(capturedBits(move));
+	}
+
+	public static boolean isCapture(long move)
+	{
+		return (move & CAPTURED) != 0;
+	}
+
+	public static boolean isPromotion(long move)
+	{
+		return (move & PROMOTION) != 0;
+	}
+
+	/**
+	 * @param move
+	 * @return mutarea in notatia standard (campuri 1-32), de exemplu "11-15"
+	 *         sau "9x18" pentru o capturare
+	 */
+	public static String toString(long move)
+	{
+		return (getFrom(move) + 1) + (isCapture(move) ? "x" : "-") + (getTo(move) + 1);
+	}
+}
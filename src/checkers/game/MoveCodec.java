@@ -0,0 +1,130 @@
+package checkers.game;
+
+/**
+ * Codificarea mutarilor trimise intr-o {@link checkers.p2p.Session}:
+ * caracterul {@link #MARK} urmat de campurile prin care trece piesa, cate un
+ * caracter pentru fiecare camp ('A' pentru campul 0, ..., '`' pentru campul
+ * 31). O mutare simpla are 3 caractere, o capturare dubla 4. Mutarea primita
+ * este refacuta doar daca se afla printre mutarile legale ale pozitiei.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public final class MoveCodec
+{
+	/* caracterul de control cu care incep mutarile */
+	public final static char MARK = '\u0011';
+	/* valoarea intoarsa pentru un mesaj care nu este o mutare legala */
+	public final static long NONE = 0;
+
+	private final static char FIRST = 'A';
+
+	private MoveCodec()
+	{
+	}
+
+	/**
+	 * @param data mesajul primit
+	 * @return true daca mesajul are forma unei mutari
+	 */
+	public static boolean isMove(String data)
+	{
+		return data != null && data.length() >= 3 && data.charAt(0) == MARK;
+	}
+
+	/**
+	 * @param position pozitia dinaintea mutarii
+	 * @param move o mutare legala a pozitiei
+	 * @return mesajul care descrie mutarea
+	 */
+	public static String encode(Position position, long move)
+	{
+		int from = Move.fromBit(move);
+		int[] path = new int[Long.bitCount(Move.capturedBits(move)) + 2];
+		path[0] = from;
+		int length;
+		if (Move.isCapture(move))
+		{
+			long empty = (Position.VALID & ~(position.black | position.white)) | (1L << from);
+			length = trace(path, 1, from, Move.toBit(move), Move.capturedBits(move), empty);
+			if (length < 0) throw new IllegalArgumentException("Mutare incorecta: " + Move.toString(move));
+		}
+		else
+		{
+			path[1] = Move.toBit(move);
+			length = 2;
+		}
+		StringBuilder sb = new StringBuilder(length + 1);
+		sb.append(MARK);
+		for (int i = 0; i < length; i++)
+		{
+			sb.append((char) (FIRST + Position.square(path[i])));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Cauta un drum prin toate piesele capturate.
+	 * 
+	 * @return lungimea drumului, sau -1 daca nu exista
+	 */
+	private static int trace(int[] path, int index, int at, int to, long left, long empty)
+	{
+		if (left == 0) return (at == to) ? index : -1;
+		for (int d = 0; d < 4; d++)
+		{
+			int step = (d & 1) == 0 ? 4 : 5;
+			if (d >= 2) step = -step;
+			int mid = at + step, land = at + 2 * step;
+			if (mid < 0 || land < 0 || land > 34) continue;
+			if ((left & (1L << mid)) == 0 || (empty & (1L << land)) == 0) continue;
+			path[index] = land;
+			int length = trace(path, index + 1, land, to, left & ~(1L << mid), empty);
+			if (length > 0) return length;
+		}
+		return -1;
+	}
+
+	/**
+	 * Reface o mutare primita si o valideaza.
+	 * 
+	 * @param position pozitia in care a fost facuta mutarea
+	 * @param data mesajul primit
+	 * @return mutarea, sau {@link #NONE} daca mesajul nu descrie o mutare
+	 *         legala in aceasta pozitie
+	 */
+	public static long decode(Position position, String data)
+	{
+		if (!isMove(data)) return NONE;
+		int hops = data.length() - 2;
+		int prev = -1;
+		int from = -1;
+		long captured = 0;
+		for (int i = 1; i < data.length(); i++)
+		{
+			int square = data.charAt(i) - FIRST;
+			if (square < 0 || square > 31) return NONE;
+			int bit = Position.bit(square);
+			if (prev < 0) from = bit;
+			else
+			{
+				int diff = Math.abs(bit - prev);
+				if (diff == 8 || diff == 10) captured |= 1L << ((bit + prev) / 2);
+				else if ((diff != 4 && diff != 5) || hops != 1) return NONE;
+			}
+			prev = bit;
+		}
+
+		MoveList legal = new MoveList();
+		position.generate(legal);
+		for (int i = 0; i < legal.size(); i++)
+		{
+			long move = legal.get(i);
+			if (Move.fromBit(move) == from && Move.toBit(move) == prev && Move.capturedBits(move) == captured)
+			{
+				return move;
+			}
+		}
+		return NONE;
+	}
+}
@@ -0,0 +1,76 @@
+package checkers.game;
+
+/**
+ * O lista de mutari refolosibila, pentru a nu crea obiecte la fiecare
+ * generare.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class MoveList
+{
+	private long[] moves;
+	private int size;
+
+	public MoveList()
+	{
+		moves = new long[64];
+	}
+
+	void add(long move)
+	{
+		if (size == moves.length)
+		{
+			long[] bigger = new long[size * 2];
+			System.arraycopy(moves, 0, bigger, 0, size);
+			moves = bigger;
+		}
+		moves[size++] = move;
+	}
+
+	void swap(int i, int j)
+	{
+		long move = moves[i];
+		moves[i] = moves[j];
+		moves[j] = move;
+	}
+
+	/**
+	 * @param move
+	 * @param from primul indice verificat
+	 * @return true daca mutarea apare in lista de la indicele dat
+	 */
+	boolean contains(long move, int from)
+	{
+		for (int i = from; i < size; i++)
+		{
+			if (moves[i] == move) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param move
+	 * @return true daca mutarea se afla in lista
+	 */
+	public boolean contains(long move)
+	{
+		return contains(move, 0);
+	}
+
+	public long get(int index)
+	{
+		if (index >= size) throw new IndexOutOfBoundsException("Indice incorect: " + index);
+		return moves[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+}
@@ -0,0 +1,99 @@
+package checkers.game;
+
+import android.util.Log;
+import checkers.p2p.Delivery;
+import checkers.p2p.DeliveryListener;
+import checkers.p2p.Session;
+
+/**
+ * Un joc cu un partener din retea, intr-o {@link Session} a conexiunii.
+ * Mutarile locale sunt trimise cu confirmare tuturor participantilor sesiunii
+ * (adversarul si eventualii spectatori), codificate de {@link MoveCodec}; daca
+ * o mutare nu ajunge la adversar, jocul este oprit, pentru ca pozitiile nu mai
+ * sunt la fel. Mutarile primite de la adversar sunt verificate cu generatorul
+ * de mutari inainte de a fi facute, iar cele incorecte sunt ignorate.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class NetworkGame extends Game implements Session.Handler
+{
+	/* tipul sesiunilor de joc */
+	public final static String SESSION_TYPE = "joc";
+
+	private Session session;
+	private String opponentID;
+
+	/**
+	 * Constructorul pentru clasa NetworkGame. Jocul devine handler-ul sesiunii
+	 * si primeste mutari pana la {@link #close()} sau pana cand adversarul
+	 * inchide sesiunea.
+	 * 
+	 * @param session sesiunea jocului, deschisa local sau de adversar
+	 * @param opponentID id-ul adversarului
+	 * @param localSide culoarea jucatorului local
+	 */
+	public NetworkGame(Session session, String opponentID, int localSide)
+	{
+		super(localSide);
+		this.session = session;
+		this.opponentID = opponentID;
+		session.setHandler(this);
+	}
+
+	public String getOpponentID()
+	{
+		return opponentID;
+	}
+
+	public Session getSession()
+	{
+		return session;
+	}
+
+	protected boolean sendMove(Position before, final long move)
+	{
+		boolean sent = session.sendReliable(MoveCodec.encode(before, move), new DeliveryListener() {
+			public void deliveryCompleted(Delivery delivery)
+			{
+				if (!delivery.isDelivered() && opponentID.equals(delivery.getReceiverID()))
+				{
+					Log.e("NetworkGame","mutarea " + Move.toString(move) + " nu a ajuns la adversar, jocul se opreste.");
+					abort();
+				}
+			}
+		});
+		if (!sent) Log.e("NetworkGame","mutarea " + Move.toString(move) + " nu a putut fi trimisa.");
+		return sent;
+	}
+
+	/**
+	 * Trateaza mutarile primite de la adversar.
+	 */
+	public void messageReceived(Session session, String senderID, String senderName, String data)
+	{
+		if (!opponentID.equals(senderID) || !MoveCodec.isMove(data)) return;
+
+		long move = MoveCodec.decode(getPosition(), data);
+		if (move == MoveCodec.NONE || !opponentMove(move))
+		{
+			illegalMove(data);
+			return;
+		}
+		Log.i("NetworkGame","adversarul a mutat " + Move.toString(move) + ".");
+	}
+
+	public void sessionClosed(Session session)
+	{
+		Log.i("NetworkGame","adversarul a iesit din joc.");
+		opponentLeft();
+	}
+
+	/**
+	 * Nu mai primeste mutari si iese din sesiune.
+	 */
+	public void close()
+	{
+		session.close();
+	}
+}
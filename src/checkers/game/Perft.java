@@ -0,0 +1,135 @@
+package checkers.game;
+
+/**
+ * Numara frunzele arborelui de mutari pana la o adancime data, pentru a
+ * verifica generatorul de mutari si a-i masura viteza. Numerele pentru
+ * pozitia de inceput sunt cele publicate; cele pentru celelalte pozitii (dame
+ * care se intorc prin capturi pe campul de plecare, capturi multiple,
+ * promovare in timpul unei capturi) au fost verificate cu un generator
+ * independent, pe o tabla 8x8.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Perft
+{
+	private final static String[] NAMES = { "start", "kings", "jumps", "promotion", "midgame", "endgame" };
+	private final static String[] FENS = {
+			"B:W21-32:B1-12",
+			"W:WK10,K11,K19,K20:B6,14,15,18,22,23,24,K27",
+			"B:W6,7,14,15,22,23:B1,2,3,K18",
+			"B:WK5,13,26,27:BK1,9,22",
+			"B:W14,15,22,23,24,31,32:BK1,10,11,12",
+			"W:W9,10,11,17,18,25:B20,26,27,K30,K31,K32" };
+	/* numarul de frunze la adancimile 1, 2, ... */
+	private final static long[][] COUNTS = {
+			{ 7, 49, 302, 1469, 7361, 36768, 179740, 845931, 3963680 },
+			{ 4, 18, 43, 293, 2169, 15506, 105537, 733472 },
+			{ 10, 30, 91, 260, 1013, 3359, 15776, 56737, 292588 },
+			{ 1, 2, 3, 11, 50, 191, 849, 3359, 15540 },
+			{ 5, 23, 116, 734, 3470, 19357, 87596, 478419, 2166128 },
+			{ 12, 24, 156, 760, 4968, 25659, 166677, 955929 } };
+
+	private Position position;
+	private MoveList[] lists;
+
+	/**
+	 * @param position pozitia de la care se numara; este modificata in timpul
+	 *            numararii si refacuta la sfarsit
+	 */
+	public Perft(Position position)
+	{
+		this.position = position;
+		lists = new MoveList[0];
+	}
+
+	/**
+	 * @param depth adancimea, cel putin 1
+	 * @return numarul de frunze
+	 */
+	public long run(int depth)
+	{
+		if (depth < 1) throw new IllegalArgumentException("Adancime incorecta: " + depth);
+		if (lists.length < depth)
+		{
+			lists = new MoveList[depth];
+			for (int i = 0; i < depth; i++)
+			{
+				lists[i] = new MoveList();
+			}
+		}
+		return count(depth);
+	}
+
+	private long count(int depth)
+	{
+		MoveList list = lists[depth - 1];
+		list.clear();
+		int n = position.generate(list);
+		// ultimul nivel: frunzele sunt chiar mutarile generate
+		if (depth == 1) return n;
+		long nodes = 0;
+		for (int i = 0; i < n; i++)
+		{
+			long move = list.get(i);
+			position.make(move);
+			nodes += count(depth - 1);
+			position.unmake(move);
+		}
+		return nodes;
+	}
+
+	/**
+	 * @return numarul pozitiilor de test
+	 */
+	public static int getCaseCount()
+	{
+		return NAMES.length;
+	}
+
+	/**
+	 * @param name numele unei pozitii de test, de exemplu "start"
+	 * @return indicele pozitiei, sau -1
+	 */
+	public static int findCase(String name)
+	{
+		for (int i = 0; i < NAMES.length; i++)
+		{
+			if (NAMES[i].equals(name)) return i;
+		}
+		return -1;
+	}
+
+	public static String getName(int index)
+	{
+		return NAMES[index];
+	}
+
+	/**
+	 * @param index
+	 * @return o pozitie noua, egala cu pozitia de test
+	 */
+	public static Position getPosition(int index)
+	{
+		return Position.parse(FENS[index]);
+	}
+
+	/**
+	 * @param index
+	 * @return cea mai mare adancime cu numar cunoscut
+	 */
+	public static int getMaxDepth(int index)
+	{
+		return COUNTS[index].length;
+	}
+
+	/**
+	 * @param index
+	 * @param depth
+	 * @return numarul cunoscut de frunze
+	 */
+	public static long getExpected(int index, int depth)
+	{
+		return COUNTS[index][depth - 1];
+	}
+}
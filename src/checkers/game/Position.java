@@ -0,0 +1,543 @@
+package checkers.game;
+
+/**
+ * O pozitie de dame (regulile americane: 8x8, piesele simple muta si captureaza
+ * doar inainte, damele muta cate un camp in orice directie, capturarea este
+ * obligatorie si continua cat timp se poate, iar o piesa ajunsa pe ultimul rand
+ * devine dama si se opreste).
+ * 
+ * Cele 32 de campuri negre sunt numerotate de la 0 (campul 1 din notatia
+ * standard) la 31. Piesele sunt tinute ca masti de biti, cu un bit fantoma
+ * dupa fiecare doua randuri (bitii 8, 17 si 26): astfel fiecare directie
+ * diagonala este o deplasare constanta (4 sau 5) pentru toate campurile, iar
+ * mutarile se genereaza cu cateva operatii pe biti. Negrul incepe, de pe
+ * campurile 0-11, si muta spre numere mai mari.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Position
+{
+	public final static int BLACK = 0;
+	public final static int WHITE = 1;
+
+	/* bitii folositi de cele 32 de campuri */
+	final static long VALID = ((1L << 35) - 1) & ~((1L << 8) | (1L << 17) | (1L << 26));
+	/* randul pe care piesele negre devin dame */
+	final static long BLACK_KING_ROW = (1L << 31) | (1L << 32) | (1L << 33) | (1L << 34);
+	/* randul pe care piesele albe devin dame */
+	final static long WHITE_KING_ROW = (1L << 0) | (1L << 1) | (1L << 2) | (1L << 3);
+
+	private final static int MAX_PLY = 128;
+
+	long black, white, kings;
+	int side;
+	/* cheia Zobrist, actualizata la fiecare mutare */
+	long hash;
+
+	/* damele si cheia de dinaintea fiecarei mutari facute, pentru a le reface */
+	private long[] undoStack;
+	private int ply;
+
+	/**
+	 * Pozitia de inceput.
+	 */
+	public Position()
+	{
+		this(squaresToBits(0x00000FFF), squaresToBits(0xFFF00000), 0, BLACK);
+	}
+
+	/**
+	 * @param black piesele negre (masca de biti interna)
+	 * @param white piesele albe
+	 * @param kings damele, de ambele culori
+	 * @param side cine muta
+	 */
+	Position(long black, long white, long kings, int side)
+	{
+		this.black = black;
+		this.white = white;
+		this.kings = kings;
+		this.side = side;
+		hash = Zobrist.hash(black, white, kings, side);
+		undoStack = new long[MAX_PLY * 2];
+	}
+
+	/**
+	 * @param other
+	 * @return o copie a pozitiei, fara istoricul mutarilor
+	 */
+	public Position(Position other)
+	{
+		this(other.black, other.white, other.kings, other.side);
+	}
+
+	/**
+	 * Schimba pozitia si uita mutarile facute; folosit la generarea
+	 * tablebase-urilor, pentru a nu crea cate un obiect pentru fiecare pozitie.
+	 */
+	void set(long black, long white, long kings, int side)
+	{
+		this.black = black;
+		this.white = white;
+		this.kings = kings;
+		this.side = side;
+		hash = Zobrist.hash(black, white, kings, side);
+		ply = 0;
+	}
+
+	/**
+	 * Construieste o pozitie dupa campurile pieselor.
+	 * 
+	 * @param black campurile pieselor negre (bitul i = campul i)
+	 * @param white campurile pieselor albe
+	 * @param kings campurile damelor
+	 * @param side cine muta
+	 * @return pozitia
+	 */
+	public static Position of(int black, int white, int kings, int side)
+	{
+		if ((black & white) != 0 || (kings & ~(black | white)) != 0 || (side != BLACK && side != WHITE))
+		{
+			throw new IllegalArgumentException("Pozitie incorecta");
+		}
+		return new Position(squaresToBits(black), squaresToBits(white), squaresToBits(kings), side);
+	}
+
+	/**
+	 * Citeste o pozitie in notatia FEN folosita de PDN, de exemplu
+	 * "B:W21-32:B1-12" (pozitia de inceput) sau "W:WK10,18:B14,K22". Campurile
+	 * sunt numerotate de la 1 la 32, iar damele au prefixul K.
+	 * 
+	 * @param fen
+	 * @return pozitia
+	 * @throws IllegalArgumentException daca textul nu este o pozitie corecta
+	 */
+	public static Position parse(String fen) throws IllegalArgumentException
+	{
+		String[] parts = fen.trim().split(":");
+		if (parts.length < 1 || parts.length > 3 || (!parts[0].equals("B") && !parts[0].equals("W")))
+		{
+			throw new IllegalArgumentException("FEN incorect: " + fen);
+		}
+		int[] pieces = new int[2];
+		int kings = 0;
+		for (int i = 1; i < parts.length; i++)
+		{
+			String part = parts[i].trim();
+			if (part.endsWith(".")) part = part.substring(0, part.length() - 1);
+			if (part.length() == 0 || (part.charAt(0) != 'B' && part.charAt(0) != 'W'))
+			{
+				throw new IllegalArgumentException("FEN incorect: " + fen);
+			}
+			int color = (part.charAt(0) == 'B') ? BLACK : WHITE;
+			if (part.length() == 1) continue;
+			for (String item : part.substring(1).split(","))
+			{
+				item = item.trim();
+				boolean king = item.startsWith("K");
+				if (king) item = item.substring(1);
+				int dash = item.indexOf('-');
+				int first, last;
+				try
+				{
+					first = Integer.parseInt(dash < 0 ? item : item.substring(0, dash));
+					last = (dash < 0) ? first : Integer.parseInt(item.substring(dash + 1));
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IllegalArgumentException("FEN incorect: " + fen);
+				}
+				if (first < 1 || last > 32 || first > last) throw new IllegalArgumentException("FEN incorect: " + fen);
+				for (int s = first; s <= last; s++)
+				{
+					pieces[color] |= 1 << (s - 1);
+					if (king) kings |= 1 << (s - 1);
+				}
+			}
+		}
+		return of(pieces[BLACK], pieces[WHITE], kings, parts[0].equals("B") ? BLACK : WHITE);
+	}
+
+	/**
+	 * @return pozitia in notatia FEN, vezi {@link #parse(String)}
+	 */
+	public String toFen()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(side == BLACK ? 'B' : 'W');
+		appendFen(sb, 'W', white);
+		appendFen(sb, 'B', black);
+		return sb.toString();
+	}
+
+	private void appendFen(StringBuilder sb, char color, long pieces)
+	{
+		sb.append(':').append(color);
+		int squares = bitsToSquares(pieces), kingSquares = bitsToSquares(kings);
+		boolean first = true;
+		for (int s = 0; s < 32; s++)
+		{
+			if ((squares & (1 << s)) == 0) continue;
+			if (!first) sb.append(',');
+			if ((kingSquares & (1 << s)) != 0) sb.append('K');
+			sb.append(s + 1);
+			first = false;
+		}
+	}
+
+	/**
+	 * @param square campul, 0..31
+	 * @return bitul intern al campului
+	 */
+	static int bit(int square)
+	{
+		return square + (square >> 3);
+	}
+
+	/**
+	 * @param bit bitul intern
+	 * @return campul, 0..31
+	 */
+	static int square(int bit)
+	{
+		return bit - bit / 9;
+	}
+
+	static long squaresToBits(int squares)
+	{
+		long bits = 0;
+		for (int s = 0; s < 32; s++)
+		{
+			if ((squares & (1 << s)) != 0) bits |= 1L << bit(s);
+		}
+		return bits;
+	}
+
+	static int bitsToSquares(long bits)
+	{
+		int squares = 0;
+		while (bits != 0)
+		{
+			int b = Long.numberOfTrailingZeros(bits);
+			bits &= bits - 1;
+			squares |= 1 << square(b);
+		}
+		return squares;
+	}
+
+	/**
+	 * @return cine muta: {@link #BLACK} sau {@link #WHITE}
+	 */
+	public int getSide()
+	{
+		return side;
+	}
+
+	/**
+	 * @return cheia Zobrist a pozitiei; doua pozitii egale au aceeasi cheie
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * @param color
+	 * @return campurile pieselor culorii date (bitul i = campul i)
+	 */
+	public int getPieces(int color)
+	{
+		return bitsToSquares(color == BLACK ? black : white);
+	}
+
+	/**
+	 * @return campurile damelor, de ambele culori
+	 */
+	public int getKings()
+	{
+		return bitsToSquares(kings);
+	}
+
+	/**
+	 * @param color
+	 * @return numarul pieselor culorii date
+	 */
+	public int count(int color)
+	{
+		return Long.bitCount(color == BLACK ? black : white);
+	}
+
+	/**
+	 * Genereaza mutarile legale. Daca exista o capturare, sunt generate doar
+	 * capturarile.
+	 * 
+	 * @param list lista in care se adauga mutarile
+	 * @return numarul de mutari adaugate
+	 */
+	public int generate(MoveList list)
+	{
+		int start = list.size();
+		generateCaptures(list);
+		if (list.size() == start) generateMoves(list);
+		return list.size() - start;
+	}
+
+	/**
+	 * @return true daca jucatorul la mutare este obligat sa captureze
+	 */
+	public boolean hasCapture()
+	{
+		long empty = VALID & ~(black | white);
+		long own, enemy;
+		if (side == BLACK)
+		{
+			own = black;
+			enemy = white;
+		}
+		else
+		{
+			own = white;
+			enemy = black;
+		}
+		long up, down;
+		if (side == BLACK)
+		{
+			up = own;
+			down = own & kings;
+		}
+		else
+		{
+			up = own & kings;
+			down = own;
+		}
+		return ((((up << 4) & enemy) << 4) & empty) != 0 || ((((up << 5) & enemy) << 5) & empty) != 0
+				|| ((((down >>> 4) & enemy) >>> 4) & empty) != 0 || ((((down >>> 5) & enemy) >>> 5) & empty) != 0;
+	}
+
+	private void generateMoves(MoveList list)
+	{
+		long empty = VALID & ~(black | white);
+		long up, down, promote;
+		if (side == BLACK)
+		{
+			up = black;
+			down = black & kings;
+			promote = BLACK_KING_ROW;
+		}
+		else
+		{
+			up = white & kings;
+			down = white;
+			promote = WHITE_KING_ROW;
+		}
+		addSteps(list, (up << 4) & empty, -4, promote);
+		addSteps(list, (up << 5) & empty, -5, promote);
+		addSteps(list, (down >>> 4) & empty, 4, promote);
+		addSteps(list, (down >>> 5) & empty, 5, promote);
+	}
+
+	/**
+	 * @param targets campurile pe care se ajunge
+	 * @param back deplasarea de la destinatie inapoi la origine
+	 * @param promote randul pe care se face dama
+	 */
+	private void addSteps(MoveList list, long targets, int back, long promote)
+	{
+		while (targets != 0)
+		{
+			int to = Long.numberOfTrailingZeros(targets);
+			targets &= targets - 1;
+			int from = to + back;
+			boolean promotion = (kings & (1L << from)) == 0 && (promote & (1L << to)) != 0;
+			list.add(Move.create(from, to, 0, promotion));
+		}
+	}
+
+	private void generateCaptures(MoveList list)
+	{
+		if (!hasCapture()) return;
+		long own = (side == BLACK) ? black : white;
+		while (own != 0)
+		{
+			int from = Long.numberOfTrailingZeros(own);
+			own &= own - 1;
+			boolean king = (kings & (1L << from)) != 0;
+			long empty = (VALID & ~(black | white)) | (1L << from);
+			jumps(list, from, from, 0, king, empty, list.size());
+		}
+	}
+
+	/**
+	 * Cauta continuarile unei capturi multiple.
+	 * 
+	 * @param from campul de plecare
+	 * @param at campul curent
+	 * @param captured piesele sarite pana acum
+	 * @param king true daca piesa este dama
+	 * @param empty campurile libere (inclusiv cel de plecare)
+	 * @param first inceputul mutarilor acestei piese in lista, pentru a elimina
+	 *            drumurile diferite care duc la aceeasi mutare
+	 * @return true daca s-a gasit cel putin o saritura
+	 */
+	private boolean jumps(MoveList list, int from, int at, long captured, boolean king, long empty, int first)
+	{
+		long enemy = ((side == BLACK) ? white : black) & ~captured;
+		long pos = 1L << at;
+		boolean found = false;
+		boolean up = side == BLACK || king;
+		boolean down = side == WHITE || king;
+		for (int d = 0; d < 4; d++)
+		{
+			int shift = (d & 1) == 0 ? 4 : 5;
+			long mid, land;
+			if (d < 2)
+			{
+				if (!up) continue;
+				mid = pos << shift;
+				land = mid << shift;
+			}
+			else
+			{
+				if (!down) continue;
+				mid = pos >>> shift;
+				land = mid >>> shift;
+			}
+			if ((mid & enemy) == 0 || (land & empty) == 0) continue;
+
+			found = true;
+			int to = Long.numberOfTrailingZeros(land);
+			long now = captured | mid;
+			boolean promotion = !king && (land & (side == BLACK ? BLACK_KING_ROW : WHITE_KING_ROW)) != 0;
+			if (promotion || !jumps(list, from, to, now, king, empty, first))
+			{
+				long move = Move.create(from, to, now, promotion);
+				if (!king || !list.contains(move, first)) list.add(move);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Face o mutare generata pentru aceasta pozitie.
+	 * 
+	 * @param move
+	 */
+	public void make(long move)
+	{
+		long fromMask = 1L << Move.fromBit(move);
+		long toMask = 1L << Move.toBit(move);
+		long captured = Move.capturedBits(move);
+		if (ply * 2 == undoStack.length)
+		{
+			long[] bigger = new long[ply * 4];
+			System.arraycopy(undoStack, 0, bigger, 0, ply * 2);
+			undoStack = bigger;
+		}
+		undoStack[ply * 2] = kings;
+		undoStack[ply * 2 + 1] = hash;
+		ply++;
+
+		boolean king = (kings & fromMask) != 0;
+		long h = hash ^ Zobrist.SIDE ^ Zobrist.piece(side, king, Move.fromBit(move))
+				^ Zobrist.piece(side, king || Move.isPromotion(move), Move.toBit(move));
+		for (long c = captured; c != 0; c &= c - 1)
+		{
+			int b = Long.numberOfTrailingZeros(c);
+			h ^= Zobrist.piece(side ^ 1, (kings & (1L << b)) != 0, b);
+		}
+		hash = h;
+		if (side == BLACK)
+		{
+			black ^= fromMask ^ toMask;
+			white &= ~captured;
+		}
+		else
+		{
+			white ^= fromMask ^ toMask;
+			black &= ~captured;
+		}
+		if (king) kings ^= fromMask ^ toMask;
+		kings &= ~captured;
+		if (Move.isPromotion(move)) kings |= toMask;
+		side ^= 1;
+	}
+
+	/**
+	 * Anuleaza ultima mutare facuta cu {@link #make(long)}.
+	 * 
+	 * @param move aceeasi mutare
+	 */
+	public void unmake(long move)
+	{
+		long fromMask = 1L << Move.fromBit(move);
+		long toMask = 1L << Move.toBit(move);
+		long captured = Move.capturedBits(move);
+		side ^= 1;
+		ply--;
+		kings = undoStack[ply * 2];
+		hash = undoStack[ply * 2 + 1];
+		if (side == BLACK)
+		{
+			black ^= fromMask ^ toMask;
+			white |= captured;
+		}
+		else
+		{
+			white ^= fromMask ^ toMask;
+			black |= captured;
+		}
+	}
+
+	/**
+	 * @return true daca jucatorul la mutare nu mai are nicio mutare, deci a
+	 *         pierdut
+	 */
+	public boolean isLost()
+	{
+		MoveList list = new MoveList();
+		return generate(list) == 0;
+	}
+
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof Position)) return false;
+		Position p = (Position) o;
+		return black == p.black && white == p.white && kings == p.kings && side == p.side;
+	}
+
+	public int hashCode()
+	{
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * @return tabla, de sus (campurile 28-31) in jos: b/w piese simple, B/W
+	 *         dame, . campuri libere
+	 */
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int row = 7; row >= 0; row--)
+		{
+			for (int col = 0; col < 8; col++)
+			{
+				// randurile pare au campurile pe coloanele impare
+				if ((row + col) % 2 == 0)
+				{
+					sb.append(' ');
+					continue;
+				}
+				long mask = 1L << bit(row * 4 + col / 2);
+				char c = '.';
+				if ((black & mask) != 0) c = 'b';
+				else if ((white & mask) != 0) c = 'w';
+				if ((kings & mask) != 0) c = Character.toUpperCase(c);
+				sb.append(c);
+			}
+			sb.append('\n');
+		}
+		sb.append(side == BLACK ? "negru muta" : "alb muta");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,146 @@
+package checkers.game;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Rezultatul perfect (castig, pierdere sau remiza, si in cate mutari) pentru
+ * pozitiile cu putine piese, citit dintr-un fisier creat de
+ * {@link TablebaseGenerator}. Fisierul este mapat in memorie, cate o zona
+ * pentru fiecare felie, deci o cautare citeste un singur octet si tabelele
+ * nu sunt incarcate in heap.
+ * 
+ * Formatul fisierului: "DAME", versiunea, numarul maxim de piese si numarul
+ * de felii (int), apoi pentru fiecare felie cheia (int), pozitia in fisier
+ * (long) si lungimea (int), apoi datele. Fiecare pozitie ocupa un octet v: 0
+ * pentru remiza, altfel jucatorul la mutare castiga (v - 1 impar) sau pierde
+ * (v - 1 par) in v - 1 mutari.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Tablebase
+{
+	final static int MAGIC = 0x44414D45;
+	final static int VERSION = 1;
+
+	/* pozitia nu se afla in tablebase */
+	public final static int UNKNOWN = -1;
+	public final static int DRAW = 0;
+
+	private RandomAccessFile file;
+	private ByteBuffer[] slices;
+	private int maxPieces;
+
+	/**
+	 * Deschide un fisier de tablebase.
+	 * 
+	 * @param path
+	 * @throws IOException daca fisierul nu poate fi citit sau nu are formatul
+	 *             corect
+	 */
+	public Tablebase(File path) throws IOException
+	{
+		file = new RandomAccessFile(path, "r");
+		try
+		{
+			if (file.readInt() != MAGIC || file.readInt() != VERSION)
+			{
+				throw new IOException("Fisierul nu este un tablebase: " + path);
+			}
+			maxPieces = file.readInt();
+			int count = file.readInt();
+			slices = new ByteBuffer[1 << 16];
+			FileChannel channel = file.getChannel();
+			for (int i = 0; i < count; i++)
+			{
+				int key = file.readInt();
+				long offset = file.readLong();
+				int length = file.readInt();
+				if (key < 0 || key >= slices.length || length != TablebaseIndex.size(key)
+						|| offset + length > channel.size())
+				{
+					throw new IOException("Felie incorecta in " + path);
+				}
+				MappedByteBuffer slice = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				slices[key] = slice;
+			}
+		}
+		catch (IOException e)
+		{
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return numarul maxim de piese (ale ambilor jucatori) al pozitiilor din
+	 *         tablebase
+	 */
+	public int getMaxPieces()
+	{
+		return maxPieces;
+	}
+
+	/**
+	 * @param position
+	 * @return rezultatul pozitiei pentru jucatorul la mutare (vezi
+	 *         {@link #isWin(int)}, {@link #getDistance(int)}), sau
+	 *         {@link #UNKNOWN}
+	 */
+	public int probe(Position position)
+	{
+		if (position.black == 0 || position.white == 0)
+		{
+			// jucatorul fara piese nu mai poate muta
+			boolean none = (position.side == Position.BLACK ? position.black : position.white) == 0;
+			return none ? 1 : UNKNOWN;
+		}
+		if (Long.bitCount(position.black | position.white) > maxPieces) return UNKNOWN;
+		int key = TablebaseIndex.key(position);
+		ByteBuffer slice = slices[key];
+		if (slice == null) return UNKNOWN;
+		return slice.get((int) TablebaseIndex.index(position, key)) & 0xFF;
+	}
+
+	/**
+	 * @param value un rezultat diferit de {@link #UNKNOWN}
+	 * @return true daca jucatorul la mutare castiga
+	 */
+	public static boolean isWin(int value)
+	{
+		return value > 0 && (value & 1) == 0;
+	}
+
+	/**
+	 * @param value un rezultat diferit de {@link #UNKNOWN}
+	 * @return true daca jucatorul la mutare pierde
+	 */
+	public static boolean isLoss(int value)
+	{
+		return value > 0 && (value & 1) == 1;
+	}
+
+	/**
+	 * @param value un castig sau o pierdere
+	 * @return numarul de mutari (ale ambilor jucatori) pana la sfarsitul
+	 *         jocului, cu joc perfect
+	 */
+	public static int getDistance(int value)
+	{
+		return value - 1;
+	}
+
+	/**
+	 * Inchide fisierul. Zonele mapate raman valide pana sunt eliberate de
+	 * garbage collector.
+	 */
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
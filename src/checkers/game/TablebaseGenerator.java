@@ -0,0 +1,376 @@
+package checkers.game;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.util.Log;
+
+/**
+ * Genereaza tablebase-ul pentru toate pozitiile cu cel mult un numar dat de
+ * piese, prin analiza retrograda. Feliile sunt calculate in ordinea
+ * materialului (mai intai cele cu mai putine piese, apoi cele cu mai putine
+ * piese simple), astfel incat capturile si promovarile duc mereu intr-o felie
+ * deja calculata.
+ * 
+ * Intr-o felie, mutarile fiecarei pozitii sunt generate o singura data; cele
+ * care raman in felie sunt pastrate ca indici, iar pentru celelalte se
+ * pastreaza doar rezultatul cel mai bun. Apoi, la pasul p, o pozitie castiga
+ * in p mutari daca are o mutare spre o pozitie pierduta in p - 1 si pierde in
+ * p mutari daca toate mutarile duc in pozitii castigate, cea mai lunga in
+ * p - 1. Ce ramane nerezolvat este remiza. Fiecare pas imparte felia intre
+ * fire.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class TablebaseGenerator
+{
+	/* numarul de pozitii dintr-o bucata de lucru */
+	private final static int CHUNK = 1 << 16;
+	/* distanta maxima care incape intr-un octet */
+	private final static int MAX_DISTANCE = 254;
+
+	/* biti pentru rezultatele mutarilor care ies din felie */
+	private final static int EXTERNAL_WIN = 0xFF;
+	private final static int EXTERNAL_LOSS = 0xFF00;
+	private final static int EXTERNAL_DRAW = 1 << 16;
+	private final static int INVALID = 1 << 17;
+
+	private int maxPieces;
+	private int threads;
+	private Map<Integer, byte[]> done;
+
+	/**
+	 * Constructorul pentru clasa TablebaseGenerator.
+	 * 
+	 * @param maxPieces numarul maxim de piese ale ambilor jucatori, 2..6
+	 * @param threads numarul de fire
+	 */
+	public TablebaseGenerator(int maxPieces, int threads)
+	{
+		if (maxPieces < 2 || maxPieces > 6) throw new IllegalArgumentException("Numar de piese incorect: " + maxPieces);
+		if (threads < 1) throw new IllegalArgumentException("Numar de fire incorect: " + threads);
+		this.maxPieces = maxPieces;
+		this.threads = threads;
+	}
+
+	/**
+	 * Calculeaza toate feliile si le scrie in fisier, in formatul citit de
+	 * {@link Tablebase}.
+	 * 
+	 * @param path
+	 * @return numarul de felii scrise
+	 * @throws IOException
+	 */
+	public int generate(File path) throws IOException
+	{
+		List<Integer> keys = slices(maxPieces);
+		done = new HashMap<Integer, byte[]>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			for (int key : keys)
+			{
+				done.put(key, solve(key, executor));
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		try
+		{
+			out.writeInt(Tablebase.MAGIC);
+			out.writeInt(Tablebase.VERSION);
+			out.writeInt(maxPieces);
+			out.writeInt(keys.size());
+			long offset = 16 + 16L * keys.size();
+			for (int key : keys)
+			{
+				out.writeInt(key);
+				out.writeLong(offset);
+				out.writeInt(done.get(key).length);
+				offset += done.get(key).length;
+			}
+			for (int key : keys)
+			{
+				out.write(done.get(key));
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		done = null;
+		return keys.size();
+	}
+
+	/**
+	 * @return cheile feliilor, in ordinea in care trebuie calculate
+	 */
+	static List<Integer> slices(int maxPieces)
+	{
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int bm = 0; bm <= maxPieces; bm++)
+			for (int bk = 0; bm + bk <= maxPieces; bk++)
+				for (int wm = 0; bm + bk + wm <= maxPieces; wm++)
+					for (int wk = 0; bm + bk + wm + wk <= maxPieces; wk++)
+					{
+						if (bm + bk == 0 || wm + wk == 0 || bm > 12 || wm > 12) continue;
+						keys.add(TablebaseIndex.key(bm, bk, wm, wk));
+					}
+		Collections.sort(keys, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				int d = pieces(a) - pieces(b);
+				if (d == 0) d = men(a) - men(b);
+				return (d == 0) ? a - b : d;
+			}
+		});
+		return keys;
+	}
+
+	private static int men(int key)
+	{
+		return TablebaseIndex.blackMen(key) + TablebaseIndex.whiteMen(key);
+	}
+
+	private static int pieces(int key)
+	{
+		return men(key) + TablebaseIndex.blackKings(key) + TablebaseIndex.whiteKings(key);
+	}
+
+	private static String name(int key)
+	{
+		return "negru " + TablebaseIndex.blackMen(key) + "+" + TablebaseIndex.blackKings(key) + "D, alb "
+				+ TablebaseIndex.whiteMen(key) + "+" + TablebaseIndex.whiteKings(key) + "D";
+	}
+
+	private byte[] solve(int key, ExecutorService executor)
+	{
+		long size = TablebaseIndex.size(key);
+		if (size > Integer.MAX_VALUE) throw new IllegalStateException("Felie prea mare: " + name(key));
+		long start = System.currentTimeMillis();
+		byte[] values = new byte[(int) size];
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for (int from = 0; from < size; from += CHUNK)
+		{
+			chunks.add(new Chunk(key, values, from, (int) Math.min(size, (long) from + CHUNK)));
+		}
+
+		int maxExternal = 0;
+		for (Future<Integer> f : run(executor, chunks, 0))
+		{
+			maxExternal = Math.max(maxExternal, get(f));
+		}
+		int pass = 1;
+		while (true)
+		{
+			int changed = 0;
+			for (Future<Integer> f : run(executor, chunks, pass))
+			{
+				changed += get(f);
+			}
+			if (changed == 0 && pass > maxExternal) break;
+			if (++pass > MAX_DISTANCE) throw new IllegalStateException("Distanta prea mare in felia " + name(key));
+		}
+
+		int wins = 0, losses = 0, draws = 0;
+		for (Chunk c : chunks)
+		{
+			for (int i = c.from; i < c.to; i++)
+			{
+				if ((c.external[i - c.from] & INVALID) != 0) continue;
+				if (values[i] == 0) draws++;
+				else if (Tablebase.isWin(values[i] & 0xFF)) wins++;
+				else losses++;
+			}
+		}
+		Log.i("Tablebase","felia " + name(key) + ": " + wins + " castiguri, " + losses + " pierderi, " + draws
+				+ " remize, " + pass + " pasi, " + (System.currentTimeMillis() - start) + " ms.");
+		return values;
+	}
+
+	private static List<Future<Integer>> run(ExecutorService executor, List<Chunk> chunks, final int pass)
+	{
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (final Chunk c : chunks)
+		{
+			tasks.add(new Callable<Integer>() {
+				public Integer call()
+				{
+					return (pass == 0) ? c.expand() : c.propagate(pass);
+				}
+			});
+		}
+		try
+		{
+			return executor.invokeAll(tasks);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Generare intrerupta");
+		}
+	}
+
+	private static int get(Future<Integer> f)
+	{
+		try
+		{
+			return f.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Generare intrerupta");
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Generare esuata", e.getCause());
+		}
+	}
+
+	/**
+	 * O parte dintr-o felie, cu mutarile pozitiilor ei.
+	 */
+	private final class Chunk
+	{
+		private final int key;
+		private final byte[] values;
+		private final int from, to;
+		/* succesorii din felie ai pozitiei from + i: next[first[i]..first[i + 1]) */
+		private int[] first;
+		private int[] next;
+		/* rezultatul mutarilor care ies din felie si bitul INVALID */
+		private int[] external;
+
+		Chunk(int key, byte[] values, int from, int to)
+		{
+			this.key = key;
+			this.values = values;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Genereaza mutarile si rezolva pozitiile fara mutari.
+		 * 
+		 * @return cea mai mare distanta a unui rezultat din afara feliei
+		 */
+		int expand()
+		{
+			Position p = new Position();
+			MoveList list = new MoveList();
+			first = new int[to - from + 1];
+			next = new int[(to - from) * 4];
+			external = new int[to - from];
+			int count = 0, maxExternal = 0;
+			for (int i = from; i < to; i++)
+			{
+				first[i - from] = count;
+				if (!TablebaseIndex.decode(key, i, p))
+				{
+					external[i - from] = INVALID;
+					continue;
+				}
+				list.clear();
+				if (p.generate(list) == 0)
+				{
+					values[i] = 1;
+					continue;
+				}
+				int win = 0, loss = 0;
+				boolean draw = false;
+				for (int m = 0; m < list.size(); m++)
+				{
+					long move = list.get(m);
+					p.make(move);
+					int child;
+					if ((p.side == Position.BLACK ? p.black : p.white) == 0)
+					{
+						child = 1;
+					}
+					else
+					{
+						int childKey = TablebaseIndex.key(p);
+						int index = (int) TablebaseIndex.index(p, childKey);
+						if (childKey == key)
+						{
+							if (count == next.length)
+							{
+								int[] grown = new int[next.length * 2];
+								System.arraycopy(next, 0, grown, 0, count);
+								next = grown;
+							}
+							next[count++] = index;
+							child = -1;
+						}
+						else
+						{
+							child = done.get(childKey)[index] & 0xFF;
+						}
+					}
+					p.unmake(move);
+					if (child == 0) draw = true;
+					else if (Tablebase.isLoss(child))
+					{
+						if (win == 0 || child < win) win = child;
+					}
+					else if (child > 0 && child > loss) loss = child;
+				}
+				// win si loss sunt distantele pozitiei (d + 1 a succesorului)
+				external[i - from] = win | (loss << 8) | (draw ? EXTERNAL_DRAW : 0);
+				maxExternal = Math.max(maxExternal, Math.max(win, loss));
+			}
+			first[to - from] = count;
+			return maxExternal;
+		}
+
+		/**
+		 * Rezolva pozitiile castigate sau pierdute in pass mutari.
+		 * 
+		 * @return numarul de pozitii rezolvate
+		 */
+		int propagate(int pass)
+		{
+			int changed = 0;
+			for (int i = from; i < to; i++)
+			{
+				int ext = external[i - from];
+				if (values[i] != 0 || (ext & INVALID) != 0) continue;
+				// o valoare pusa chiar la acest pas are distanta pass si este ignorata
+				boolean win = (ext & EXTERNAL_WIN) == pass;
+				boolean loss = (ext & (EXTERNAL_WIN | EXTERNAL_DRAW)) == 0 && (ext & EXTERNAL_LOSS) >> 8 <= pass;
+				for (int j = first[i - from]; j < first[i - from + 1] && !win; j++)
+				{
+					int child = values[next[j]] & 0xFF;
+					if (child == pass && Tablebase.isLoss(child)) win = true;
+					else if (child == 0 || child > pass || Tablebase.isLoss(child)) loss = false;
+				}
+				if (win || loss)
+				{
+					values[i] = (byte) (pass + 1);
+					changed++;
+				}
+			}
+			return changed;
+		}
+	}
+}
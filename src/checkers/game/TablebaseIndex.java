@@ -0,0 +1,209 @@
+package checkers.game;
+
+/**
+ * Numerotarea pozitiilor dintr-o felie de tablebase. O felie contine toate
+ * pozitiile cu acelasi material (piese simple si dame negre, piese simple si
+ * dame albe). Indicele este format din: combinatia pieselor simple negre pe
+ * campurile 0-27 (pe campurile 28-31 ar fi dame), a pieselor simple albe pe
+ * campurile 4-31, a damelor negre pe campurile ramase libere, a damelor albe
+ * pe campurile ramase apoi si, la sfarsit, jucatorul la mutare. Piesele
+ * simple negre si albe sunt numerotate independent, deci unii indici (cei
+ * cu piese suprapuse) nu corespund unei pozitii.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+final class TablebaseIndex
+{
+	/* combinari: BINOMIAL[n][k] */
+	private final static long[][] BINOMIAL = new long[33][33];
+
+	static
+	{
+		for (int n = 0; n <= 32; n++)
+		{
+			BINOMIAL[n][0] = 1;
+			for (int k = 1; k <= n; k++)
+			{
+				BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k <= n - 1 ? BINOMIAL[n - 1][k] : 0);
+			}
+		}
+	}
+
+	private TablebaseIndex()
+	{
+	}
+
+	static long binomial(int n, int k)
+	{
+		return (k < 0 || k > n) ? 0 : BINOMIAL[n][k];
+	}
+
+	/**
+	 * @return cheia feliei, 0..65535
+	 */
+	static int key(int blackMen, int blackKings, int whiteMen, int whiteKings)
+	{
+		return blackMen | (blackKings << 4) | (whiteMen << 8) | (whiteKings << 12);
+	}
+
+	/**
+	 * @return cheia feliei din care face parte pozitia
+	 */
+	static int key(Position p)
+	{
+		long bk = p.black & p.kings, wk = p.white & p.kings;
+		return key(Long.bitCount(p.black) - Long.bitCount(bk), Long.bitCount(bk), Long.bitCount(p.white)
+				- Long.bitCount(wk), Long.bitCount(wk));
+	}
+
+	static int blackMen(int key)
+	{
+		return key & 0xF;
+	}
+
+	static int blackKings(int key)
+	{
+		return (key >> 4) & 0xF;
+	}
+
+	static int whiteMen(int key)
+	{
+		return (key >> 8) & 0xF;
+	}
+
+	static int whiteKings(int key)
+	{
+		return (key >> 12) & 0xF;
+	}
+
+	/**
+	 * @return numarul de indici ai feliei
+	 */
+	static long size(int key)
+	{
+		int bm = blackMen(key), bk = blackKings(key), wm = whiteMen(key), wk = whiteKings(key);
+		int free = 32 - bm - wm;
+		return binomial(28, bm) * binomial(28, wm) * binomial(free, bk) * binomial(free - bk, wk) * 2;
+	}
+
+	/**
+	 * @param p o pozitie din felia cu cheia data
+	 * @return indicele pozitiei in felie
+	 */
+	static long index(Position p, int key)
+	{
+		int black = Position.bitsToSquares(p.black), white = Position.bitsToSquares(p.white);
+		int kings = Position.bitsToSquares(p.kings);
+		int bm = black & ~kings, wm = white & ~kings;
+		int bk = black & kings, wk = white & kings;
+		int free = ~(bm | wm);
+
+		int nfree = 32 - blackMen(key) - whiteMen(key);
+		long index = rank(bm);
+		index = index * binomial(28, whiteMen(key)) + rank(wm >>> 4);
+		index = index * binomial(nfree, blackKings(key)) + rank(compress(bk, free));
+		free &= ~bk;
+		index = index * binomial(nfree - blackKings(key), whiteKings(key)) + rank(compress(wk, free));
+		return index * 2 + p.side;
+	}
+
+	/**
+	 * Reface pozitia cu indicele dat.
+	 * 
+	 * @param p pozitia in care se scrie rezultatul
+	 * @return false daca indicele nu corespunde unei pozitii
+	 */
+	static boolean decode(int key, long index, Position p)
+	{
+		int bmN = blackMen(key), bkN = blackKings(key), wmN = whiteMen(key), wkN = whiteKings(key);
+		int nfree = 32 - bmN - wmN;
+		int side = (int) (index & 1);
+		index >>>= 1;
+		long wkSize = binomial(nfree - bkN, wkN), bkSize = binomial(nfree, bkN), wmSize = binomial(28, wmN);
+		long wkIndex = index % wkSize;
+		index /= wkSize;
+		long bkIndex = index % bkSize;
+		index /= bkSize;
+		long wmIndex = index % wmSize;
+		long bmIndex = index / wmSize;
+
+		int bm = unrank(bmIndex, bmN);
+		int wm = unrank(wmIndex, wmN) << 4;
+		if ((bm & wm) != 0) return false;
+		int free = ~(bm | wm);
+		int bk = expand(unrank(bkIndex, bkN), free);
+		free &= ~bk;
+		int wk = expand(unrank(wkIndex, wkN), free);
+		p.set(Position.squaresToBits(bm | bk), Position.squaresToBits(wm | wk), Position.squaresToBits(bk | wk), side);
+		return true;
+	}
+
+	/**
+	 * Numarul combinatiei in ordine colexicografica.
+	 */
+	private static long rank(int set)
+	{
+		long r = 0;
+		int i = 1;
+		while (set != 0)
+		{
+			int e = Integer.numberOfTrailingZeros(set);
+			set &= set - 1;
+			r += binomial(e, i++);
+		}
+		return r;
+	}
+
+	private static int unrank(long r, int k)
+	{
+		int set = 0;
+		int c = 31;
+		for (int i = k; i >= 1; i--)
+		{
+			while (binomial(c, i) > r)
+			{
+				c--;
+			}
+			set |= 1 << c;
+			r -= binomial(c, i);
+			c--;
+		}
+		return set;
+	}
+
+	/**
+	 * Inlocuieste fiecare camp cu numarul lui de ordine printre campurile
+	 * libere.
+	 */
+	private static int compress(int set, int free)
+	{
+		int out = 0;
+		while (set != 0)
+		{
+			int s = Integer.numberOfTrailingZeros(set);
+			set &= set - 1;
+			out |= 1 << Integer.bitCount(free & ((1 << s) - 1));
+		}
+		return out;
+	}
+
+	/**
+	 * Inversul lui {@link #compress(int, int)}.
+	 */
+	private static int expand(int ranks, int free)
+	{
+		int out = 0, n = 0;
+		for (int s = 0; s < 32 && ranks != 0; s++)
+		{
+			if ((free & (1 << s)) == 0) continue;
+			if ((ranks & (1 << n)) != 0)
+			{
+				out |= 1 << s;
+				ranks &= ~(1 << n);
+			}
+			n++;
+		}
+		return out;
+	}
+}
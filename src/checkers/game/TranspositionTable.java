@@ -0,0 +1,150 @@
+package checkers.game;
+
+import java.util.Arrays;
+
+/**
+ * Tabela de transpozitie de marime fixa, indexata dupa cheia Zobrist a
+ * pozitiei. Fiecare intrare ocupa trei valori long dintr-un singur tablou:
+ * verificarea (cheie XOR mutare XOR informatii), mutarea si informatiile
+ * (scor, adancime, tipul scorului, generatia). O intrare scrisa pe jumatate
+ * de alt fir nu trece verificarea si este tratata ca lipsa, deci tabela
+ * poate fi folosita fara blocari.
+ * 
+ * La o coliziune ramane intrarea mai adanca, in afara de cazul in care ea
+ * este dintr-o cautare anterioara.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class TranspositionTable
+{
+	/* scorul este exact */
+	public final static int EXACT = 0;
+	/* scorul este o limita inferioara (a produs o taiere beta) */
+	public final static int LOWER = 1;
+	/* scorul este o limita superioara (nicio mutare nu a depasit alfa) */
+	public final static int UPPER = 2;
+
+	private final static int SLOT = 3;
+
+	private final long[] table;
+	private final int mask;
+	private volatile int age;
+
+	/**
+	 * @param megabytes memoria folosita, rotunjita in jos la un numar de
+	 *            intrari putere a lui 2
+	 */
+	public TranspositionTable(int megabytes)
+	{
+		if (megabytes < 1) throw new IllegalArgumentException("Marime incorecta: " + megabytes);
+		long entries = Long.highestOneBit(megabytes * 1024L * 1024L / (SLOT * 8));
+		entries = Math.min(entries, 1 << 26);
+		table = new long[(int) entries * SLOT];
+		mask = (int) entries - 1;
+	}
+
+	/**
+	 * @return numarul de intrari
+	 */
+	public int size()
+	{
+		return mask + 1;
+	}
+
+	/**
+	 * Incepe o cautare noua: intrarile vechi pot fi inlocuite oricand.
+	 */
+	public void newSearch()
+	{
+		age = (age + 1) & 0xFF;
+	}
+
+	/**
+	 * Sterge toate intrarile.
+	 */
+	public void clear()
+	{
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * Cauta o pozitie.
+	 * 
+	 * @param hash cheia pozitiei
+	 * @param entry primeste mutarea (entry[0]) si informatiile (entry[1])
+	 * @return true daca pozitia a fost gasita
+	 */
+	public boolean probe(long hash, long[] entry)
+	{
+		int i = ((int) hash & mask) * SLOT;
+		long check = table[i], move = table[i + 1], info = table[i + 2];
+		if ((check ^ move ^ info) != hash || info == 0) return false;
+		entry[0] = move;
+		entry[1] = info;
+		return true;
+	}
+
+	/**
+	 * Pastreaza rezultatul cautarii unei pozitii.
+	 * 
+	 * @param hash cheia pozitiei
+	 * @param move cea mai buna mutare gasita, sau 0
+	 * @param score scorul
+	 * @param depth adancimea cautarii, 0..255
+	 * @param type {@link #EXACT}, {@link #LOWER} sau {@link #UPPER}
+	 */
+	public void store(long hash, long move, int score, int depth, int type)
+	{
+		int i = ((int) hash & mask) * SLOT;
+		long check = table[i], oldMove = table[i + 1], oldInfo = table[i + 2];
+		boolean same = (check ^ oldMove ^ oldInfo) == hash;
+		int current = age;
+		if (oldInfo != 0 && getAge(oldInfo) == current && depth < getDepth(oldInfo) && !(same && type == EXACT))
+		{
+			return;
+		}
+		// se pastreaza mutarea veche daca pozitia este aceeasi si nu avem alta
+		if (move == 0 && same) move = oldMove;
+		long info = (score & 0xFFFFFFFFL) | ((long) depth << 32) | ((long) type << 40) | ((long) current << 42) | (1L << 50);
+		table[i] = hash ^ move ^ info;
+		table[i + 1] = move;
+		table[i + 2] = info;
+	}
+
+	public static int getScore(long info)
+	{
+		return (int) info;
+	}
+
+	public static int getDepth(long info)
+	{
+		return (int) (info >>> 32) & 0xFF;
+	}
+
+	public static int getType(long info)
+	{
+		return (int) (info >>> 40) & 0x3;
+	}
+
+	private static int getAge(long info)
+	{
+		return (int) (info >>> 42) & 0xFF;
+	}
+
+	/**
+	 * @return partea (la mie) din intrari folosite in cautarea curenta, dupa
+	 *         primele 1000 de intrari
+	 */
+	public int getUsage()
+	{
+		int used = 0, n = Math.min(1000, size());
+		int current = age;
+		for (int e = 0; e < n; e++)
+		{
+			long info = table[e * SLOT + 2];
+			if (info != 0 && getAge(info) == current) used++;
+		}
+		return used * 1000 / n;
+	}
+}
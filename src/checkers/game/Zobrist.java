@@ -0,0 +1,61 @@
+package checkers.game;
+
+import java.util.Random;
+
+/**
+ * Cheile Zobrist: un numar aleator pentru fiecare combinatie de culoare, tip
+ * de piesa si camp, plus unul pentru jucatorul la mutare. Cheia unei pozitii
+ * este XOR-ul numerelor pieselor ei, deci o mutare o schimba cu cateva
+ * operatii. Numerele sunt aceleasi la fiecare pornire (samanta fixa).
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+final class Zobrist
+{
+	/* [culoare * 2 + dama][bit intern] */
+	private final static long[][] PIECES = new long[4][35];
+	/* schimbat cand muta albul */
+	final static long SIDE;
+
+	static
+	{
+		Random random = new Random(0x5EEDL);
+		for (int i = 0; i < PIECES.length; i++)
+		{
+			for (int b = 0; b < PIECES[i].length; b++)
+			{
+				PIECES[i][b] = random.nextLong();
+			}
+		}
+		SIDE = random.nextLong();
+	}
+
+	private Zobrist()
+	{
+	}
+
+	static long piece(int color, boolean king, int bit)
+	{
+		return PIECES[color * 2 + (king ? 1 : 0)][bit];
+	}
+
+	/**
+	 * Calculeaza cheia de la zero.
+	 */
+	static long hash(long black, long white, long kings, int side)
+	{
+		long h = (side == Position.WHITE) ? SIDE : 0;
+		for (long b = black; b != 0; b &= b - 1)
+		{
+			int bit = Long.numberOfTrailingZeros(b);
+			h ^= piece(Position.BLACK, (kings & (1L << bit)) != 0, bit);
+		}
+		for (long w = white; w != 0; w &= w - 1)
+		{
+			int bit = Long.numberOfTrailingZeros(w);
+			h ^= piece(Position.WHITE, (kings & (1L << bit)) != 0, bit);
+		}
+		return h;
+	}
+}
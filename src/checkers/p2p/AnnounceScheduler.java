@@ -0,0 +1,180 @@
+package checkers.p2p;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import net.jxta.discovery.DiscoveryService;
+import net.jxta.document.Advertisement;
+
+/**
+ * Publica advertisement-urile partenerului local doar cand este nevoie: la
+ * pornire, cand un advertisement s-a schimbat si cand se apropie expirarea
+ * lui la ceilalti parteneri. Momentul republicarii are o parte aleatoare,
+ * ca partenerii porniti impreuna sa nu publice toti odata.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class AnnounceScheduler
+{
+	public final static long DEFAULT_LIFETIME = 2 * 60 * 1000;
+	public final static long DEFAULT_EXPIRATION = 2 * 60 * 1000;
+	/* cat de des se verifica daca trebuie republicat ceva */
+	public final static long CHECK_INTERVAL = 10 * 1000;
+
+	private DiscoveryService discovery;
+	private String peerId;
+	private long lifetime, expiration;
+	private List<Entry> entries;
+	private ScheduledExecutorService timer;
+	private Random random;
+
+	private long publishCount, skippedCount;
+	private Metrics.Counter published;
+
+	/**
+	 * Constructorul pentru clasa AnnounceScheduler.
+	 * 
+	 * @param discovery
+	 * @param peerId id-ul partenerului local
+	 * @param lifetime durata de existenta a advertisement-urilor (ms)
+	 * @param expiration durata de pastrare a lor de catre ceilalti parteneri (ms)
+	 */
+	public AnnounceScheduler(DiscoveryService discovery, String peerId, long lifetime, long expiration)
+	{
+		this.discovery = discovery;
+		this.peerId = peerId;
+		this.lifetime = lifetime;
+		this.expiration = expiration;
+		entries = new ArrayList<Entry>();
+		random = new Random();
+		published = Metrics.getShared().counter(Metrics.ADVERTISEMENTS_PUBLISHED);
+	}
+
+	/**
+	 * Adauga un advertisement de publicat.
+	 * 
+	 * @param adv
+	 */
+	public synchronized void add(Advertisement adv)
+	{
+		entries.add(new Entry(adv));
+	}
+
+	/**
+	 * Publica imediat toate advertisement-urile si porneste verificarea
+	 * periodica.
+	 */
+	public synchronized void start()
+	{
+		if (timer != null) return;
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "P2P-announce");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		publishAll();
+		timer.scheduleWithFixedDelay(new Runnable() {
+			public void run()
+			{
+				check();
+			}
+		}, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void shutdown()
+	{
+		if (timer != null)
+		{
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	/**
+	 * Publica toate advertisement-urile, indiferent de cand au fost publicate
+	 * ultima data.
+	 */
+	public synchronized void publishAll()
+	{
+		for (Entry e : entries)
+		{
+			publish(e, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Republica advertisement-urile schimbate sau care expira in curand.
+	 */
+	public synchronized void check()
+	{
+		long now = System.currentTimeMillis();
+		for (Entry e : entries)
+		{
+			if (now >= e.due || e.hash != e.adv.toString().hashCode())
+			{
+				publish(e, now);
+			}
+			else skippedCount++;
+		}
+	}
+
+	private void publish(Entry e, long now)
+	{
+		try
+		{
+			discovery.publish(e.adv, lifetime, expiration);
+			discovery.remotePublish(peerId, e.adv, expiration);
+			publishCount++;
+			published.inc();
+		}
+		catch (IOException ex)
+		{
+			Log.e("AnnounceScheduler","nu s-a putut publica advertisement-ul.");
+		}
+		e.hash = e.adv.toString().hashCode();
+		// se republica intre 3/4 si 7/8 din timpul de expirare
+		long margin = expiration / 8 + (long) (random.nextDouble() * expiration / 8);
+		e.due = now + expiration - margin;
+	}
+
+	/**
+	 * @return numarul de publicari (local si in retea) facute
+	 */
+	public synchronized long getPublishCount()
+	{
+		return publishCount;
+	}
+
+	/**
+	 * @return numarul de verificari in care un advertisement nu a trebuit
+	 *         republicat
+	 */
+	public synchronized long getSkippedCount()
+	{
+		return skippedCount;
+	}
+
+	private static class Entry
+	{
+		private Advertisement adv;
+		private int hash;
+		private long due;
+
+		private Entry(Advertisement adv)
+		{
+			this.adv = adv;
+		}
+	}
+}
@@ -5,8 +5,11 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,21 +33,33 @@ import checkers.p2p.event.*;
  */
 public class Connection implements P2PListener
 {
-	private final static long TIMER_PERIOD = 1000;
-	private final static long TIMER_FIRST_DELAY = 200;
-	private final static int MAX_SEARCHES_NUMBER = 5;
+	private final static int MAX_PEERS = 10;
+	/* partenerii salvati mai vechi de o zi nu mai sunt incarcati */
+	private final static long DIRECTORY_MAX_AGE = 24 * 60 * 60 * 1000L;
+	/* intervalul minim (ms) dintre doua salvari ale listei de parteneri */
+	private final static long DIRECTORY_SAVE_INTERVAL = 10 * 1000;
 
 	protected EventListenerList listenerList;
 	private NetworkManager manager;
+	private Dispatcher dispatcher;
 
 	private PeerGroup searchedGroup, netPeerGroup;
+	private PeerGroupID peerGroupID;
 	private Groups groups;
 	private Peers peers;
 	private String groupId, groupName, pipeId, pipeName;
-	private boolean started, ready, searching;
-	private Timer timer;
-	private int searchesNumber;
-
+	private boolean started, ready, unicast, compact;
+	private DiscoveryScheduler scheduler;
+	private SearchPolicy groupSearchPolicy;
+	private long flushWindow, ackTimeout, heartbeatInterval, ttl;
+	private int maxBatch, retries, inboxCapacity, inboxPolicy;
+	private Inbox.KeyExtractor inboxKeys;
+	private float backoff;
+	private PeerDirectory directory;
+	private long lastSave;
+	private volatile Sessions sessions;
+	/* momentul pornirii etapei curente (ms) */
+	private long stageStarted;
 
 	/**
 	 * Constructorul pentru clasa Connection.
@@ -54,9 +69,24 @@ public class Connection implements P2PListener
 	 * @throws IOException
 	 */
 	public Connection(String peerName, File cacheFolder) throws IOException
+	{
+		this(peerName, cacheFolder, Dispatcher.getShared());
+	}
+
+	/**
+	 * Constructorul pentru clasa Connection.
+	 * 
+	 * @param peerName numele partenerului local
+	 * @param cacheFolder folder-ul in care se salveaza fisierele de configurare
+	 * @param dispatcher firele pe care se livreaza notificarile retelei
+	 * @throws IOException
+	 */
+	public Connection(String peerName, File cacheFolder, Dispatcher dispatcher) throws IOException
 	{
 		Log.i("Connection","constructor");
 
+		this.dispatcher = dispatcher;
+		directory = new PeerDirectory(new File(cacheFolder, "peers.dat"));
 		listenerList = new EventListenerList();
 		manager = new NetworkManager(NetworkManager.ADHOC, peerName, cacheFolder.toURI());
 		NetworkConfigurator config = manager.getConfigurator();
@@ -66,20 +96,86 @@ public class Connection implements P2PListener
 		ConfigurationFactory cf = ConfigurationFactory.newInstance();
 		cf.setName(peerName);
 		
-		timer = new Timer();
-		searchesNumber = 0;
+		groupSearchPolicy = SearchPolicy.forGroups();
 
 		started = false;
 		ready = false;
-		searching = false;
+		unicast = true;
+		compact = true;
+		flushWindow = OutboundQueue.DEFAULT_FLUSH_WINDOW;
+		maxBatch = OutboundQueue.DEFAULT_MAX_BATCH;
+		ackTimeout = DeliveryTracker.DEFAULT_TIMEOUT;
+		retries = DeliveryTracker.DEFAULT_RETRIES;
+		backoff = DeliveryTracker.DEFAULT_BACKOFF;
+		heartbeatInterval = PeerLiveness.DEFAULT_HEARTBEAT;
+		ttl = PeerLiveness.DEFAULT_TTL;
+		inboxCapacity = Inbox.DEFAULT_CAPACITY;
+		inboxPolicy = Inbox.DROP_OLDEST;
 	}
 
+	/* etapele pornirii, in ordine */
+	public final static String STAGE_PLATFORM = "platform";
+	public final static String STAGE_NET_GROUP = "netgroup";
+	public final static String STAGE_GROUP = "group";
+	public final static String STAGE_PIPE = "pipe";
+	private final static int STAGES = 4;
+
 	public void start() throws PeerGroupException, IOException
 	{
 		start("urn:jxta:uuid-F256F83F63904289A362BDFCF7F226B602", "CheckersGroup",
 				"urn:jxta:uuid-59616261646162614E504720503250338BDD512C72FE462EAE54E9948FF4C23E04", "CheckerPipe");
 	}
 
+	/**
+	 * Porneste conexiunea pe un fir separat, cu grupul si pipe-ul implicite.
+	 * 
+	 * @return rezultatul pornirii
+	 * @see #startAsync(String, String, String, String)
+	 */
+	public Future<Boolean> startAsync()
+	{
+		return startAsync("urn:jxta:uuid-F256F83F63904289A362BDFCF7F226B602", "CheckersGroup",
+				"urn:jxta:uuid-59616261646162614E504720503250338BDD512C72FE462EAE54E9948FF4C23E04", "CheckerPipe");
+	}
+
+	/**
+	 * Porneste conexiunea pe un fir separat, fara a bloca firul apelantului.
+	 * Dupa fiecare etapa (platforma JXTA, grupul retelei, gasirea grupului,
+	 * pipe-ul pregatit) se trimite un eveniment {@link P2PEvent#STARTUP_PROGRESS}
+	 * cu durata etapei; la o eroare se trimite {@link P2PEvent#STARTUP_FAILED}.
+	 * Ultimele doua etape se termina asincron, iar conexiunea este gata la
+	 * evenimentul {@link P2PEvent#CONNECTION_READY}.
+	 * 
+	 * @return true daca a fost pornita, false daca era deja pornita; exceptiile
+	 *         pornirii sunt aruncate de {@link Future#get()}
+	 */
+	public Future<Boolean> startAsync(final String groupId, final String groupName, final String pipeId,
+			final String pipeName)
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "P2P-startup");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		Future<Boolean> result = executor.submit(new Callable<Boolean>() {
+			public Boolean call() throws Exception
+			{
+				synchronized (Connection.this)
+				{
+					if (started) return Boolean.FALSE;
+					start(groupId, groupName, pipeId, pipeName);
+					return Boolean.TRUE;
+				}
+			}
+		});
+		// firul se opreste dupa pornire
+		executor.shutdown();
+		return result;
+	}
+
 	/**
 	 * Porneste conexiunea prin protocolul JXTA.
 	 * 
@@ -90,13 +186,28 @@ public class Connection implements P2PListener
 	 * @throws PeerGroupException
 	 * @throws IOException
 	 */
-	public void start(String groupId, final String groupName, String pipeId, String pipeName) throws PeerGroupException, IOException
+	public synchronized void start(String groupId, final String groupName, String pipeId, String pipeName) throws PeerGroupException, IOException
 	{
 		if (!started)
 		{
 			Log.i("Connection","S-a deschis conexiunea.");
 
-			manager.startNetwork();
+			stageStarted = System.currentTimeMillis();
+			try
+			{
+				manager.startNetwork();
+			}
+			catch (PeerGroupException e)
+			{
+				fireStartupFailed(STAGE_PLATFORM);
+				throw e;
+			}
+			catch (IOException e)
+			{
+				fireStartupFailed(STAGE_PLATFORM);
+				throw e;
+			}
+			fireStartupProgress(STAGE_PLATFORM, 1);
 			started = true;
 			ready = false;
 			this.groupId = groupId;
@@ -104,37 +215,82 @@ public class Connection implements P2PListener
 			this.pipeId = pipeId;
 			this.pipeName = pipeName;
 			netPeerGroup = manager.getNetPeerGroup();
-			groups = new Groups(netPeerGroup);
+			groups = new Groups(netPeerGroup, dispatcher);
 			//groups.flush();
 			groups.addP2PListener(this);
 			groups.start();
-			
 
-			timer = new Timer();
-			searchesNumber = 0;
-			searching = true;
-			timer.schedule(new TimerTask() {
+			// lista salvata apare imediat; partenerii sunt verificati dupa pornire
+			createPeers();
+			peers.restore(directory.load(DIRECTORY_MAX_AGE));
+			fireStartupProgress(STAGE_NET_GROUP, 2);
 
-				@Override
-				public void run()
+			scheduler = new DiscoveryScheduler();
+			try
+			{
+				peerGroupID = (PeerGroupID) IDFactory.fromURI(new URI(groupId));
+			}
+			catch (URISyntaxException e)
+			{
+				Log.e("Connection","group id incorect!");
+				fireStartupFailed(STAGE_GROUP);
+				return;
+			}
+
+			// grupul are un id cunoscut: intai cache-ul local, apoi o singura
+			// cerere in retea, apoi este creat
+			PeerGroup local = groups.findLocal(peerGroupID);
+			if (local != null)
+			{
+				Log.i("Connection","Grupul a fost gasit in cache.");
+				groupResolved(local);
+				return;
+			}
+			scheduler.start(groupSearchPolicy, new DiscoveryScheduler.Search() {
+
+				public void search(int round)
 				{
-					searchesNumber++;
-					if (searchesNumber > MAX_SEARCHES_NUMBER || searchedGroup != null)
-					{
-						timer.cancel();
-						searching = false;
-						stateChanged(new P2PEvent(this, P2PEvent.GROUP_SEARCH_FINISHED));
-					}
-					else
-					{
-						Log.i("Groups","Cautarea nr " + searchesNumber);
-						groups.search(groupName, 1);
-					}
+					Log.i("Groups","Cautarea nr " + round);
+					groups.searchRemote(peerGroupID);
 				}
-			}, TIMER_FIRST_DELAY, TIMER_PERIOD);
+
+				public int getResultCount()
+				{
+					return groups.getGroup(peerGroupID) != null ? 1 : 0;
+				}
+
+				public void progress(int round, long elapsed, int results)
+				{
+					fireSearchProgress("groups", round, elapsed, results);
+				}
+
+				public void finished(int rounds, long elapsed)
+				{
+					stateChanged(new P2PEvent(Connection.this, P2PEvent.GROUP_SEARCH_FINISHED));
+				}
+			});
 		}
 	}
 
+	/**
+	 * Seteaza politica folosita la pornire pentru cautarea grupului.
+	 * 
+	 * @param policy
+	 */
+	public void setGroupSearchPolicy(SearchPolicy policy)
+	{
+		groupSearchPolicy = policy;
+	}
+
+	/**
+	 * @return id-ul partenerului local, sau null inainte de pornire
+	 */
+	public String getPeerID()
+	{
+		Peers current = peers;
+		return current == null ? null : current.getTransport().getLocalID();
+	}
+
 	public String getGroupId()
 	{
 		return groupId;
@@ -165,22 +321,110 @@ public class Connection implements P2PListener
 		return ready;
 	}
 
+	/**
+	 * Alege modul de trimitere a mesajelor: pe pipe-ul unicast al fiecarui
+	 * partener (implicit) sau pe pipe-ul propagate comun. Pipe-ul propagate
+	 * ramane folosit pentru prezenta si difuzare in ambele moduri.
+	 * 
+	 * @param unicast
+	 */
+	public void setUnicast(boolean unicast)
+	{
+		this.unicast = unicast;
+		if (peers != null) peers.setUnicast(unicast);
+	}
+
+	public boolean isUnicast()
+	{
+		return unicast;
+	}
+
+	/**
+	 * Alege formatul binar compact (implicit) sau formatul text vechi pentru
+	 * mesajele trimise. Ambele formate sunt citite oricand.
+	 * 
+	 * @param compact
+	 */
+	public void setCompact(boolean compact)
+	{
+		this.compact = compact;
+		if (peers != null) peers.setCompact(compact);
+	}
+
+	public boolean isCompact()
+	{
+		return compact;
+	}
+
+	/**
+	 * Seteaza gruparea mesajelor trimise in format binar.
+	 * 
+	 * @param flushWindow cat timp (ms) se asteapta alte mesaje pentru acelasi
+	 *            partener; 0 trimite fiecare mesaj imediat
+	 * @param maxBatch numarul de mesaje dupa care grupul pleaca fara sa astepte
+	 */
+	public void setBatching(long flushWindow, int maxBatch)
+	{
+		this.flushWindow = flushWindow;
+		this.maxBatch = maxBatch;
+		if (peers != null) peers.setBatching(flushWindow, maxBatch);
+	}
+
+	/**
+	 * Seteaza cate mesaje pot astepta livrarea de la acelasi partener si ce se
+	 * intampla cand sunt prea multe.
+	 * 
+	 * @param capacity numarul maxim de mesaje in asteptare pentru un partener
+	 * @param policy {@link Inbox#DROP_OLDEST}, {@link Inbox#DROP_NEWEST} sau
+	 *            {@link Inbox#COALESCE}
+	 * @param keys cheia mesajelor care se pot inlocui, pentru
+	 *            {@link Inbox#COALESCE}
+	 */
+	public void setInboxPolicy(int capacity, int policy, Inbox.KeyExtractor keys)
+	{
+		this.inboxCapacity = capacity;
+		this.inboxPolicy = policy;
+		this.inboxKeys = keys;
+		if (peers != null) peers.setInboxPolicy(capacity, policy, keys);
+	}
+
+	/**
+	 * @return coada de iesire, cu contoarele pentru dimensiunea grupurilor si
+	 *         timpul de asteptare, sau null daca nu exista conexiune
+	 */
+	public OutboundQueue getOutboundQueue()
+	{
+		if (peers != null) return peers.getOutboundQueue();
+		else return null;
+	}
+
+	/**
+	 * @return dispatcher-ul pe care se livreaza notificarile retelei
+	 */
+	public Dispatcher getDispatcher()
+	{
+		return dispatcher;
+	}
+
 	/**
 	 * Opreste conexiunea.
 	 */
-	public void stop()
+	public synchronized void stop()
 	{
 		if (started)
 		{
-			timer.cancel();
+			scheduler.shutdown();
 			Log.i("Connection","S-a inchis conexiunea.");
 
+			if (sessions != null) sessions.closeAll();
 			if (peers != null)
 			{
+				directory.save(peers.getDirectoryEntries());
 				peers.removeP2PListener(this);
 				peers.stop();
 				peers = null;
 			}
+			directory.close();
 			groups.removeP2PListener(this);
 			groups.stop();
 			groups = null;
@@ -196,30 +440,19 @@ public class Connection implements P2PListener
 	 */
 	public void searchPeers()
 	{
-		if (ready && !searching)
-		{
-			timer = new Timer();
-			searchesNumber = 0;
-			searching = true;
-			timer.schedule(new TimerTask() {
+		searchPeers(SearchPolicy.forPeers(Integer.MAX_VALUE));
+	}
 
-				@Override
-				public void run()
-				{
-					searchesNumber++;
-					if (searchesNumber > MAX_SEARCHES_NUMBER)
-					{
-						timer.cancel();
-						searching = false;
-						firePeersSearchFinished(peers.getPeers());
-					}
-					else
-					{
-						Log.i("Peers","Cautarea nr " + searchesNumber);
-						peers.search();
-					}
-				}
-			}, TIMER_FIRST_DELAY, TIMER_PERIOD);			
+	/**
+	 * Cauta toti partenerii din grupul CheckersGroup.
+	 * 
+	 * @param policy cat de des si pana cand se cauta
+	 */
+	public void searchPeers(SearchPolicy policy)
+	{
+		if (ready && !isSearching())
+		{
+			scheduler.start(policy, new PeerSearch(null));
 		}
 	}
 
@@ -231,7 +464,19 @@ public class Connection implements P2PListener
 	 */
 	public void searchPeers(final String nameFilter) throws IllegalArgumentException
 	{
-		if (ready && !searching)
+		searchPeers(nameFilter, SearchPolicy.forPeers(MAX_PEERS));
+	}
+
+	/**
+	 * Cauta partenerii care au nume asemanator cu nameFilter.
+	 * 
+	 * @param nameFilter
+	 * @param policy cat de des si pana cand se cauta
+	 * @throws Exception
+	 */
+	public void searchPeers(final String nameFilter, SearchPolicy policy) throws IllegalArgumentException
+	{
+		if (ready && !isSearching())
 		{
 			Pattern p = Pattern.compile("\\w*");// a-z A-Z _ 0-9
 			Matcher m = p.matcher(nameFilter);
@@ -240,38 +485,69 @@ public class Connection implements P2PListener
 				throw new IllegalArgumentException("Filtru contine caractere nepermise");
 			}
 			
-			timer = new Timer();
-			searchesNumber = 0;
-			searching = true;
-			timer.schedule(new TimerTask() {
-
-				@Override
-				public void run()
-				{
-					searchesNumber++;
-					if (searchesNumber > MAX_SEARCHES_NUMBER)
-					{
-						timer.cancel();
-						searching = false;
-						firePeersSearchFinished(peers.getPeers());
-					}
-					else
-					{
-						Log.i("Peers","Cautarea nr " + searchesNumber);
-						peers.search("*" + nameFilter + "*", 10);
-					}
-				}
-			}, TIMER_FIRST_DELAY, TIMER_PERIOD);			
+			// raspuns imediat din memorie daca ajung partenerii deja cunoscuti
+			HashMap<String, String> known = peers.findByName(nameFilter, policy.getTargetCount());
+			if (known.size() >= policy.getTargetCount())
+			{
+				firePeersSearchFinished(known);
+				return;
+			}
+			scheduler.start(policy, new PeerSearch(nameFilter));
 		}
 	}
 
+	/**
+	 * @return true daca o cautare este in curs
+	 */
+	public boolean isSearching()
+	{
+		return scheduler != null && scheduler.isSearching();
+	}
+
 	/**
 	 * Opresete cautarea de parteneri.
 	 */
 	public void stopSearch()
 	{
-		timer.cancel();
-		searching = false;
+		if (scheduler != null) scheduler.cancel();
+	}
+
+	/**
+	 * O cautare de parteneri, programata de {@link DiscoveryScheduler}.
+	 */
+	private class PeerSearch implements DiscoveryScheduler.Search
+	{
+		/* o parte din numele partenerilor cautati, sau null pentru toti */
+		private String filter;
+
+		private PeerSearch(String filter)
+		{
+			this.filter = filter;
+		}
+
+		public void search(int round)
+		{
+			Log.i("Peers","Cautarea nr " + round);
+			if (filter == null) peers.search();
+			else peers.searchByName(filter, MAX_PEERS);
+		}
+
+		public int getResultCount()
+		{
+			if (filter == null) return peers.getPeers().size();
+			else return peers.countByName(filter);
+		}
+
+		public void progress(int round, long elapsed, int results)
+		{
+			fireSearchProgress("peers", round, elapsed, results);
+		}
+
+		public void finished(int rounds, long elapsed)
+		{
+			if (filter == null) firePeersSearchFinished(peers.getPeers());
+			else firePeersSearchFinished(peers.findByName(filter, Integer.MAX_VALUE));
+		}
 	}
 	
 	/**
@@ -279,10 +555,94 @@ public class Connection implements P2PListener
 	 * 
 	 * @param receiverID id-ul partenerului la care se trimite
 	 * @param message mesajul de trimis
+	 * @return true daca s-a reusit trimiterea (sau punerea in coada)
+	 */
+	public boolean sendMessage(String receiverID, String message)
+	{
+		Peers current = peers;
+		return current != null && current.sendMessage(receiverID, message);
+	}
+
+	/**
+	 * Sesiunile deschise peste aceasta conexiune. Mesajele sesiunilor merg
+	 * direct la handler-ul sesiunii si nu mai ajung la listenerii conexiunii.
+	 * 
+	 * @return sesiunile, create la primul apel
+	 */
+	public synchronized Sessions getSessions()
+	{
+		if (sessions == null)
+		{
+			sessions = new Sessions(new Sessions.Sender() {
+				public boolean send(String toID, String message)
+				{
+					return sendMessage(toID, message);
+				}
+
+				public Delivery sendReliable(String toID, String message)
+				{
+					return sendAsync(toID, message);
+				}
+			});
+		}
+		return sessions;
+	}
+
+	/**
+	 * Trimite un mesaj fara a bloca firul apelantului si urmareste confirmarea
+	 * primirii lui. Rezultatul poate fi asteptat printr-un
+	 * {@link DeliveryListener}; firul interfetei grafice nu trebuie sa apeleze
+	 * {@link Delivery#get()}.
+	 * 
+	 * @param receiverID id-ul partenerului la care se trimite
+	 * @param message mesajul de trimis
+	 * @return rezultatul livrarii
 	 */
-	public void sendMessage(String receiverID, String message)
+	public Delivery sendAsync(String receiverID, String message)
 	{
-		if (peers != null) peers.sendMessage(receiverID, message);
+		if (peers != null) return peers.sendAsync(receiverID, message);
+		else return Delivery.completed(receiverID, message, false);
+	}
+
+	/**
+	 * Seteaza politica de retrimitere pentru {@link #sendAsync(String, String)}.
+	 * 
+	 * @param timeout timpul de asteptare (ms) pentru prima confirmare
+	 * @param retries numarul de retrimiteri
+	 * @param backoff factorul cu care creste timpul de asteptare la fiecare
+	 *            retrimitere
+	 */
+	public void setDeliveryPolicy(long timeout, int retries, float backoff)
+	{
+		this.ackTimeout = timeout;
+		this.retries = retries;
+		this.backoff = backoff;
+		if (peers != null) peers.setDeliveryPolicy(timeout, retries, backoff);
+	}
+
+	/**
+	 * Seteaza cat de des se trimite semnalul de prezenta si dupa cat timp fara
+	 * vesti un partener este scos din lista. Se aplica la urmatoarea pornire.
+	 * 
+	 * @param heartbeatInterval intervalul (ms) dintre semnale
+	 * @param ttl timpul (ms) dupa care un partener este considerat plecat
+	 */
+	public void setLiveness(long heartbeatInterval, long ttl)
+	{
+		if (heartbeatInterval <= 0 || ttl < heartbeatInterval)
+		{
+			throw new IllegalArgumentException("Intervale de verificare incorecte");
+		}
+		this.heartbeatInterval = heartbeatInterval;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * @return contoarele retelei P2P (mesaje, octeti, cautari, notificari)
+	 */
+	public Metrics getMetrics()
+	{
+		return Metrics.getShared();
 	}
 
 	/**
@@ -294,6 +654,19 @@ public class Connection implements P2PListener
 		else return null;
 	}
 
+	/**
+	 * Copie completa a listei de parteneri, pentru listenerii care incep sa
+	 * urmareasca evenimentele {@link P2PEvent#PEERS_CHANGED} sau care au ratat
+	 * o versiune.
+	 * 
+	 * @return lista de parteneri cu versiunea ei, sau null
+	 */
+	public PeerDelta getPeerSnapshot()
+	{
+		if (peers != null) return peers.getSnapshot();
+		else return null;
+	}
+
 	/**
 	 * Adauga un <code>P2PListener</code> la clasa Connection.
 	 */
@@ -319,61 +692,48 @@ public class Connection implements P2PListener
 		{
 			case P2PEvent.GROUP_FOUND:
 			{
-				groups.removeP2PListener(this);
-				Log.i("Connection","A fost gasit grupul.");
-
-				searchedGroup = groups.getFirstGroup();
-				/*
-				 * if (!groups.joinGroup(searchedGroup)) { Log.e("Connection",
-				 * "Nu s-a putut face join!"); }
-				 */
-				
-				peers = new Peers(netPeerGroup, pipeId, pipeName); // searchedGroup
-				peers.addP2PListener(this);
-				peers.start();
+				Groups current = groups;
+				PeerGroup found = (current == null) ? null : current.getGroup(peerGroupID);
+				if (found != null)
+				{
+					Log.i("Connection","A fost gasit grupul.");
+					groupResolved(found);
+				}
 				break;
 			}
 			case P2PEvent.GROUP_SEARCH_FINISHED:
 			{
-				if (searchedGroup == null)
+				Groups current = groups;
+				if (current == null) break;
+				// raspunsul poate sosi chiar inaintea terminarii cautarii
+				PeerGroup found = current.getGroup(peerGroupID);
+				if (found == null)
 				{
-					groups.removeP2PListener(this);					
 					Log.i("Connection","Creaza grup nou.");
-					
-					PeerGroupID peerGroupID = null;
-					try
-					{
-						peerGroupID = (PeerGroupID) IDFactory.fromURI(new URI(groupId));
-					}
-					catch (URISyntaxException e)
-					{
-						Log.e("Connection","peer id incorect!");
-					}
-					searchedGroup = groups.createGroup(peerGroupID, "CheckersGroup", "Group for checkers game.");
-					/*
-					 * if (!groups.joinGroup(searchedGroup)) {
-					 * Log.e("Connection","Nu s-a putut face join!"); }
-					 */
-					peers = new Peers(netPeerGroup, pipeId, pipeName); // searchedGroup
-					peers.addP2PListener(this);
-					peers.start();
+					found = current.createGroup(peerGroupID, groupName, "Group for checkers game.");
 				}
+				groupResolved(found);
 				break;
 			}
 			case P2PEvent.MESSAGE_RECEIVED:
 			{
-				Log.i("Connection","s-a primit un mesaj de la " + event.getSenderName() + " ce contine [" + event.getMessage() + "]");
-
+				Sessions current = sessions;
+				if (current != null && current.route(event.getSenderID(), event.getSenderName(), event.getMessage()))
+				{
+					break;
+				}
 				fireMessageReceived(event.getSenderID(), event.getSenderName(), event.getMessage());
 				break;
 			}
-			case P2PEvent.PEER_FOUND:
+			case P2PEvent.PEERS_CHANGED:
 			{
-				fireContentChanged(event.getList());
+				fireContentChanged(event.getDelta());
+				saveDirectory();
 				break;
 			}
 			case P2PEvent.PEER_READY:
 			{
+				fireStartupProgress(STAGE_PIPE, 4);
 				ready = true;
 				fireConnectionReady();
 				// break;
@@ -381,30 +741,93 @@ public class Connection implements P2PListener
 		}
 	}
 
+	/**
+	 * Foloseste grupul gasit sau creat si porneste serviciile pentru parteneri.
+	 * Doar primul apel are efect.
+	 * 
+	 * @param group
+	 */
+	private synchronized void groupResolved(PeerGroup group)
+	{
+		if (!started || searchedGroup != null || group == null) return;
+		searchedGroup = group;
+		scheduler.cancel();
+		groups.removeP2PListener(this);
+		fireStartupProgress(STAGE_GROUP, 3);
+		/*
+		 * if (!groups.joinGroup(searchedGroup)) { Log.e("Connection",
+		 * "Nu s-a putut face join!"); }
+		 */
+		startPeers();
+	}
+
+	/**
+	 * Creeaza serviciile pentru parteneri, cu setarile conexiunii. Serviciile
+	 * sunt pornite dupa gasirea grupului.
+	 */
+	private void createPeers()
+	{
+		peers = new Peers(netPeerGroup, pipeId, pipeName, dispatcher); // searchedGroup
+		peers.setUnicast(unicast);
+		peers.setCompact(compact);
+		peers.setBatching(flushWindow, maxBatch);
+		peers.setDeliveryPolicy(ackTimeout, retries, backoff);
+		peers.setLiveness(heartbeatInterval, ttl);
+		peers.setInboxPolicy(inboxCapacity, inboxPolicy, inboxKeys);
+		peers.addP2PListener(this);
+	}
+
+	/**
+	 * Porneste serviciile pentru parteneri.
+	 */
+	private void startPeers()
+	{
+		if (peers == null) createPeers();
+		peers.start();
+	}
+
+	/**
+	 * Salveaza lista de parteneri, cel mult o data la
+	 * DIRECTORY_SAVE_INTERVAL ms. Lista este salvata oricum la oprire.
+	 */
+	private void saveDirectory()
+	{
+		Peers current = peers;
+		long now = System.currentTimeMillis();
+		if (current == null || now - lastSave < DIRECTORY_SAVE_INTERVAL) return;
+		lastSave = now;
+		directory.save(current.getDirectoryEntries());
+	}
+
 	/**
 	 * Notifica realizare conexiunii.
 	 */
-	private synchronized void fireConnectionReady()
+	private void fireConnectionReady()
 	{
-		P2PListener[] listeners = listenerList.getListeners(P2PListener.class);
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.CONNECTION_READY);
+
 		for (int i = listeners.length - 1; i >= 0; --i)
 		{
-			listeners[i].stateChanged(new P2PEvent(this, P2PEvent.CONNECTION_READY));
+			listeners[i].stateChanged(event);
 		}
 	}
 
 	/**
 	 * Notifica schimbarea continutului listei de parteneri.
 	 * 
-	 * @param peersList
+	 * @param delta partenerii adaugati, modificati si scosi
 	 */
-	private synchronized void fireContentChanged(HashMap<String, String> peersList)
+	private void fireContentChanged(PeerDelta delta)
 	{
-		P2PListener[] listeners = listenerList.getListeners(P2PListener.class);
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.PEERS_CHANGED, delta);
 
 		for (int i = listeners.length - 1; i >= 0; --i)
 		{
-			listeners[i].stateChanged(new P2PEvent(this, P2PEvent.PEER_FOUND, peersList));
+			listeners[i].stateChanged(event);
 		}
 	}
 
@@ -413,13 +836,76 @@ public class Connection implements P2PListener
 	 * 
 	 * @param peersList
 	 */
-	private synchronized void firePeersSearchFinished(HashMap<String, String> peersList)
+	private void firePeersSearchFinished(HashMap<String, String> peersList)
+	{
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.PEER_SEARCH_FINISHED, peersList);
+
+		for (int i = listeners.length - 1; i >= 0; --i)
+		{
+			listeners[i].stateChanged(event);
+		}
+	}
+
+	/**
+	 * Notifica rezultatele unei cautari, dupa fiecare pas.
+	 * 
+	 * @param phase "groups" sau "peers"
+	 * @param round numarul cautarii
+	 * @param elapsed timpul (ms) de la inceputul cautarii
+	 * @param results numarul de rezultate
+	 */
+	private void fireSearchProgress(String phase, int round, long elapsed, int results)
+	{
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.SEARCH_PROGRESS, phase, round, elapsed, results);
+
+		for (int i = listeners.length - 1; i >= 0; --i)
+		{
+			listeners[i].stateChanged(event);
+		}
+	}
+
+	/**
+	 * Notifica terminarea unei etape a pornirii si incepe masurarea urmatoarei.
+	 * 
+	 * @param stage numele etapei
+	 * @param index numarul etapei, de la 1
+	 */
+	private void fireStartupProgress(String stage, int index)
+	{
+		long now = System.currentTimeMillis();
+		long duration = now - stageStarted;
+		stageStarted = now;
+		Log.i("Connection","Etapa " + stage + ": " + duration + " ms");
+
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.STARTUP_PROGRESS, stage, index, duration, STAGES);
+
+		for (int i = listeners.length - 1; i >= 0; --i)
+		{
+			listeners[i].stateChanged(event);
+		}
+	}
+
+	/**
+	 * Notifica esecul pornirii.
+	 * 
+	 * @param stage etapa in care a aparut eroarea
+	 */
+	private void fireStartupFailed(String stage)
 	{
-		P2PListener[] listeners = listenerList.getListeners(P2PListener.class);
+		long duration = System.currentTimeMillis() - stageStarted;
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.STARTUP_FAILED, stage, 0, duration, STAGES);
 
 		for (int i = listeners.length - 1; i >= 0; --i)
 		{
-			listeners[i].stateChanged(new P2PEvent(this, P2PEvent.PEER_SEARCH_FINISHED, peersList));
+			listeners[i].stateChanged(event);
 		}
 	}
 
@@ -430,13 +916,15 @@ public class Connection implements P2PListener
 	 * @param senderName numele partenerului care a trimis
 	 * @param data mesajul trimis
 	 */
-	private synchronized void fireMessageReceived(String senderID, String senderName, String data)
+	private void fireMessageReceived(String senderID, String senderName, String data)
 	{
-		P2PListener[] listeners = listenerList.getListeners(P2PListener.class);
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.MESSAGE_RECEIVED, senderID, senderName, data);
 
 		for (int i = listeners.length - 1; i >= 0; --i)
 		{
-			listeners[i].stateChanged(new P2PEvent(this, P2PEvent.MESSAGE_RECEIVED, senderID, senderName, data));
+			listeners[i].stateChanged(event);
 		}
 	}
 }
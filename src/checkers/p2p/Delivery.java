@@ -0,0 +1,188 @@
+package checkers.p2p;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import android.util.Log;
+
+/**
+ * Rezultatul unei trimiteri asincrone. Se termina cu true cand destinatarul
+ * confirma primirea si cu false cand toate incercarile au expirat.
+ * 
+ * Firul interfetei grafice nu trebuie sa apeleze get(); pentru el exista
+ * {@link #addListener(DeliveryListener)}.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Delivery implements Future<Boolean>
+{
+	private String receiverID, message;
+	private int seq, attempts;
+	private boolean done, delivered, cancelled;
+	private List<DeliveryListener> listeners;
+
+	Delivery(String receiverID, String message)
+	{
+		this.receiverID = receiverID;
+		this.message = message;
+		listeners = new ArrayList<DeliveryListener>(1);
+	}
+
+	/**
+	 * @return o livrare deja terminata
+	 */
+	static Delivery completed(String receiverID, String message, boolean delivered)
+	{
+		Delivery d = new Delivery(receiverID, message);
+		d.complete(delivered);
+		return d;
+	}
+
+	public String getReceiverID()
+	{
+		return receiverID;
+	}
+
+	public String getMessage()
+	{
+		return message;
+	}
+
+	public synchronized int getSeq()
+	{
+		return seq;
+	}
+
+	synchronized void setSeq(int seq)
+	{
+		this.seq = seq;
+	}
+
+	/**
+	 * @return numarul de trimiteri facute pana acum
+	 */
+	public synchronized int getAttempts()
+	{
+		return attempts;
+	}
+
+	synchronized int nextAttempt()
+	{
+		return attempts++;
+	}
+
+	/**
+	 * Adauga un listener apelat o singura data, cand livrarea se termina. Daca
+	 * s-a terminat deja, este apelat imediat, pe firul curent.
+	 * 
+	 * @param listener
+	 */
+	public void addListener(DeliveryListener listener)
+	{
+		synchronized (this)
+		{
+			if (!done)
+			{
+				listeners.add(listener);
+				return;
+			}
+		}
+		fire(listener);
+	}
+
+	/**
+	 * Termina livrarea. Apelurile urmatoare nu mai au efect.
+	 * 
+	 * @param delivered
+	 * @return false daca livrarea era deja terminata
+	 */
+	boolean complete(boolean delivered)
+	{
+		List<DeliveryListener> toNotify;
+		synchronized (this)
+		{
+			if (done) return false;
+			done = true;
+			this.delivered = delivered;
+			toNotify = listeners;
+			listeners = null;
+			notifyAll();
+		}
+		for (DeliveryListener listener : toNotify)
+		{
+			fire(listener);
+		}
+		return true;
+	}
+
+	private void fire(DeliveryListener listener)
+	{
+		try
+		{
+			listener.deliveryCompleted(this);
+		}
+		catch (RuntimeException e)
+		{
+			Log.e("Delivery","listener-ul a aruncat o exceptie: " + e);
+		}
+	}
+
+	/**
+	 * @return true daca destinatarul a confirmat primirea
+	 */
+	public synchronized boolean isDelivered()
+	{
+		return delivered;
+	}
+
+	public synchronized boolean isDone()
+	{
+		return done;
+	}
+
+	/**
+	 * Renunta la retrimiteri. Mesajul poate ajunge totusi, daca o trimitere
+	 * anterioara nu s-a pierdut.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		synchronized (this)
+		{
+			if (done) return false;
+			cancelled = true;
+		}
+		return complete(false);
+	}
+
+	public synchronized boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	public synchronized Boolean get() throws InterruptedException, ExecutionException
+	{
+		while (!done)
+		{
+			wait();
+		}
+		return Boolean.valueOf(delivered);
+	}
+
+	public synchronized Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+			TimeoutException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!done)
+		{
+			long left = deadline - System.nanoTime();
+			if (left <= 0) throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait(this, left);
+		}
+		return Boolean.valueOf(delivered);
+	}
+}
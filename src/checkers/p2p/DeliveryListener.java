@@ -0,0 +1,12 @@
+package checkers.p2p;
+
+/**
+ * Interfata pentru cei care asteapta terminarea unei trimiteri asincrone.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public interface DeliveryListener
+{
+	public void deliveryCompleted(Delivery delivery);
+}
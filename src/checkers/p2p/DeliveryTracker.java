@@ -0,0 +1,294 @@
+package checkers.p2p;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Urmareste trimiterile asincrone pana la confirmarea lor. Fiecare trimitere
+ * primeste un numar de ordine, consecutiv pentru fiecare destinatar, astfel
+ * incat destinatarul vede un sir fara goluri; daca confirmarea nu vine in
+ * timpul dat, mesajul este retrimis, cu timpul de asteptare inmultit la
+ * fiecare incercare.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class DeliveryTracker
+{
+	public final static long DEFAULT_TIMEOUT = 2000;
+	public final static int DEFAULT_RETRIES = 3;
+	public final static float DEFAULT_BACKOFF = 2;
+
+	/**
+	 * Cel care trimite efectiv mesajele urmarite.
+	 */
+	public interface Transmitter
+	{
+		/**
+		 * Trimite (sau retrimite) mesajul.
+		 * 
+		 * @param delivery
+		 * @param attempt 0 pentru prima trimitere
+		 */
+		public void transmit(Delivery delivery, int attempt);
+
+		/**
+		 * Toate incercarile au expirat fara confirmare.
+		 */
+		public void failed(Delivery delivery);
+	}
+
+	private Transmitter transmitter;
+	private ScheduledExecutorService timer;
+	/* trimiterile neconfirmate: destinatar -> numar de ordine -> trimitere */
+	private HashMap<String, HashMap<Integer, Delivery>> pending;
+	/* urmatorul numar de ordine pentru fiecare destinatar */
+	private HashMap<String, Integer> nextSeqs;
+	private long timeout;
+	private int retries;
+	private float backoff;
+
+	private long delivered, failed, retransmissions;
+
+	/**
+	 * Constructorul pentru clasa DeliveryTracker.
+	 * 
+	 * @param transmitter
+	 * @param timeout timpul de asteptare (ms) pentru prima confirmare
+	 * @param retries numarul de retrimiteri dupa prima trimitere
+	 * @param backoff factorul cu care creste timpul de asteptare
+	 */
+	public DeliveryTracker(Transmitter transmitter, long timeout, int retries, float backoff)
+	{
+		this.transmitter = transmitter;
+		pending = new HashMap<String, HashMap<Integer, Delivery>>();
+		nextSeqs = new HashMap<String, Integer>();
+		setPolicy(timeout, retries, backoff);
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "P2P-retry");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Schimba politica de retrimitere pentru trimiterile urmatoare.
+	 */
+	public synchronized void setPolicy(long timeout, int retries, float backoff)
+	{
+		if (timeout <= 0 || retries < 0 || backoff < 1)
+		{
+			throw new IllegalArgumentException("Politica de retrimitere incorecta");
+		}
+		this.timeout = timeout;
+		this.retries = retries;
+		this.backoff = backoff;
+	}
+
+	/**
+	 * Incepe urmarirea unei trimiteri si face prima incercare.
+	 * 
+	 * @param delivery
+	 * @return aceeasi trimitere
+	 */
+	public Delivery track(Delivery delivery)
+	{
+		synchronized (this)
+		{
+			String toID = delivery.getReceiverID();
+			Integer next = nextSeqs.get(toID);
+			int seq = (next == null) ? 1 : next.intValue();
+			nextSeqs.put(toID, Integer.valueOf(seq + 1));
+			delivery.setSeq(seq);
+			HashMap<Integer, Delivery> forPeer = pending.get(toID);
+			if (forPeer == null)
+			{
+				forPeer = new HashMap<Integer, Delivery>();
+				pending.put(toID, forPeer);
+			}
+			forPeer.put(Integer.valueOf(seq), delivery);
+		}
+		attempt(delivery);
+		return delivery;
+	}
+
+	/**
+	 * Scoate o trimitere din cele neconfirmate. Se apeleaza sub lock.
+	 * 
+	 * @param expected trimiterea care trebuie scoasa, sau null pentru oricare
+	 *            are numarul dat (dupa {@link #forget(String)} numerele se
+	 *            refolosesc)
+	 * @return trimiterea, sau null daca nu mai era neconfirmata
+	 */
+	private Delivery remove(String toID, int seq, Delivery expected)
+	{
+		HashMap<Integer, Delivery> forPeer = pending.get(toID);
+		if (forPeer == null) return null;
+		Integer key = Integer.valueOf(seq);
+		Delivery delivery = forPeer.get(key);
+		if (delivery == null || (expected != null && delivery != expected)) return null;
+		forPeer.remove(key);
+		if (forPeer.isEmpty()) pending.remove(toID);
+		return delivery;
+	}
+
+	private void attempt(final Delivery delivery)
+	{
+		int attempt = delivery.nextAttempt();
+		long delay;
+		synchronized (this)
+		{
+			delay = (long) (timeout * Math.pow(backoff, attempt));
+		}
+		try
+		{
+			timer.schedule(new Runnable() {
+				public void run()
+				{
+					expired(delivery);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			fail(delivery);
+			return;
+		}
+		transmitter.transmit(delivery, attempt);
+	}
+
+	private void expired(Delivery delivery)
+	{
+		boolean retry;
+		synchronized (this)
+		{
+			if (delivery.isDone())
+			{
+				remove(delivery.getReceiverID(), delivery.getSeq(), delivery);
+				return;
+			}
+			retry = delivery.getAttempts() <= retries;
+			if (retry) retransmissions++;
+		}
+		if (retry) attempt(delivery);
+		else fail(delivery);
+	}
+
+	private void fail(Delivery delivery)
+	{
+		synchronized (this)
+		{
+			remove(delivery.getReceiverID(), delivery.getSeq(), delivery);
+		}
+		if (delivery.complete(false))
+		{
+			synchronized (this)
+			{
+				failed++;
+			}
+			transmitter.failed(delivery);
+		}
+	}
+
+	/**
+	 * Marcheaza o trimitere ca fiind confirmata de destinatar.
+	 * 
+	 * @param fromID destinatarul care confirma
+	 * @param seq numarul de ordine confirmat
+	 */
+	public void acknowledge(String fromID, int seq)
+	{
+		Delivery delivery;
+		synchronized (this)
+		{
+			delivery = remove(fromID, seq, null);
+		}
+		if (delivery != null && delivery.complete(true))
+		{
+			synchronized (this)
+			{
+				delivered++;
+			}
+		}
+	}
+
+	/**
+	 * Uita un destinatar care a plecat: trimiterile catre el se termina cu
+	 * false, iar numerele de ordine incep din nou de la 1.
+	 * 
+	 * @param toID
+	 */
+	public void forget(String toID)
+	{
+		List<Delivery> left;
+		synchronized (this)
+		{
+			nextSeqs.remove(toID);
+			HashMap<Integer, Delivery> forPeer = pending.remove(toID);
+			if (forPeer == null) return;
+			left = new ArrayList<Delivery>(forPeer.values());
+		}
+		for (Delivery delivery : left)
+		{
+			fail(delivery);
+		}
+	}
+
+	/**
+	 * Opreste retrimiterile; trimiterile neconfirmate se termina cu false.
+	 */
+	public void shutdown()
+	{
+		List<Delivery> left = new ArrayList<Delivery>();
+		synchronized (this)
+		{
+			timer.shutdownNow();
+			for (HashMap<Integer, Delivery> forPeer : pending.values())
+			{
+				left.addAll(forPeer.values());
+			}
+			pending.clear();
+		}
+		for (Delivery delivery : left)
+		{
+			delivery.complete(false);
+		}
+	}
+
+	/**
+	 * @return numarul de trimiteri care asteapta confirmare
+	 */
+	public synchronized int getPendingCount()
+	{
+		int count = 0;
+		for (HashMap<Integer, Delivery> forPeer : pending.values())
+		{
+			count += forPeer.size();
+		}
+		return count;
+	}
+
+	public synchronized long getDeliveredCount()
+	{
+		return delivered;
+	}
+
+	public synchronized long getFailedCount()
+	{
+		return failed;
+	}
+
+	public synchronized long getRetransmissionCount()
+	{
+		return retransmissions;
+	}
+}
@@ -0,0 +1,189 @@
+package checkers.p2p;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/**
+ * Programeaza cautarile repetate in retea dupa o {@link SearchPolicy}. Se
+ * ruleaza o singura cautare odata; pornirea uneia noi o opreste pe cea veche.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class DiscoveryScheduler
+{
+	/**
+	 * O cautare programata.
+	 */
+	public interface Search
+	{
+		/**
+		 * Trimite cererile pentru o cautare.
+		 * 
+		 * @param round numarul cautarii, de la 1
+		 */
+		public void search(int round);
+
+		/**
+		 * @return numarul de rezultate gasite pana acum
+		 */
+		public int getResultCount();
+
+		/**
+		 * Rezultatele dupa o cautare, inainte de a decide daca se continua.
+		 * 
+		 * @param round numarul cautarii
+		 * @param elapsed timpul (ms) de la inceputul cautarii
+		 * @param results numarul de rezultate
+		 */
+		public void progress(int round, long elapsed, int results);
+
+		/**
+		 * Cautarea s-a terminat (nu si cand este oprita din afara).
+		 * 
+		 * @param rounds numarul de cautari facute
+		 * @param elapsed durata totala (ms)
+		 */
+		public void finished(int rounds, long elapsed);
+	}
+
+	private ScheduledExecutorService executor;
+	private Task current;
+
+	public DiscoveryScheduler()
+	{
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "P2P-discovery");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Porneste o cautare noua si o opreste pe cea in curs.
+	 * 
+	 * @param policy
+	 * @param search
+	 */
+	public synchronized void start(SearchPolicy policy, Search search)
+	{
+		cancel();
+		current = new Task(policy, search);
+		schedule(current, policy.getFirstDelay());
+	}
+
+	/**
+	 * Opreste cautarea in curs, fara a apela {@link Search#finished(int, long)}.
+	 */
+	public synchronized void cancel()
+	{
+		if (current != null)
+		{
+			current.cancelled = true;
+			current = null;
+		}
+	}
+
+	/**
+	 * @return true daca o cautare este in curs
+	 */
+	public synchronized boolean isSearching()
+	{
+		return current != null;
+	}
+
+	/**
+	 * Opreste cautarea in curs si firul de executie.
+	 */
+	public synchronized void shutdown()
+	{
+		cancel();
+		executor.shutdownNow();
+	}
+
+	private void schedule(Task task, long delay)
+	{
+		try
+		{
+			executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			Log.e("DiscoveryScheduler","cautarea nu a putut fi programata.");
+		}
+	}
+
+	/**
+	 * Un pas al cautarii: evalueaza rezultatele cautarii anterioare si, daca
+	 * este cazul, trimite urmatoarea cautare.
+	 */
+	private class Task implements Runnable
+	{
+		private SearchPolicy policy;
+		private Search search;
+		private int round, lastCount, stable;
+		private long started;
+		private volatile boolean cancelled;
+
+		private Task(SearchPolicy policy, Search search)
+		{
+			this.policy = policy;
+			this.search = search;
+			started = System.currentTimeMillis();
+			lastCount = -1;
+		}
+
+		public void run()
+		{
+			if (cancelled) return;
+
+			int count = search.getResultCount();
+			long elapsed = System.currentTimeMillis() - started;
+			if (round > 0)
+			{
+				search.progress(round, elapsed, count);
+				// si cautarile care nu gasesc nimic sunt stabile: o retea goala nu
+				// trebuie sa astepte toate cautarile
+				if (count == lastCount) stable++;
+				else stable = 0;
+
+				boolean done = count >= policy.getTargetCount() || round >= policy.getMaxRounds()
+						|| (policy.getStableRounds() > 0 && stable >= policy.getStableRounds())
+						|| (policy.getMaxTime() > 0 && elapsed >= policy.getMaxTime());
+				if (done)
+				{
+					synchronized (DiscoveryScheduler.this)
+					{
+						if (cancelled) return;
+						current = null;
+					}
+					search.finished(round, elapsed);
+					return;
+				}
+			}
+			lastCount = count;
+
+			round++;
+			search.search(round);
+			long delay = policy.getPeriod(round);
+			if (policy.getMaxTime() > 0)
+			{
+				// ultima verificare cade la expirarea timpului maxim
+				long left = policy.getMaxTime() - (System.currentTimeMillis() - started);
+				delay = Math.max(0, Math.min(delay, left));
+			}
+			synchronized (DiscoveryScheduler.this)
+			{
+				if (!cancelled) schedule(this, delay);
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package checkers.p2p;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+/**
+ * Distribuie notificarile catre listeneri pe un numar fix de fire de executie.
+ * Notificarile care au aceeasi sursa sunt livrate in ordinea in care au fost
+ * trimise; numarul total de notificari in asteptare este limitat.
+ * 
+ * Notificarile de stare ({@link #dispatchLatest(Object, Object, Runnable)})
+ * nu sunt supuse limitei: o notificare noua o inlocuieste pe cea cu aceeasi
+ * cheie care inca asteapta, deci fiecare sursa are cel mult una pentru
+ * fiecare cheie si ultima stare ajunge mereu la listeneri.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Dispatcher
+{
+	public final static int DEFAULT_POOL_SIZE = 2;
+	public final static int DEFAULT_QUEUE_LIMIT = 256;
+
+	private static Dispatcher shared;
+
+	private ThreadPoolExecutor executor;
+	private HashMap<Object, SerialQueue> queues;
+	private AtomicInteger queued;
+	private int queueLimit;
+	private Metrics.Histogram dispatchTime;
+
+	/**
+	 * Constructorul pentru clasa Dispatcher.
+	 * 
+	 * @param poolSize numarul de fire de executie
+	 * @param queueLimit numarul maxim de notificari in asteptare
+	 */
+	public Dispatcher(int poolSize, int queueLimit)
+	{
+		if (poolSize < 1 || queueLimit < 1)
+		{
+			throw new IllegalArgumentException("Dimensiuni incorecte pentru dispatcher");
+		}
+		this.queueLimit = queueLimit;
+		queues = new HashMap<Object, SerialQueue>();
+		queued = new AtomicInteger();
+		dispatchTime = Metrics.getShared().histogram(Metrics.DISPATCH_TIME);
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private int count = 0;
+
+					public synchronized Thread newThread(Runnable r)
+					{
+						Thread t = new Thread(r, "P2P-dispatch-" + (++count));
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * @return dispatcher-ul comun, cu dimensiunile implicite
+	 */
+	public static synchronized Dispatcher getShared()
+	{
+		if (shared == null)
+		{
+			shared = new Dispatcher(DEFAULT_POOL_SIZE, DEFAULT_QUEUE_LIMIT);
+			final Dispatcher d = shared;
+			Metrics.getShared().gauge(Metrics.DISPATCH_QUEUED, new Metrics.Gauge() {
+				public long getValue()
+				{
+					return d.getQueuedCount();
+				}
+			});
+		}
+		return shared;
+	}
+
+	/**
+	 * Programeaza o notificare. Notificarile cu aceeasi sursa ruleaza una dupa
+	 * alta, in ordinea programarii.
+	 * 
+	 * @param source cheia dupa care se pastreaza ordinea
+	 * @param task notificarea
+	 * @return false daca limita a fost atinsa si notificarea a fost ignorata
+	 */
+	public boolean dispatch(Object source, Runnable task)
+	{
+		if (queued.incrementAndGet() > queueLimit)
+		{
+			queued.decrementAndGet();
+			Log.e("Dispatcher","coada este plina, notificarea a fost ignorata.");
+			return false;
+		}
+
+		SerialQueue queue;
+		boolean idle;
+		synchronized (queues)
+		{
+			queue = queues.get(source);
+			if (queue == null)
+			{
+				queue = new SerialQueue(source);
+				queues.put(source, queue);
+			}
+			queue.tasks.addLast(task);
+			idle = !queue.scheduled;
+			queue.scheduled = true;
+		}
+		if (idle)
+		{
+			return schedule(queue);
+		}
+		return true;
+	}
+
+	/**
+	 * Programeaza o notificare de stare, care citeste starea abia cand ruleaza.
+	 * Daca o notificare cu aceeasi sursa si aceeasi cheie inca asteapta, este
+	 * inlocuita de aceasta, pe aceeasi pozitie; altfel este pusa la coada.
+	 * Limita de notificari nu se aplica.
+	 * 
+	 * @param source cheia dupa care se pastreaza ordinea
+	 * @param key tipul starii notificate
+	 * @param task notificarea
+	 * @return false doar daca dispatcher-ul a fost oprit
+	 */
+	public boolean dispatchLatest(Object source, Object key, Runnable task)
+	{
+		SerialQueue queue;
+		boolean idle;
+		synchronized (queues)
+		{
+			queue = queues.get(source);
+			if (queue == null)
+			{
+				queue = new SerialQueue(source);
+				queues.put(source, queue);
+			}
+			Latest pending = queue.latest.get(key);
+			if (pending != null)
+			{
+				pending.task = task;
+				return true;
+			}
+			pending = new Latest(key, task);
+			queue.latest.put(key, pending);
+			queue.tasks.addLast(pending);
+			queued.incrementAndGet();
+			idle = !queue.scheduled;
+			queue.scheduled = true;
+		}
+		if (idle)
+		{
+			return schedule(queue);
+		}
+		return true;
+	}
+
+	private boolean schedule(SerialQueue queue)
+	{
+		try
+		{
+			executor.execute(queue);
+			return true;
+		}
+		catch (RejectedExecutionException e)
+		{
+			Log.e("Dispatcher","dispatcher-ul a fost oprit, notificarea a fost ignorata.");
+			int dropped;
+			synchronized (queues)
+			{
+				dropped = queue.tasks.size();
+				queue.tasks.clear();
+				queue.latest.clear();
+				queue.scheduled = false;
+				if (queues.get(queue.source) == queue) queues.remove(queue.source);
+			}
+			queued.addAndGet(-dropped);
+			return false;
+		}
+	}
+
+	/**
+	 * @return numarul de notificari care asteapta sa fie livrate
+	 */
+	public int getQueuedCount()
+	{
+		return queued.get();
+	}
+
+	public int getQueueLimit()
+	{
+		return queueLimit;
+	}
+
+	public int getPoolSize()
+	{
+		return executor.getCorePoolSize();
+	}
+
+	/**
+	 * Opreste firele de executie. Notificarile ramase nu mai sunt livrate.
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+		synchronized (queues)
+		{
+			queues.clear();
+		}
+		queued.set(0);
+	}
+
+	/**
+	 * Notificarile in asteptare pentru o sursa. Ruleaza cate o notificare pe
+	 * rand si se reprogrameaza, astfel incat o sursa foarte activa nu blocheaza
+	 * celelalte surse.
+	 */
+	private class SerialQueue implements Runnable
+	{
+		private Object source;
+		private LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+		/* notificarile de stare in asteptare, dupa cheie */
+		private HashMap<Object, Latest> latest = new HashMap<Object, Latest>();
+		private boolean scheduled;
+
+		private SerialQueue(Object source)
+		{
+			this.source = source;
+		}
+
+		public void run()
+		{
+			Runnable task;
+			synchronized (queues)
+			{
+				task = tasks.removeFirst();
+				if (task instanceof Latest)
+				{
+					// de acum o stare noua se programeaza separat
+					Latest l = (Latest) task;
+					latest.remove(l.key);
+					task = l.task;
+				}
+			}
+			queued.decrementAndGet();
+			long start = System.nanoTime();
+			try
+			{
+				task.run();
+			}
+			catch (RuntimeException e)
+			{
+				Log.e("Dispatcher","notificarea a aruncat o exceptie: " + e);
+			}
+			dispatchTime.since(start);
+
+			boolean more;
+			synchronized (queues)
+			{
+				more = !tasks.isEmpty();
+				scheduled = more;
+				if (!more) queues.remove(source);
+			}
+			if (more)
+			{
+				schedule(this);
+			}
+		}
+	}
+
+	/**
+	 * O notificare de stare in asteptare; sarcina poate fi inlocuita pana
+	 * cand ruleaza.
+	 */
+	private static class Latest implements Runnable
+	{
+		private Object key;
+		private Runnable task;
+
+		private Latest(Object key, Runnable task)
+		{
+			this.key = key;
+			this.task = task;
+		}
+
+		public void run()
+		{
+			task.run();
+		}
+	}
+}
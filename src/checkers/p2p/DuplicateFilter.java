@@ -0,0 +1,121 @@
+package checkers.p2p;
+
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Recunoaste mesajele primite de mai multe ori din cauza retrimiterilor.
+ * Expeditorul numeroteaza consecutiv mesajele catre fiecare destinatar, deci
+ * pentru fiecare expeditor se retine cel mai mare numar de ordine pana la
+ * care toate mesajele au fost primite, plus numerele primite dupa el, peste
+ * un gol. Daca golul nu se umple in fereastra (expeditorul a renuntat la
+ * mesaj), este sarit, ca memoria sa ramana limitata; numerele sarite sunt
+ * retinute, tot in limita ferestrei, ca un mesaj sosit tarziu sa fie totusi
+ * livrat. Pentru numerele mai vechi nu se mai stie daca au fost primite.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class DuplicateFilter
+{
+	public final static int DEFAULT_WINDOW = 256;
+
+	/* mesajul este primit pentru prima data */
+	public final static int NEW = 0;
+	/* mesajul a fost deja primit */
+	public final static int DUPLICATE = 1;
+	/* mesajul este prea vechi: nu se mai stie daca a fost primit */
+	public final static int UNKNOWN = 2;
+
+	private HashMap<String, Window> senders;
+	private int window;
+
+	public DuplicateFilter(int window)
+	{
+		this.window = window;
+		senders = new HashMap<String, Window>();
+	}
+
+	/**
+	 * @param senderID
+	 * @param epoch epoca sesiunii expeditorului
+	 * @param seq numarul de ordine al mesajului
+	 * @return {@link #NEW}, {@link #DUPLICATE} sau {@link #UNKNOWN}
+	 */
+	public synchronized int accept(String senderID, int epoch, int seq)
+	{
+		Window w = senders.get(senderID);
+		if (w == null || w.epoch != epoch)
+		{
+			w = new Window(epoch);
+			senders.put(senderID, w);
+		}
+		if (seq <= w.floor)
+		{
+			// un mesaj sarit a sosit totusi
+			if (w.skipped.remove(Integer.valueOf(seq))) return NEW;
+			return (seq <= w.forgotten) ? UNKNOWN : DUPLICATE;
+		}
+		if (!w.above.add(Integer.valueOf(seq))) return DUPLICATE;
+		if (w.above.size() > window)
+		{
+			// golul cel mai vechi nu se mai umple
+			int first = w.above.first().intValue();
+			int from = Math.max(w.floor + 1, first - window);
+			if (from - 1 > w.forgotten) w.forgotten = from - 1;
+			for (int s = from; s < first; s++)
+			{
+				w.skipped.add(Integer.valueOf(s));
+			}
+			while (w.skipped.size() > window)
+			{
+				Integer oldest = w.skipped.first();
+				w.skipped.remove(oldest);
+				w.forgotten = Math.max(w.forgotten, oldest.intValue());
+			}
+			w.floor = first - 1;
+		}
+		while (!w.above.isEmpty() && w.above.first().intValue() == w.floor + 1)
+		{
+			w.floor++;
+			w.above.remove(w.above.first());
+		}
+		return NEW;
+	}
+
+	/**
+	 * Uita un expeditor, de exemplu cand partenerul a plecat.
+	 * 
+	 * @param senderID
+	 */
+	public synchronized void forget(String senderID)
+	{
+		senders.remove(senderID);
+	}
+
+	/**
+	 * Uita toti expeditorii.
+	 */
+	public synchronized void clear()
+	{
+		senders.clear();
+	}
+
+	private static class Window
+	{
+		private int epoch;
+		/* toate mesajele pana la floor (inclusiv) au fost primite sau sarite */
+		private int floor;
+		/* mesajele primite dupa floor + 1 */
+		private TreeSet<Integer> above = new TreeSet<Integer>();
+		/* mesajele sarite, inca asteptate */
+		private TreeSet<Integer> skipped = new TreeSet<Integer>();
+		/* pana la acest numar (inclusiv), mesajele sarite au fost uitate */
+		private int forgotten;
+
+		private Window(int epoch)
+		{
+			this.epoch = epoch;
+		}
+	}
+}
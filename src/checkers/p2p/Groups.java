@@ -37,7 +37,15 @@ public class Groups implements DiscoveryListener
 
 	private PeerGroup defaultPeerGroup;
 	private HashMap<String, String> groups;
+	/* advertisement-urile gasite si grupurile deja instantiate (id grup -> ...) */
+	private HashMap<String, PeerGroupAdvertisement> groupAdvs;
+	private HashMap<String, PeerGroup> instances;
 	private PeerGroupAdvertisement firstPeerGroupAdv;
+	/* tinut cat timp se instantiaza un grup, ca acelasi grup sa nu fie creat de doua ori */
+	private final Object creating = new Object();
+
+	private Dispatcher dispatcher;
+	private QueryTimer queries;
 
 	private boolean isRunning;
 
@@ -47,12 +55,27 @@ public class Groups implements DiscoveryListener
 	 * @param netPeerGroup
 	 */
 	public Groups(PeerGroup netPeerGroup)
+	{
+		this(netPeerGroup, Dispatcher.getShared());
+	}
+
+	/**
+	 * Constructorul pentru clasa Groups.
+	 * 
+	 * @param netPeerGroup
+	 * @param dispatcher firele pe care se livreaza notificarile
+	 */
+	public Groups(PeerGroup netPeerGroup, Dispatcher dispatcher)
 	{
 		defaultPeerGroup = netPeerGroup;
+		this.dispatcher = dispatcher;
 
 		listenerList = new EventListenerList();
 		discovery = defaultPeerGroup.getDiscoveryService();
 		groups = new HashMap<String, String>();
+		groupAdvs = new HashMap<String, PeerGroupAdvertisement>();
+		instances = new HashMap<String, PeerGroup>();
+		queries = new QueryTimer(Metrics.getShared().histogram(Metrics.DISCOVERY_RTT));
 	}
 
 	/**
@@ -75,7 +98,12 @@ public class Groups implements DiscoveryListener
 		if (isRunning)
 		{
 			isRunning = false;
-			groups.clear();
+			synchronized (groups)
+			{
+				groups.clear();
+				groupAdvs.clear();
+				instances.clear();
+			}
 			discovery.removeDiscoveryListener(this);
 		}
 	}
@@ -90,13 +118,44 @@ public class Groups implements DiscoveryListener
 		Log.i("Groups","Cautare locala.");
 		searchLocal("Name", groupName);
 
-		if (groups.size() < maxGroups)
+		int found;
+		synchronized (groups)
+		{
+			found = groups.size();
+		}
+		if (found < maxGroups)
 		{
 			Log.i("Groups","Cautare externa.");
 			searchRemote("Name", groupName, maxGroups);
 		}
 	}
 
+	/**
+	 * Cauta grupul dupa id in cache-ul local, fara a trimite cereri in retea.
+	 * 
+	 * @param groupID
+	 * @return grupul, sau null daca nu este in cache
+	 */
+	public PeerGroup findLocal(PeerGroupID groupID)
+	{
+		PeerGroup group = getGroup(groupID);
+		if (group != null) return group;
+		searchLocal("GID", groupID.toString());
+		return getGroup(groupID);
+	}
+
+	/**
+	 * Trimite o singura cerere in retea pentru grupul cu id-ul dat. Raspunsul
+	 * soseste asincron, ca evenimentul {@link P2PEvent#GROUP_FOUND}.
+	 * 
+	 * @param groupID
+	 */
+	public void searchRemote(PeerGroupID groupID)
+	{
+		Log.i("Groups","Cautare externa dupa id.");
+		searchRemote("GID", groupID.toString(), 1);
+	}
+
 	/**
 	 * Adauga grupurile gasite in lista.
 	 * 
@@ -107,31 +166,38 @@ public class Groups implements DiscoveryListener
 		if (advs != null)
 		{
 			boolean primul = true;
-			int aux = groups.size();
-			while (advs.hasMoreElements())
+			int aux, size;
+			synchronized (groups)
 			{
-				Advertisement item = advs.nextElement();
-				if (item instanceof PeerGroupAdvertisement)
+				aux = groups.size();
+				while (advs.hasMoreElements())
 				{
-					PeerGroupAdvertisement pga = (PeerGroupAdvertisement) item;
-					groups.put(pga.getPeerGroupID().toString(), pga.getName());
-					Log.i("Groups","A fost gasit:" + pga.getName());
-					if (primul)
+					Advertisement item = advs.nextElement();
+					if (item instanceof PeerGroupAdvertisement)
 					{
-						firstPeerGroupAdv = pga;
-						primul = false;
+						PeerGroupAdvertisement pga = (PeerGroupAdvertisement) item;
+						String id = pga.getPeerGroupID().toString();
+						groups.put(id, pga.getName());
+						if (!groupAdvs.containsKey(id)) groupAdvs.put(id, pga);
+						Log.i("Groups","A fost gasit:" + pga.getName());
+						if (primul)
+						{
+							firstPeerGroupAdv = pga;
+							primul = false;
+						}
 					}
 				}
+				size = groups.size();
 			}
-			if (groups.size() != aux)
+			if (size != aux)
 			{
-				Thread t = new Thread() {
+				// lista este citita la livrare, deci o notificare inlocuita nu pierde grupuri
+				dispatcher.dispatchLatest(this, Integer.valueOf(P2PEvent.GROUP_FOUND), new Runnable() {
 					public void run()
 					{
 						fireContentChanged(getGroups());
 					}
-				};
-				t.start();
+				});
 			}
 		}
 	}
@@ -145,7 +211,7 @@ public class Groups implements DiscoveryListener
 	 */
 	private void searchRemote(String attr, String val, int maxGroups)
 	{
-		discovery.getRemoteAdvertisements(null, DiscoveryService.GROUP, attr, val, maxGroups);
+		queries.sent(discovery.getRemoteAdvertisements(null, DiscoveryService.GROUP, attr, val, maxGroups));
 	}
 
 	/**
@@ -181,7 +247,11 @@ public class Groups implements DiscoveryListener
 				Advertisement anAdv = (Advertisement) eachAdv.nextElement();
 				discovery.flushAdvertisement(anAdv);
 			}
-			groups.clear();
+			synchronized (groups)
+			{
+				groups.clear();
+				groupAdvs.clear();
+			}
 		}
 		catch (IOException e)
 		{
@@ -194,17 +264,60 @@ public class Groups implements DiscoveryListener
 	 */
 	public PeerGroup getFirstGroup()
 	{
-		PeerGroup primul = null;
-		try
+		PeerGroupAdvertisement first;
+		synchronized (groups)
 		{
-			primul = defaultPeerGroup.newGroup(firstPeerGroupAdv);
+			first = firstPeerGroupAdv;
 		}
-		catch (PeerGroupException e)
+		if (first == null) return null;
+		return getGroup(first.getPeerGroupID());
+	}
+
+	/**
+	 * Intoarce grupul cu id-ul dat dintre cele gasite. Grupul este instantiat o
+	 * singura data; apelurile urmatoare, inclusiv cele facute in paralel,
+	 * intorc aceeasi instanta.
+	 * 
+	 * @param groupID
+	 * @return grupul, sau null daca nu a fost gasit
+	 */
+	public PeerGroup getGroup(PeerGroupID groupID)
+	{
+		String id = groupID.toString();
+		synchronized (groups)
 		{
-			Log.e("Groups","nu s-au putut crea grupul din PeerGroupAdvertisement.");
+			PeerGroup group = instances.get(id);
+			if (group != null) return group;
 		}
 
-		return primul;
+		// instantierea dureaza; lista de grupuri ramane libera intre timp
+		synchronized (creating)
+		{
+			PeerGroupAdvertisement adv;
+			synchronized (groups)
+			{
+				PeerGroup group = instances.get(id);
+				if (group != null) return group;
+				adv = groupAdvs.get(id);
+			}
+			if (adv == null) return null;
+
+			PeerGroup group = null;
+			try
+			{
+				group = defaultPeerGroup.newGroup(adv);
+			}
+			catch (PeerGroupException e)
+			{
+				Log.e("Groups","nu s-au putut crea grupul din PeerGroupAdvertisement.");
+				return null;
+			}
+			synchronized (groups)
+			{
+				instances.put(id, group);
+			}
+			return group;
+		}
 	}
 
 	/**
@@ -212,7 +325,10 @@ public class Groups implements DiscoveryListener
 	 */
 	public HashMap<String, String> getGroups()
 	{
-		return new HashMap<String, String>(groups);
+		synchronized (groups)
+		{
+			return new HashMap<String, String>(groups);
+		}
 	}
 
 	/**
@@ -247,6 +363,13 @@ public class Groups implements DiscoveryListener
 
 			discovery.publish(groupAdv);
 			discovery.remotePublish(groupAdv);
+			synchronized (groups)
+			{
+				String id = newGroup.getPeerGroupID().toString();
+				groups.put(id, name);
+				groupAdvs.put(id, groupAdv);
+				instances.put(id, newGroup);
+			}
 		}
 		catch (Exception e)
 		{
@@ -290,6 +413,7 @@ public class Groups implements DiscoveryListener
 	 */
 	public void discoveryEvent(DiscoveryEvent event)
 	{
+		queries.received(event.getQueryID());
 		DiscoveryResponseMsg rez = event.getResponse();
 		addGroups(rez.getAdvertisements());
 	}
@@ -315,13 +439,15 @@ public class Groups implements DiscoveryListener
 	 * 
 	 * @param groupsList
 	 */
-	private synchronized void fireContentChanged(HashMap<String, String> groupsList)
+	private void fireContentChanged(HashMap<String, String> groupsList)
 	{
-		P2PListener[] listeners = listenerList.getListeners(P2PListener.class);
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.GROUP_FOUND, groupsList);
 
 		for (int i = listeners.length - 1; i >= 0; --i)
 		{
-			listeners[i].stateChanged(new P2PEvent(this, P2PEvent.GROUP_FOUND, groupsList));
+			listeners[i].stateChanged(event);
 		}
 	}
 }
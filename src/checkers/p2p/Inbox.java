@@ -0,0 +1,352 @@
+package checkers.p2p;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Cutia postala a mesajelor primite, cu o coada limitata pentru fiecare
+ * expeditor. Mesajele asteapta aici pana sunt livrate listenerilor pe
+ * {@link Dispatcher}, cate unul odata pentru fiecare expeditor, deci un
+ * partener care trimite prea mult nu poate umple memoria si nici nu ii
+ * intarzie pe ceilalti.
+ * 
+ * Cand coada unui expeditor trece de 3/4 din capacitate, expeditorul este
+ * rugat sa incetineasca; cand coada scade sub 1/4 poate trimite din nou
+ * normal. Cand coada este plina se aplica politica aleasa.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Inbox
+{
+	public final static int DEFAULT_CAPACITY = 64;
+	/* cat timp (ms) este rugat expeditorul sa nu mai trimita */
+	public final static long DEFAULT_PAUSE = 250;
+
+	/* coada plina: se renunta la cel mai vechi mesaj */
+	public final static int DROP_OLDEST = 1;
+	/* coada plina: se renunta la mesajul nou */
+	public final static int DROP_NEWEST = 2;
+	/* un mesaj nou inlocuieste mesajul in asteptare cu aceeasi cheie; coada
+	 * plina: se renunta la cel mai vechi mesaj */
+	public final static int COALESCE = 3;
+
+	/**
+	 * Cel care primeste mesajele din cutie.
+	 */
+	public interface Consumer
+	{
+		public void deliver(String senderID, String senderName, String data);
+	}
+
+	/**
+	 * Semnalele catre expeditori.
+	 */
+	public interface FlowControl
+	{
+		/**
+		 * @param senderID expeditorul
+		 * @param pause cat timp (ms) sa nu mai trimita; 0 pentru a relua
+		 */
+		public void flow(String senderID, long pause);
+	}
+
+	/**
+	 * Cheia dupa care se inlocuiesc mesajele in politica {@link #COALESCE}.
+	 */
+	public interface KeyExtractor
+	{
+		/**
+		 * @param data mesajul
+		 * @return cheia mesajului, sau null daca mesajul nu poate fi inlocuit
+		 */
+		public Object getKey(String data);
+	}
+
+	private Dispatcher dispatcher;
+	private Consumer consumer;
+	private FlowControl flowControl;
+	private HashMap<String, Mailbox> mailboxes;
+	private int capacity, policy, depth, maxDepth;
+	private long pause;
+	private KeyExtractor keys;
+	private Metrics.Counter dropped, coalesced, signals;
+
+	/**
+	 * Constructorul pentru clasa Inbox.
+	 * 
+	 * @param dispatcher firele pe care se livreaza mesajele
+	 * @param consumer
+	 * @param flowControl
+	 */
+	public Inbox(Dispatcher dispatcher, Consumer consumer, FlowControl flowControl)
+	{
+		this.dispatcher = dispatcher;
+		this.consumer = consumer;
+		this.flowControl = flowControl;
+		mailboxes = new HashMap<String, Mailbox>();
+		capacity = DEFAULT_CAPACITY;
+		policy = DROP_OLDEST;
+		pause = DEFAULT_PAUSE;
+		Metrics metrics = Metrics.getShared();
+		dropped = metrics.counter(Metrics.INBOX_DROPPED);
+		coalesced = metrics.counter(Metrics.INBOX_COALESCED);
+		signals = metrics.counter(Metrics.FLOW_SIGNALS);
+	}
+
+	/**
+	 * Schimba capacitatea si politica; se aplica mesajelor urmatoare.
+	 * 
+	 * @param capacity numarul maxim de mesaje in asteptare pentru un expeditor
+	 * @param policy {@link #DROP_OLDEST}, {@link #DROP_NEWEST} sau
+	 *            {@link #COALESCE}
+	 * @param keys cheia mesajelor, obligatorie pentru {@link #COALESCE}
+	 */
+	public synchronized void setPolicy(int capacity, int policy, KeyExtractor keys)
+	{
+		if (capacity < 1 || policy < DROP_OLDEST || policy > COALESCE || (policy == COALESCE && keys == null))
+		{
+			throw new IllegalArgumentException("Politica incorecta pentru cutia postala");
+		}
+		this.capacity = capacity;
+		this.policy = policy;
+		this.keys = keys;
+	}
+
+	/**
+	 * @param pause cat timp (ms) este rugat sa astepte un expeditor prea activ
+	 */
+	public synchronized void setPause(long pause)
+	{
+		if (pause <= 0) throw new IllegalArgumentException("Pauza incorecta");
+		this.pause = pause;
+	}
+
+	/**
+	 * Pune un mesaj in cutia expeditorului.
+	 * 
+	 * @param senderID
+	 * @param senderName
+	 * @param data
+	 * @return false daca s-a renuntat la mesaj
+	 */
+	public boolean offer(String senderID, String senderName, String data)
+	{
+		Mailbox box;
+		boolean accepted = true, schedule = false;
+		long signal = -1;
+		synchronized (this)
+		{
+			box = mailboxes.get(senderID);
+			if (box == null)
+			{
+				box = new Mailbox(senderID);
+				mailboxes.put(senderID, box);
+			}
+			Object key = (policy == COALESCE) ? keys.getKey(data) : null;
+			Entry same = (key == null) ? null : box.byKey.get(key);
+			if (same != null)
+			{
+				same.senderName = senderName;
+				same.data = data;
+				coalesced.inc();
+			}
+			else if (box.entries.size() >= capacity && policy == DROP_NEWEST)
+			{
+				accepted = false;
+			}
+			else
+			{
+				while (box.entries.size() >= capacity)
+				{
+					box.poll();
+					depth--;
+					dropped.inc();
+				}
+				box.add(new Entry(senderName, data, key));
+				depth++;
+				maxDepth = Math.max(maxDepth, depth);
+			}
+			if (!accepted) dropped.inc();
+
+			int size = box.entries.size();
+			long now = System.currentTimeMillis();
+			// semnalul se repeta cat timp coada ramane plina
+			if (size * 4 >= capacity * 3 && now - box.signalled >= pause / 2)
+			{
+				box.signalled = now;
+				box.throttled = true;
+				signal = pause;
+			}
+			if (size > 0 && !box.scheduled)
+			{
+				box.scheduled = true;
+				schedule = true;
+			}
+		}
+		if (signal >= 0) signal(senderID, signal);
+		if (schedule) schedule(box);
+		return accepted;
+	}
+
+	/**
+	 * Programeaza golirea cutiei. Fiecare cutie are cel mult o golire in
+	 * asteptare, deci poate folosi calea dispatcher-ului care nu refuza la
+	 * atingerea limitei: mesajele nu raman in cutie asteptand un mesaj nou de
+	 * la expeditor, care poate fi chiar in pauza.
+	 */
+	private void schedule(final Mailbox box)
+	{
+		boolean ok = dispatcher.dispatchLatest(box.senderID, box, new Runnable() {
+			public void run()
+			{
+				drain(box);
+			}
+		});
+		if (!ok)
+		{
+			// dispatcher-ul a fost oprit
+			synchronized (this)
+			{
+				box.scheduled = false;
+			}
+		}
+	}
+
+	/**
+	 * Livreaza un mesaj al expeditorului si se reprogrameaza daca mai sunt.
+	 */
+	private void drain(Mailbox box)
+	{
+		Entry entry;
+		boolean resume = false;
+		synchronized (this)
+		{
+			if (box.entries.isEmpty())
+			{
+				box.scheduled = false;
+				return;
+			}
+			entry = box.poll();
+			depth--;
+			if (box.throttled && box.entries.size() * 4 <= capacity)
+			{
+				box.throttled = false;
+				box.signalled = 0;
+				resume = true;
+			}
+			if (box.entries.isEmpty())
+			{
+				box.scheduled = false;
+				if (mailboxes.get(box.senderID) == box) mailboxes.remove(box.senderID);
+			}
+		}
+		if (resume) signal(box.senderID, 0);
+		consumer.deliver(box.senderID, entry.senderName, entry.data);
+		boolean more;
+		synchronized (this)
+		{
+			more = box.scheduled;
+		}
+		if (more) schedule(box);
+	}
+
+	private void signal(String senderID, long pause)
+	{
+		signals.inc();
+		if (flowControl != null) flowControl.flow(senderID, pause);
+	}
+
+	/**
+	 * Renunta la toate mesajele in asteptare.
+	 */
+	public synchronized void clear()
+	{
+		for (Mailbox box : mailboxes.values())
+		{
+			box.entries.clear();
+			box.byKey.clear();
+		}
+		mailboxes.clear();
+		depth = 0;
+	}
+
+	/**
+	 * @return numarul total de mesaje in asteptare
+	 */
+	public synchronized int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * @return cel mai mare numar de mesaje aflate odata in asteptare
+	 */
+	public synchronized int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	/**
+	 * @param senderID
+	 * @return numarul de mesaje in asteptare de la expeditor
+	 */
+	public synchronized int getDepth(String senderID)
+	{
+		Mailbox box = mailboxes.get(senderID);
+		return (box == null) ? 0 : box.entries.size();
+	}
+
+	public synchronized int getCapacity()
+	{
+		return capacity;
+	}
+
+	public synchronized int getPolicy()
+	{
+		return policy;
+	}
+
+	/**
+	 * Mesajele in asteptare de la un expeditor.
+	 */
+	private static class Mailbox
+	{
+		private String senderID;
+		private LinkedList<Entry> entries = new LinkedList<Entry>();
+		private HashMap<Object, Entry> byKey = new HashMap<Object, Entry>();
+		private boolean scheduled, throttled;
+		private long signalled;
+
+		private Mailbox(String senderID)
+		{
+			this.senderID = senderID;
+		}
+
+		private void add(Entry e)
+		{
+			entries.addLast(e);
+			if (e.key != null) byKey.put(e.key, e);
+		}
+
+		private Entry poll()
+		{
+			Entry e = entries.removeFirst();
+			if (e.key != null && byKey.get(e.key) == e) byKey.remove(e.key);
+			return e;
+		}
+	}
+
+	private static class Entry
+	{
+		private String senderName, data;
+		private Object key;
+
+		private Entry(String senderName, String data, Object key)
+		{
+			this.senderName = senderName;
+			this.data = data;
+			this.key = key;
+		}
+	}
+}
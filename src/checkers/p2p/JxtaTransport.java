@@ -0,0 +1,544 @@
+package checkers.p2p;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+
+import android.util.Log;
+
+import net.jxta.discovery.DiscoveryEvent;
+import net.jxta.discovery.DiscoveryListener;
+import net.jxta.discovery.DiscoveryService;
+import net.jxta.document.Advertisement;
+import net.jxta.document.AdvertisementFactory;
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.ByteArrayMessageElement;
+import net.jxta.endpoint.Message;
+import net.jxta.endpoint.MessageElement;
+import net.jxta.endpoint.StringMessageElement;
+import net.jxta.id.IDFactory;
+import net.jxta.peer.PeerID;
+import net.jxta.peergroup.PeerGroup;
+import net.jxta.peergroup.PeerGroupID;
+import net.jxta.pipe.*;
+import net.jxta.protocol.PeerAdvertisement;
+import net.jxta.protocol.PipeAdvertisement;
+
+/**
+ * Transportul prin JXTA: partenerii sunt gasiti cu {@link DiscoveryService},
+ * canalul comun este un pipe propagate, iar fiecare partener asculta si pe
+ * un pipe unicast propriu.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class JxtaTransport implements Transport, DiscoveryListener, PipeMsgListener, OutputPipeListener
+{
+	/* timpul (ms) dupa care o rezolvare de pipe unicast fara raspuns este reincercata */
+	public final static long PIPE_TIMEOUT = 10000;
+
+	private PipeAdvertisement pipeAdv, unicastPipeAdv;
+	private PeerAdvertisement peerAdv;
+
+	private DiscoveryService discovery;
+	private PipeService pipeService;
+	private AnnounceScheduler announcer;
+	private QueryTimer queries;
+
+	private PeerID peerID;
+	private PeerGroupID groupID;
+	private String peerName, pipeName;
+	private InputPipe inputPipe, unicastInputPipe;
+	private volatile OutputPipe outputPipe;
+
+	/* pipe-urile unicast deschise catre fiecare partener (id partener -> pipe) */
+	private HashMap<String, OutputPipe> unicastPipes;
+	/* pipe-urile unicast in curs de rezolvare (id pipe -> id partener) */
+	private HashMap<String, String> pendingPipes;
+	/* momentul (ms) in care a inceput rezolvarea (id partener -> timp) */
+	private HashMap<String, Long> pendingSince;
+
+	private Receiver receiver;
+	private volatile boolean isRunning, unicast;
+
+	/**
+	 * Constructorul pentru clasa JxtaTransport.
+	 * 
+	 * @param defaultPeerGroup grupul in care se afla partenerii
+	 * @param pipeId id-ul pipe-ului propagate comun
+	 * @param pipeName numele pipe-ului comun
+	 */
+	public JxtaTransport(PeerGroup defaultPeerGroup, String pipeId, String pipeName)
+	{
+		discovery = defaultPeerGroup.getDiscoveryService();
+		pipeService = defaultPeerGroup.getPipeService();
+
+		peerID = defaultPeerGroup.getPeerID();
+		groupID = defaultPeerGroup.getPeerGroupID();
+		peerName = defaultPeerGroup.getPeerName();
+		this.pipeName = pipeName;
+		pipeAdv = getPipeAdvertisement(pipeId, pipeName);
+		unicastPipeAdv = getUnicastPipeAdvertisement(groupID, peerID.toString(), pipeName);
+		peerAdv = defaultPeerGroup.getPeerAdvertisement();
+		Log.i("JxtaTransport",peerAdv.toString());
+		announcer = new AnnounceScheduler(discovery, peerID.toString(), AnnounceScheduler.DEFAULT_LIFETIME,
+				AnnounceScheduler.DEFAULT_EXPIRATION);
+		announcer.add(pipeAdv);
+		announcer.add(peerAdv);
+		queries = new QueryTimer(Metrics.getShared().histogram(Metrics.DISCOVERY_RTT));
+
+		unicastPipes = new HashMap<String, OutputPipe>();
+		pendingPipes = new HashMap<String, String>();
+		pendingSince = new HashMap<String, Long>();
+		isRunning = false;
+		unicast = true;
+	}
+
+	/**
+	 * Creeaza un pipe advertisement din id-ul si umele primit.
+	 * 
+	 * @param pipeId
+	 * @param pipeName
+	 * @return pipe advertisement
+	 */
+	public static PipeAdvertisement getPipeAdvertisement(String pipeId, String pipeName)
+	{
+		PipeAdvertisement advertisement = (PipeAdvertisement) AdvertisementFactory.newAdvertisement(PipeAdvertisement.getAdvertisementType());
+
+		PipeID pipeID = null;
+		try
+		{
+			pipeID = (PipeID) IDFactory.fromURI(new URI(pipeId));
+		}
+		catch (URISyntaxException e)
+		{
+			Log.e("JxtaTransport","pipe id incorect!");
+		}
+		advertisement.setPipeID(pipeID);
+		advertisement.setType(PipeService.PropagateType);
+		advertisement.setName(pipeName);
+		return advertisement;
+	}
+
+	/**
+	 * Creeaza advertisement-ul pipe-ului unicast al unui partener. Id-ul pipe-ului
+	 * este derivat din id-ul partenerului, deci poate fi construit local de
+	 * oricine il cunoaste, fara o cautare in retea.
+	 * 
+	 * @param groupID grupul in care se afla partenerul
+	 * @param peerId id-ul partenerului care asculta pe pipe
+	 * @param pipeName numele pipe-ului comun
+	 * @return pipe advertisement
+	 */
+	public static PipeAdvertisement getUnicastPipeAdvertisement(PeerGroupID groupID, String peerId, String pipeName)
+	{
+		PipeAdvertisement advertisement = (PipeAdvertisement) AdvertisementFactory.newAdvertisement(PipeAdvertisement.getAdvertisementType());
+
+		advertisement.setPipeID(getUnicastPipeID(groupID, peerId));
+		advertisement.setType(PipeService.UnicastType);
+		advertisement.setName(pipeName + "." + peerId);
+		return advertisement;
+	}
+
+	/**
+	 * @param groupID grupul in care se afla partenerul
+	 * @param peerId id-ul partenerului
+	 * @return id-ul pipe-ului unicast al partenerului
+	 */
+	private static PipeID getUnicastPipeID(PeerGroupID groupID, String peerId)
+	{
+		try
+		{
+			return IDFactory.newPipeID(groupID, peerId.getBytes("UTF-8"));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			Log.e("JxtaTransport","codarea UTF-8 nu este suportata!");
+			return null;
+		}
+	}
+
+	public String getLocalID()
+	{
+		return peerID.toString();
+	}
+
+	public String getLocalName()
+	{
+		return peerName;
+	}
+
+	public String getAddress(String peerId)
+	{
+		PipeID pipe = getUnicastPipeID(groupID, peerId);
+		return (pipe == null) ? null : pipe.toString();
+	}
+
+	public void setDirect(boolean direct)
+	{
+		this.unicast = direct;
+	}
+
+	public boolean isReady()
+	{
+		return outputPipe != null;
+	}
+
+	/**
+	 * @return programatorul anunturilor, cu numarul de publicari
+	 */
+	public AnnounceScheduler getAnnounceScheduler()
+	{
+		return announcer;
+	}
+
+	/**
+	 * Anunta prezenta partenerului in retea P2P. Dupa pornire anuntul este
+	 * repetat automat inainte de expirare, deci apelul este necesar doar pentru
+	 * a forta o republicare.
+	 */
+	public void announce()
+	{
+		announcer.publishAll();
+	}
+
+	public void start(Receiver receiver)
+	{
+		if (!isRunning)
+		{
+			isRunning = true;
+			this.receiver = receiver;
+			discovery.addDiscoveryListener(this);
+			announcer.start();
+			try
+			{
+				inputPipe = pipeService.createInputPipe(pipeAdv, this);
+				if (unicast)
+				{
+					unicastInputPipe = pipeService.createInputPipe(unicastPipeAdv, this);
+				}
+				// outputPipe = pipeService.createOutputPipe(pipeAdv, 1000);
+				pipeService.createOutputPipe(pipeAdv, this);
+			}
+			catch (IOException e)
+			{
+				Log.e("JxtaTransport","Nu s-a putut crea input/output pipe.");
+			}
+		}
+	}
+
+	public void stop()
+	{
+		if (isRunning)
+		{
+			isRunning = false;
+			announcer.shutdown();
+			synchronized (unicastPipes)
+			{
+				for (OutputPipe pipe : unicastPipes.values())
+				{
+					pipe.close();
+				}
+				unicastPipes.clear();
+				pendingPipes.clear();
+				pendingSince.clear();
+			}
+			if (unicastInputPipe != null)
+			{
+				unicastInputPipe.close();
+				unicastInputPipe = null;
+			}
+			if (outputPipe != null)
+			{
+				outputPipe.close();
+				outputPipe = null;
+			}
+			if (inputPipe != null)
+			{
+				inputPipe.close();
+				inputPipe = null;
+			}
+			discovery.removeDiscoveryListener(this);
+		}
+	}
+
+	public void searchRemote(String name, int max)
+	{
+		queries.sent(discovery.getRemoteAdvertisements(null, DiscoveryService.PEER, "Name", name, max));
+	}
+
+	public void searchLocal(String name)
+	{
+		try
+		{
+			addPeers(discovery.getLocalAdvertisements(DiscoveryService.PEER, "Name", name), false);
+		}
+		catch (IOException e)
+		{
+			Log.e("JxtaTransport","nu s-au putut citi cache-ul local.");
+		}
+	}
+
+	public void flushCache()
+	{
+		try
+		{
+			Enumeration<Advertisement> eachAdv = discovery.getLocalAdvertisements(DiscoveryService.PEER, null, null);
+			while (eachAdv.hasMoreElements())
+			{
+				Advertisement anAdv = (Advertisement) eachAdv.nextElement();
+				discovery.flushAdvertisement(anAdv);
+			}
+		}
+		catch (IOException e)
+		{
+			Log.e("JxtaTransport","nu s-au putut sterge peer advertisements.");
+		}
+	}
+
+	/**
+	 * Trimite partenerii din advertisement-uri catre receiver.
+	 * 
+	 * @param advs
+	 * @param fresh true pentru raspunsurile din retea
+	 */
+	private void addPeers(Enumeration<?> advs, boolean fresh)
+	{
+		Receiver r = receiver;
+		if (advs == null || r == null) return;
+		HashMap<String, String> found = new HashMap<String, String>();
+		while (advs.hasMoreElements())
+		{
+			Object item = advs.nextElement();
+			if (item instanceof PeerAdvertisement)
+			{
+				PeerAdvertisement pa = (PeerAdvertisement) item;
+				found.put(pa.getPeerID().toString(), pa.getName());
+			}
+		}
+		if (!found.isEmpty()) r.peersFound(found, fresh);
+	}
+
+	/**
+	 * Se ocupa cu evenimentul generat de gasirea unui partener.
+	 */
+	public void discoveryEvent(DiscoveryEvent event)
+	{
+		queries.received(event.getQueryID());
+		addPeers(event.getResponse().getAdvertisements(), true);
+	}
+
+	public boolean send(String toID, byte[] bytes)
+	{
+		Message msg = new Message();
+		msg.addMessageElement(null, new ByteArrayMessageElement("Packet", MimeMediaType.AOS, bytes, null));
+		return sendOnPipe(toID, msg);
+	}
+
+	public boolean sendDirect(String toID, byte[] bytes)
+	{
+		if (!unicast || outputPipe == null) return false;
+		OutputPipe pipe = getUnicastPipe(toID);
+		if (pipe == null) return false;
+		Message msg = new Message();
+		msg.addMessageElement(null, new ByteArrayMessageElement("Packet", MimeMediaType.AOS, bytes, null));
+		try
+		{
+			if (pipe.send(msg)) return true;
+		}
+		catch (IOException e)
+		{
+			Log.e("JxtaTransport","nu s-a putut trimite mesajul pe pipe-ul unicast.");
+		}
+		forget(toID);
+		return false;
+	}
+
+	public boolean sendText(String toID, String data)
+	{
+		Message msg = new Message();
+		StringMessageElement senderID = new StringMessageElement("SenderID", peerID.toString(), null);
+		StringMessageElement senderName = new StringMessageElement("SenderName", peerName, null);
+		StringMessageElement receiverID = new StringMessageElement("ReceiverID", toID, null);
+		StringMessageElement message = new StringMessageElement("Data", data, null);
+		msg.addMessageElement(null, senderID);
+		msg.addMessageElement(null, senderName);
+		msg.addMessageElement(null, receiverID);
+		msg.addMessageElement(null, message);
+		return sendOnPipe(toID, msg);
+	}
+
+	public boolean broadcast(byte[] bytes)
+	{
+		OutputPipe pipe = outputPipe;
+		if (pipe == null) return false;
+		Message msg = new Message();
+		msg.addMessageElement(null, new ByteArrayMessageElement("Packet", MimeMediaType.AOS, bytes, null));
+		try
+		{
+			return pipe.send(msg);
+		}
+		catch (IOException e)
+		{
+			Log.e("JxtaTransport","nu s-a putut trimite mesajul pe pipe-ul propagate.");
+			return false;
+		}
+	}
+
+	/**
+	 * Trimite un mesaj JXTA pe pipe-ul unicast al partenerului sau, daca acesta
+	 * nu este disponibil, pe pipe-ul propagate.
+	 * 
+	 * @param toID
+	 * @param msg
+	 * @return true daca s-a reusit trimiterea
+	 */
+	private boolean sendOnPipe(String toID, Message msg)
+	{
+		OutputPipe common = outputPipe;
+		if (common != null)
+		{
+			if (unicast)
+			{
+				OutputPipe pipe = getUnicastPipe(toID);
+				if (pipe != null)
+				{
+					try
+					{
+						if (pipe.send(msg)) return true;
+					}
+					catch (IOException e)
+					{
+						Log.e("JxtaTransport","nu s-a putut trimite mesajul pe pipe-ul unicast.");
+					}
+					forget(toID);
+				}
+			}
+			try
+			{
+				return common.send(msg);
+			}
+			catch (IOException e)
+			{
+				Log.e("JxtaTransport","nu s-a putut trimite mesajul.");
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Intoarce pipe-ul unicast catre partener. Daca nu exista inca, porneste
+	 * rezolvarea lui si intoarce null. O rezolvare fara raspuns dupa
+	 * {@link #PIPE_TIMEOUT} este abandonata si pornita din nou.
+	 * 
+	 * @param toID id-ul partenerului
+	 * @return pipe-ul unicast sau null
+	 */
+	private OutputPipe getUnicastPipe(String toID)
+	{
+		synchronized (unicastPipes)
+		{
+			OutputPipe pipe = unicastPipes.get(toID);
+			if (pipe != null && !pipe.isClosed()) return pipe;
+			if (pipe != null) unicastPipes.remove(toID);
+			long now = System.currentTimeMillis();
+			Long since = pendingSince.get(toID);
+			if (since != null && now - since < PIPE_TIMEOUT) return null;
+
+			PipeAdvertisement adv = getUnicastPipeAdvertisement(groupID, toID, pipeName);
+			String pipeID = adv.getPipeID().toString();
+			try
+			{
+				PeerID toPeerID = (PeerID) IDFactory.fromURI(new URI(toID));
+				pendingPipes.put(pipeID, toID);
+				pendingSince.put(toID, now);
+				pipeService.createOutputPipe(adv, Collections.singleton(toPeerID), this);
+			}
+			catch (URISyntaxException e)
+			{
+				Log.e("JxtaTransport","peer id incorect!");
+			}
+			catch (IOException e)
+			{
+				Log.e("JxtaTransport","Nu s-a putut crea pipe-ul unicast.");
+				pendingPipes.remove(pipeID);
+				pendingSince.remove(toID);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Inchide pipe-ul unicast catre partener, de exemplu dupa o trimitere esuata,
+	 * si renunta la rezolvarea lui in curs.
+	 * 
+	 * @param toID id-ul partenerului
+	 */
+	public void forget(String toID)
+	{
+		synchronized (unicastPipes)
+		{
+			OutputPipe pipe = unicastPipes.remove(toID);
+			if (pipe != null) pipe.close();
+			if (pendingSince.remove(toID) != null) pendingPipes.remove(getAddress(toID));
+		}
+	}
+
+	/**
+	 * Se ocupa cu evenimentele generate de primirea unui mesaj prin input pipe.
+	 */
+	public void pipeMsgEvent(PipeMsgEvent event)
+	{
+		Message msg = event.getMessage();
+		Receiver r = receiver;
+		if (msg != null && r != null)
+		{
+			MessageElement packet = msg.getMessageElement(null, "Packet");
+			if (packet != null)
+			{
+				r.packetsReceived(packet.getBytes(false));
+				return;
+			}
+
+			MessageElement receiverID = msg.getMessageElement(null, "ReceiverID");
+			MessageElement senderID = msg.getMessageElement(null, "SenderID");
+			MessageElement senderName = msg.getMessageElement(null, "SenderName");
+			MessageElement data = msg.getMessageElement(null, "Data");
+			if (receiverID != null && senderID != null && senderName != null && data != null)
+			{
+				r.textReceived(senderID.toString(), senderName.toString(), receiverID.toString(), data.toString());
+			}
+		}
+	}
+
+	/**
+	 * Se ocupa cu evenimentul generat de crearea lui output pipe.
+	 */
+	public void outputPipeEvent(OutputPipeEvent event)
+	{
+		synchronized (unicastPipes)
+		{
+			String toID = pendingPipes.remove(event.getPipeID());
+			if (toID != null)
+			{
+				pendingSince.remove(toID);
+				if (isRunning) unicastPipes.put(toID, event.getOutputPipe());
+				else event.getOutputPipe().close();
+				return;
+			}
+		}
+		if (!String.valueOf(pipeAdv.getPipeID()).equals(event.getPipeID()))
+		{
+			// un pipe unicast rezolvat dupa ce a fost abandonat
+			event.getOutputPipe().close();
+			return;
+		}
+		outputPipe = event.getOutputPipe();
+		Receiver r = receiver;
+		if (r != null) r.ready();
+	}
+}
@@ -0,0 +1,261 @@
+package checkers.p2p;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * O retea simulata in aceeasi masina virtuala, pentru teste si masuratori cu
+ * multi parteneri. Fiecare {@link LoopbackTransport} creat aici este un
+ * partener; mesajele si raspunsurile la cautari ajung dupa o intarziere
+ * aleatoare si se pot pierde cu o probabilitate data.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class LoopbackNetwork
+{
+	private long minDelay, maxDelay;
+	private double loss;
+	private Random random;
+	private ScheduledExecutorService timer;
+	/* partenerii porniti (id -> transport) */
+	private ConcurrentHashMap<String, LoopbackTransport> endpoints;
+	private int nextID;
+
+	private long delivered, dropped;
+
+	/**
+	 * O retea fara intarzieri si fara pierderi.
+	 */
+	public LoopbackNetwork()
+	{
+		this(0, 0, 0, System.nanoTime());
+	}
+
+	/**
+	 * Constructorul pentru clasa LoopbackNetwork.
+	 * 
+	 * @param minDelay intarzierea minima (ms) a unui mesaj
+	 * @param maxDelay intarzierea maxima (ms) a unui mesaj
+	 * @param loss probabilitatea (0..1) ca un mesaj sa se piarda
+	 * @param seed samanta pentru intarzieri si pierderi, ca o simulare sa
+	 *            poata fi repetata
+	 */
+	public LoopbackNetwork(long minDelay, long maxDelay, double loss, long seed)
+	{
+		if (minDelay < 0 || maxDelay < minDelay || loss < 0 || loss > 1)
+		{
+			throw new IllegalArgumentException("Parametri de simulare incorecti");
+		}
+		this.minDelay = minDelay;
+		this.maxDelay = maxDelay;
+		this.loss = loss;
+		random = new Random(seed);
+		endpoints = new ConcurrentHashMap<String, LoopbackTransport>();
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "P2P-loopback");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Creeaza un partener nou in retea. Partenerul poate primi mesaje dupa
+	 * pornirea transportului.
+	 * 
+	 * @param name numele partenerului
+	 * @return transportul partenerului
+	 */
+	public synchronized LoopbackTransport createTransport(String name)
+	{
+		return new LoopbackTransport(this, "loopback:peer-" + (nextID++), name);
+	}
+
+	void attach(LoopbackTransport endpoint)
+	{
+		endpoints.put(endpoint.getLocalID(), endpoint);
+	}
+
+	void detach(LoopbackTransport endpoint)
+	{
+		endpoints.remove(endpoint.getLocalID());
+	}
+
+	/**
+	 * @return numarul partenerilor porniti
+	 */
+	public int size()
+	{
+		return endpoints.size();
+	}
+
+	/**
+	 * Trimite un mesaj unui singur partener.
+	 * 
+	 * @param toID
+	 * @param arrival ce se intampla la destinatar
+	 * @return false daca destinatarul nu este pornit
+	 */
+	boolean unicast(String toID, Arrival arrival)
+	{
+		LoopbackTransport to = endpoints.get(toID);
+		if (to == null) return false;
+		schedule(to, arrival);
+		return true;
+	}
+
+	/**
+	 * Trimite un mesaj tuturor partenerilor, in afara de expeditor.
+	 * 
+	 * @param fromID
+	 * @param arrival
+	 */
+	void broadcast(String fromID, Arrival arrival)
+	{
+		for (LoopbackTransport to : endpoints.values())
+		{
+			if (!to.getLocalID().equals(fromID)) schedule(to, arrival);
+		}
+	}
+
+	/**
+	 * Raspunde unei cautari dupa nume cu cel mult max parteneri anuntati.
+	 * 
+	 * @param from cel care cauta
+	 * @param name numele cautat, cu * pentru orice sir, sau null
+	 * @param max
+	 */
+	void search(LoopbackTransport from, String name, int max)
+	{
+		final Map<String, String> found = new HashMap<String, String>();
+		for (LoopbackTransport peer : endpoints.values())
+		{
+			if (found.size() >= max) break;
+			if (peer.isAnnounced() && matches(name, peer.getLocalName()))
+			{
+				found.put(peer.getLocalID(), peer.getLocalName());
+			}
+		}
+		if (found.isEmpty()) return;
+		schedule(from, new Arrival() {
+			public void deliver(LoopbackTransport to)
+			{
+				to.searchAnswered(found);
+			}
+		});
+	}
+
+	/**
+	 * Compara un nume cu un sablon de cautare, fara a tine cont de litere mari
+	 * sau mici, ca in cautarile JXTA.
+	 * 
+	 * @param pattern sablonul, cu * pentru orice sir, sau null pentru orice nume
+	 * @param name
+	 * @return true daca numele se potriveste
+	 */
+	static boolean matches(String pattern, String name)
+	{
+		if (pattern == null) return true;
+		if (name == null) return false;
+		String[] parts = pattern.toLowerCase().split("\\*", -1);
+		String n = name.toLowerCase();
+		if (parts.length == 1) return n.equals(parts[0]);
+		if (!n.startsWith(parts[0])) return false;
+		int pos = parts[0].length();
+		for (int i = 1; i < parts.length - 1; i++)
+		{
+			int at = n.indexOf(parts[i], pos);
+			if (at < 0) return false;
+			pos = at + parts[i].length();
+		}
+		String last = parts[parts.length - 1];
+		return n.length() - last.length() >= pos && n.endsWith(last);
+	}
+
+	private void schedule(final LoopbackTransport to, final Arrival arrival)
+	{
+		long delay;
+		synchronized (random)
+		{
+			if (loss > 0 && random.nextDouble() < loss)
+			{
+				dropped++;
+				return;
+			}
+			delay = minDelay + (maxDelay > minDelay ? (long) (random.nextDouble() * (maxDelay - minDelay)) : 0);
+			delivered++;
+		}
+		try
+		{
+			timer.schedule(new Runnable() {
+				public void run()
+				{
+					if (to.isRunning()) arrival.deliver(to);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			// reteaua a fost oprita
+		}
+	}
+
+	/**
+	 * @return numarul mesajelor trimise si nepierdute
+	 */
+	public long getDeliveredCount()
+	{
+		synchronized (random)
+		{
+			return delivered;
+		}
+	}
+
+	/**
+	 * @return numarul mesajelor pierdute
+	 */
+	public long getDroppedCount()
+	{
+		synchronized (random)
+		{
+			return dropped;
+		}
+	}
+
+	/**
+	 * @return partenerii porniti
+	 */
+	public List<LoopbackTransport> getTransports()
+	{
+		return new ArrayList<LoopbackTransport>(endpoints.values());
+	}
+
+	/**
+	 * Opreste reteaua; mesajele in drum sunt pierdute.
+	 */
+	public void shutdown()
+	{
+		timer.shutdownNow();
+		endpoints.clear();
+	}
+
+	/**
+	 * Ce se intampla la destinatar cand ajunge un mesaj.
+	 */
+	interface Arrival
+	{
+		public void deliver(LoopbackTransport to);
+	}
+}
@@ -0,0 +1,191 @@
+package checkers.p2p;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Un partener din {@link LoopbackNetwork}. Se comporta ca {@link JxtaTransport}:
+ * partenerul este anuntat la pornire, raspunsurile la cautari sunt pastrate
+ * intr-un cache local, iar mesajele directe catre un partener oprit se
+ * pierd fara eroare.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class LoopbackTransport implements Transport
+{
+	private LoopbackNetwork network;
+	private String id, name;
+	private volatile Receiver receiver;
+	private volatile boolean running, announced, direct;
+	/* partenerii gasiti la cautarile anterioare (id -> nume) */
+	private HashMap<String, String> cache;
+
+	LoopbackTransport(LoopbackNetwork network, String id, String name)
+	{
+		this.network = network;
+		this.id = id;
+		this.name = name;
+		cache = new HashMap<String, String>();
+		direct = true;
+	}
+
+	public String getLocalID()
+	{
+		return id;
+	}
+
+	public String getLocalName()
+	{
+		return name;
+	}
+
+	public String getAddress(String peerID)
+	{
+		return "loopback:pipe/" + peerID;
+	}
+
+	public void setDirect(boolean direct)
+	{
+		this.direct = direct;
+	}
+
+	boolean isRunning()
+	{
+		return running;
+	}
+
+	boolean isAnnounced()
+	{
+		return running && announced;
+	}
+
+	public boolean isReady()
+	{
+		return running;
+	}
+
+	public void start(Receiver receiver)
+	{
+		if (running) return;
+		this.receiver = receiver;
+		running = true;
+		announced = true;
+		network.attach(this);
+		receiver.ready();
+	}
+
+	public void stop()
+	{
+		if (!running) return;
+		running = false;
+		announced = false;
+		network.detach(this);
+	}
+
+	public void announce()
+	{
+		announced = true;
+	}
+
+	public boolean send(String toID, final byte[] bytes)
+	{
+		if (!running) return false;
+		LoopbackNetwork.Arrival arrival = new LoopbackNetwork.Arrival() {
+			public void deliver(LoopbackTransport to)
+			{
+				to.receiver.packetsReceived(bytes);
+			}
+		};
+		if (direct)
+		{
+			// ca un pipe unicast deschis: pierderea nu se vede la expeditor
+			network.unicast(toID, arrival);
+		}
+		else network.broadcast(id, arrival);
+		return true;
+	}
+
+	public boolean sendDirect(String toID, final byte[] bytes)
+	{
+		if (!running || !direct) return false;
+		network.unicast(toID, new LoopbackNetwork.Arrival() {
+			public void deliver(LoopbackTransport to)
+			{
+				to.receiver.packetsReceived(bytes);
+			}
+		});
+		return true;
+	}
+
+	public boolean sendText(final String toID, final String data)
+	{
+		if (!running) return false;
+		LoopbackNetwork.Arrival arrival = new LoopbackNetwork.Arrival() {
+			public void deliver(LoopbackTransport to)
+			{
+				to.receiver.textReceived(id, name, toID, data);
+			}
+		};
+		if (direct) network.unicast(toID, arrival);
+		else network.broadcast(id, arrival);
+		return true;
+	}
+
+	public boolean broadcast(final byte[] bytes)
+	{
+		if (!running) return false;
+		network.broadcast(id, new LoopbackNetwork.Arrival() {
+			public void deliver(LoopbackTransport to)
+			{
+				to.receiver.packetsReceived(bytes);
+			}
+		});
+		return true;
+	}
+
+	public void searchLocal(String pattern)
+	{
+		Map<String, String> found = new HashMap<String, String>();
+		synchronized (cache)
+		{
+			for (Map.Entry<String, String> e : cache.entrySet())
+			{
+				if (LoopbackNetwork.matches(pattern, e.getValue())) found.put(e.getKey(), e.getValue());
+			}
+		}
+		Receiver r = receiver;
+		if (r != null && !found.isEmpty()) r.peersFound(found, false);
+	}
+
+	public void searchRemote(String pattern, int max)
+	{
+		if (running) network.search(this, pattern, max);
+	}
+
+	/**
+	 * Raspunsul la o cautare a ajuns la partener.
+	 * 
+	 * @param found partenerii gasiti (id, nume)
+	 */
+	void searchAnswered(Map<String, String> found)
+	{
+		synchronized (cache)
+		{
+			cache.putAll(found);
+		}
+		receiver.peersFound(found, true);
+	}
+
+	public void flushCache()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+		}
+	}
+
+	public void forget(String peerID)
+	{
+	}
+}
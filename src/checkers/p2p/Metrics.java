@@ -0,0 +1,341 @@
+package checkers.p2p;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Contoarele, valorile curente si distributiile de durate ale retelei P2P.
+ * Inregistrarea unei valori costa o operatie atomica (doua sau trei pentru
+ * durate), fara lock-uri si fara alocari, deci contoarele raman active si in
+ * productie. Valorile pot fi citite prin {@link #get(String)} sau afisate
+ * toate cu {@link #dump()}.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Metrics
+{
+	public final static String MESSAGES_SENT = "messages.sent";
+	public final static String MESSAGES_RECEIVED = "messages.received";
+	public final static String BYTES_SENT = "bytes.sent";
+	public final static String BYTES_RECEIVED = "bytes.received";
+	public final static String SEND_FAILURES = "messages.send.failed";
+	public final static String DISCOVERY_RTT = "discovery.rtt";
+	public final static String ADVERTISEMENTS_PUBLISHED = "advertisements.published";
+	public final static String DISPATCH_TIME = "dispatch.time";
+	public final static String DISPATCH_QUEUED = "dispatch.queued";
+	public final static String THREADS = "threads.active";
+	public final static String PEERS = "peers.count";
+	public final static String INBOX_DEPTH = "inbox.depth";
+	public final static String INBOX_DROPPED = "inbox.dropped";
+	public final static String INBOX_COALESCED = "inbox.coalesced";
+	public final static String FLOW_SIGNALS = "flow.signals";
+
+	private static Metrics shared;
+
+	private ConcurrentHashMap<String, Object> metrics;
+
+	/**
+	 * O valoare citita doar la cerere, de exemplu numarul de parteneri.
+	 */
+	public interface Gauge
+	{
+		public long getValue();
+	}
+
+	/**
+	 * Suma valorilor inregistrate cu {@link Metrics#addGauge}, de exemplu
+	 * partenerii tuturor conexiunilor pornite.
+	 */
+	private static class Sum implements Gauge
+	{
+		private CopyOnWriteArrayList<Gauge> parts = new CopyOnWriteArrayList<Gauge>();
+
+		public long getValue()
+		{
+			long sum = 0;
+			for (Gauge g : parts)
+			{
+				sum += g.getValue();
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * Un contor care doar creste.
+	 */
+	public static class Counter
+	{
+		private AtomicLong value = new AtomicLong();
+
+		public void inc()
+		{
+			value.incrementAndGet();
+		}
+
+		public void add(long n)
+		{
+			value.addAndGet(n);
+		}
+
+		public long getValue()
+		{
+			return value.get();
+		}
+	}
+
+	/**
+	 * Distributia unor durate, in intervale cu limite puteri ale lui 2
+	 * (microsecunde). Percentilele sunt aproximate la limita superioara a
+	 * intervalului.
+	 */
+	public static class Histogram
+	{
+		private final static int BUCKETS = 40;
+
+		private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private AtomicLong count = new AtomicLong();
+		private AtomicLong sum = new AtomicLong();
+		private AtomicLong max = new AtomicLong();
+
+		/**
+		 * @param nanos durata in ns
+		 */
+		public void record(long nanos)
+		{
+			long micros = Math.max(nanos / 1000, 0);
+			int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+			buckets.incrementAndGet(bucket);
+			count.incrementAndGet();
+			sum.addAndGet(micros);
+			long m = max.get();
+			while (micros > m && !max.compareAndSet(m, micros))
+			{
+				m = max.get();
+			}
+		}
+
+		/**
+		 * Inregistreaza durata de la start pana acum.
+		 * 
+		 * @param start valoarea System.nanoTime() de la inceput
+		 */
+		public void since(long start)
+		{
+			record(System.nanoTime() - start);
+		}
+
+		public long getCount()
+		{
+			return count.get();
+		}
+
+		/**
+		 * @return media in microsecunde
+		 */
+		public long getMean()
+		{
+			long n = count.get();
+			return (n == 0) ? 0 : sum.get() / n;
+		}
+
+		/**
+		 * @return valoarea maxima in microsecunde
+		 */
+		public long getMax()
+		{
+			return max.get();
+		}
+
+		/**
+		 * @param p intre 0 si 1
+		 * @return percentila p, aproximata, in microsecunde
+		 */
+		public long getPercentile(double p)
+		{
+			long n = count.get();
+			if (n == 0) return 0;
+			long rank = (long) Math.ceil(p * n);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				seen += buckets.get(i);
+				if (seen >= rank) return Math.min((i == 0) ? 0 : (1L << i) - 1, max.get());
+			}
+			return max.get();
+		}
+	}
+
+	public Metrics()
+	{
+		metrics = new ConcurrentHashMap<String, Object>();
+	}
+
+	/**
+	 * @return registrul comun al retelei P2P, cu valorile implicite
+	 */
+	public static synchronized Metrics getShared()
+	{
+		if (shared == null)
+		{
+			shared = new Metrics();
+			shared.gauge(THREADS, new Gauge() {
+				public long getValue()
+				{
+					return countThreads("P2P-");
+				}
+			});
+		}
+		return shared;
+	}
+
+	/**
+	 * @param name
+	 * @return contorul cu numele dat, creat la primul apel
+	 */
+	public Counter counter(String name)
+	{
+		Object m = metrics.get(name);
+		if (m == null)
+		{
+			metrics.putIfAbsent(name, new Counter());
+			m = metrics.get(name);
+		}
+		return (Counter) m;
+	}
+
+	/**
+	 * @param name
+	 * @return distributia cu numele dat, creata la primul apel
+	 */
+	public Histogram histogram(String name)
+	{
+		Object m = metrics.get(name);
+		if (m == null)
+		{
+			metrics.putIfAbsent(name, new Histogram());
+			m = metrics.get(name);
+		}
+		return (Histogram) m;
+	}
+
+	/**
+	 * Inregistreaza o valoare citita la cerere; inlocuieste valoarea cu
+	 * acelasi nume.
+	 * 
+	 * @param name
+	 * @param gauge
+	 */
+	public void gauge(String name, Gauge gauge)
+	{
+		metrics.put(name, gauge);
+	}
+
+	/**
+	 * Adauga o parte la valoarea cu numele dat, care este suma tuturor
+	 * partilor. Partea ramane referita pana la {@link #removeGauge}.
+	 * 
+	 * @param name
+	 * @param part
+	 */
+	public void addGauge(String name, Gauge part)
+	{
+		Object m = metrics.get(name);
+		if (m == null)
+		{
+			metrics.putIfAbsent(name, new Sum());
+			m = metrics.get(name);
+		}
+		((Sum) m).parts.add(part);
+	}
+
+	/**
+	 * Scoate o parte adaugata cu {@link #addGauge}; suma ramane, eventual 0.
+	 * 
+	 * @param name
+	 * @param part
+	 */
+	public void removeGauge(String name, Gauge part)
+	{
+		Object m = metrics.get(name);
+		if (m instanceof Sum) ((Sum) m).parts.remove(part);
+	}
+
+	/**
+	 * @param name
+	 * @return valoarea curenta a contorului sau a valorii cu numele dat,
+	 *         numarul de inregistrari pentru o distributie, sau -1 daca nu
+	 *         exista
+	 */
+	public long get(String name)
+	{
+		Object m = metrics.get(name);
+		if (m instanceof Counter) return ((Counter) m).getValue();
+		if (m instanceof Gauge) return ((Gauge) m).getValue();
+		if (m instanceof Histogram) return ((Histogram) m).getCount();
+		return -1;
+	}
+
+	/**
+	 * @return toate valorile, cate una pe linie, in ordinea numelor
+	 */
+	public String dump()
+	{
+		List<String> names = new ArrayList<String>(metrics.keySet());
+		Collections.sort(names);
+		StringBuilder sb = new StringBuilder();
+		for (String name : names)
+		{
+			Object m = metrics.get(name);
+			sb.append(name).append(' ');
+			if (m instanceof Histogram)
+			{
+				Histogram h = (Histogram) m;
+				sb.append("count=").append(h.getCount());
+				sb.append(" mean=").append(h.getMean()).append("us");
+				sb.append(" p50=").append(h.getPercentile(0.5)).append("us");
+				sb.append(" p99=").append(h.getPercentile(0.99)).append("us");
+				sb.append(" max=").append(h.getMax()).append("us");
+			}
+			else sb.append(get(name));
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return o copie a valorilor simple (contoare si valori curente)
+	 */
+	public HashMap<String, Long> snapshot()
+	{
+		HashMap<String, Long> result = new HashMap<String, Long>();
+		for (String name : metrics.keySet())
+		{
+			result.put(name, Long.valueOf(get(name)));
+		}
+		return result;
+	}
+
+	/**
+	 * @param prefix
+	 * @return numarul firelor de executie active al caror nume incepe cu prefix
+	 */
+	private static long countThreads(String prefix)
+	{
+		Thread[] threads = new Thread[Thread.activeCount() + 8];
+		int n = Thread.enumerate(threads);
+		long count = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (threads[i].getName().startsWith(prefix)) count++;
+		}
+		return count;
+	}
+}
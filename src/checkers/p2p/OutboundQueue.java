@@ -0,0 +1,355 @@
+package checkers.p2p;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/**
+ * Coada de iesire, cate una pentru fiecare destinatar. Cadrele trimise catre
+ * acelasi partener intr-o fereastra scurta de timp sunt grupate si plecate
+ * intr-un singur mesaj JXTA, in ordinea in care au fost adaugate. Un
+ * destinatar care a cerut o pauza primeste cadrele abia dupa terminarea ei,
+ * tot cate cel mult maxBatch intr-un mesaj; daca in pauza se aduna mai mult
+ * de {@link #MAX_PAUSED} cadre, cele mai vechi sunt aruncate.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class OutboundQueue
+{
+	public final static long DEFAULT_FLUSH_WINDOW = 20;
+	public final static int DEFAULT_MAX_BATCH = 16;
+	/* cadrele pastrate cel mult pentru un destinatar in pauza */
+	public final static int MAX_PAUSED = 256;
+
+	/**
+	 * Cel care trimite efectiv un grup de cadre.
+	 */
+	public interface Sender
+	{
+		public boolean send(String toID, List<Packet> packets);
+	}
+
+	private Sender sender;
+	private ScheduledExecutorService flusher;
+	private HashMap<String, Batch> pending;
+	/* destinatarii care au cerut o pauza (id -> sfarsitul pauzei, ms) */
+	private HashMap<String, Long> paused;
+	private long flushWindow;
+	private int maxBatch;
+
+	private long batches, messages, largestBatch, totalLatency, lastLatency, pauses, dropped;
+
+	/**
+	 * Constructorul pentru clasa OutboundQueue.
+	 * 
+	 * @param sender
+	 * @param flushWindow cat timp (ms) se asteapta alte cadre inainte de trimitere;
+	 *            0 trimite imediat, pe firul apelantului
+	 * @param maxBatch numarul de cadre dupa care grupul pleaca imediat
+	 */
+	public OutboundQueue(Sender sender, long flushWindow, int maxBatch)
+	{
+		this.sender = sender;
+		pending = new HashMap<String, Batch>();
+		paused = new HashMap<String, Long>();
+		setFlushWindow(flushWindow);
+		setMaxBatch(maxBatch);
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "P2P-flush");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public synchronized void setFlushWindow(long flushWindow)
+	{
+		if (flushWindow < 0) throw new IllegalArgumentException("Fereastra negativa");
+		this.flushWindow = flushWindow;
+	}
+
+	public synchronized long getFlushWindow()
+	{
+		return flushWindow;
+	}
+
+	public synchronized void setMaxBatch(int maxBatch)
+	{
+		if (maxBatch < 1) throw new IllegalArgumentException("Dimensiune incorecta a grupului");
+		this.maxBatch = maxBatch;
+	}
+
+	public synchronized int getMaxBatch()
+	{
+		return maxBatch;
+	}
+
+	/**
+	 * Opreste trimiterea catre un destinatar pentru o perioada. Cadrele
+	 * adaugate intre timp sunt grupate si pleaca la sfarsitul pauzei.
+	 * 
+	 * @param toID destinatarul
+	 * @param pause durata pauzei (ms); 0 reia imediat trimiterea
+	 */
+	public synchronized void pause(String toID, long pause)
+	{
+		if (pause > 0)
+		{
+			paused.put(toID, Long.valueOf(System.currentTimeMillis() + pause));
+			pauses++;
+			return;
+		}
+		if (paused.remove(toID) == null) return;
+		Batch batch = pending.remove(toID);
+		if (batch != null) schedule(batch, 0);
+	}
+
+	/**
+	 * @return cat mai dureaza (ms) pauza destinatarului, 0 daca nu are pauza
+	 */
+	private long remainingPause(String toID)
+	{
+		Long until = paused.get(toID);
+		if (until == null) return 0;
+		long left = until.longValue() - System.currentTimeMillis();
+		if (left <= 0) paused.remove(toID);
+		return Math.max(left, 0);
+	}
+
+	/**
+	 * Adauga un cadru in coada destinatarului.
+	 * 
+	 * @param toID destinatarul
+	 * @param packet
+	 * @return false daca trimiterea imediata a esuat
+	 */
+	public boolean enqueue(String toID, Packet packet)
+	{
+		Batch ready = null;
+		synchronized (this)
+		{
+			long wait = remainingPause(toID);
+			if (wait > 0)
+			{
+				Batch batch = pending.get(toID);
+				if (batch == null)
+				{
+					batch = new Batch(toID);
+					pending.put(toID, batch);
+					schedule(batch, wait);
+				}
+				batch.packets.add(packet);
+				if (batch.packets.size() > MAX_PAUSED)
+				{
+					// cadrele cu confirmare vor fi retrimise de DeliveryTracker
+					batch.packets.remove(0);
+					if (dropped++ % 100 == 0)
+					{
+						Log.e("OutboundQueue","destinatarul " + toID + " este in pauza; " + dropped + " cadre aruncate.");
+					}
+				}
+			}
+			else if (flushWindow == 0)
+			{
+				ready = new Batch(toID);
+				ready.packets.add(packet);
+			}
+			else
+			{
+				Batch batch = pending.get(toID);
+				if (batch == null)
+				{
+					batch = new Batch(toID);
+					pending.put(toID, batch);
+					schedule(batch, flushWindow);
+				}
+				batch.packets.add(packet);
+				if (batch.packets.size() >= maxBatch)
+				{
+					pending.remove(toID);
+					schedule(batch, 0);
+				}
+			}
+		}
+		if (ready != null)
+		{
+			return ready.flush();
+		}
+		return true;
+	}
+
+	/**
+	 * Trimite imediat, pe firul apelantului, toate cadrele din cozi.
+	 */
+	public void flushAll()
+	{
+		List<Batch> batches;
+		synchronized (this)
+		{
+			batches = new ArrayList<Batch>(pending.values());
+			pending.clear();
+		}
+		for (Batch batch : batches)
+		{
+			batch.flush();
+		}
+	}
+
+	/**
+	 * Renunta la cadrele din cozi si opreste firul de trimitere.
+	 */
+	public synchronized void shutdown()
+	{
+		pending.clear();
+		paused.clear();
+		flusher.shutdownNow();
+	}
+
+	private void schedule(Batch batch, long delay)
+	{
+		try
+		{
+			flusher.schedule(batch, delay, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			Log.e("OutboundQueue","coada a fost oprita, mesajul nu mai este trimis.");
+		}
+	}
+
+	/**
+	 * @return numarul de mesaje JXTA trimise
+	 */
+	public synchronized long getBatchCount()
+	{
+		return batches;
+	}
+
+	/**
+	 * @return numarul de cadre trimise
+	 */
+	public synchronized long getMessageCount()
+	{
+		return messages;
+	}
+
+	/**
+	 * @return numarul mediu de cadre pe mesaj JXTA
+	 */
+	public synchronized double getAverageBatchSize()
+	{
+		return batches == 0 ? 0 : (double) messages / batches;
+	}
+
+	/**
+	 * @return de cate ori au cerut destinatarii o pauza
+	 */
+	public synchronized long getPauseCount()
+	{
+		return pauses;
+	}
+
+	/**
+	 * @return numarul de cadre aruncate pentru ca destinatarul era prea mult
+	 *         timp in pauza
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return dropped;
+	}
+
+	public synchronized long getLargestBatch()
+	{
+		return largestBatch;
+	}
+
+	/**
+	 * @return timpul mediu (ms) intre primul cadru al unui grup si trimiterea lui
+	 */
+	public synchronized double getAverageFlushLatency()
+	{
+		return batches == 0 ? 0 : totalLatency / 1e6 / batches;
+	}
+
+	/**
+	 * @return timpul (ms) de asteptare al ultimului grup trimis
+	 */
+	public synchronized double getLastFlushLatency()
+	{
+		return lastLatency / 1e6;
+	}
+
+	/**
+	 * Cadrele in asteptare pentru un destinatar.
+	 */
+	private class Batch implements Runnable
+	{
+		private String toID;
+		private List<Packet> packets = new ArrayList<Packet>();
+		private long created = System.nanoTime();
+		private boolean flushed;
+
+		private Batch(String toID)
+		{
+			this.toID = toID;
+		}
+
+		public void run()
+		{
+			synchronized (OutboundQueue.this)
+			{
+				if (pending.get(toID) == this)
+				{
+					// pauza a fost prelungita
+					long wait = remainingPause(toID);
+					if (wait > 0)
+					{
+						schedule(this, wait);
+						return;
+					}
+					pending.remove(toID);
+				}
+			}
+			flush();
+		}
+
+		/**
+		 * Trimite cadrele, cate cel mult maxBatch intr-un mesaj (un grup adunat
+		 * in timpul unei pauze poate fi mai mare).
+		 */
+		private boolean flush()
+		{
+			int size;
+			synchronized (OutboundQueue.this)
+			{
+				if (flushed) return true;
+				flushed = true;
+				size = maxBatch;
+				long latency = System.nanoTime() - created;
+				int count = (packets.size() + size - 1) / size;
+				batches += count;
+				messages += packets.size();
+				largestBatch = Math.max(largestBatch, Math.min(size, packets.size()));
+				totalLatency += latency * count;
+				lastLatency = latency;
+			}
+			if (packets.size() <= size) return sender.send(toID, packets);
+			boolean sent = true;
+			for (int from = 0; from < packets.size(); from += size)
+			{
+				sent &= sender.send(toID, packets.subList(from, Math.min(packets.size(), from + size)));
+			}
+			return sent;
+		}
+	}
+}
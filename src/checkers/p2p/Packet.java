@@ -0,0 +1,265 @@
+package checkers.p2p;
+
+/**
+ * Un cadru din formatul binar al mesajelor. Un mesaj JXTA contine un singur
+ * element "Packet" in care sunt scrise unul sau mai multe cadre.
+ * 
+ * FULL - primul mesaj catre un partener; contine id-urile complete.
+ * HANDLE - raspunsul destinatarului: numarul scurt atribuit expeditorului.
+ * DATA - mesajele urmatoare; contin doar epoca destinatarului si numarul scurt.
+ * ACK - confirmarea primirii cadrelor FULL/DATA care au cerut-o; numerele de
+ * ordine sunt ale expeditorului cadrelor, pentru partenerul care confirma.
+ * HEARTBEAT - semnal periodic pe pipe-ul propagate: partenerul este inca activ.
+ * FLOW - destinatarul nu mai face fata: expeditorul sa astepte pauza data.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Packet
+{
+	public final static int FULL = 1;
+	public final static int HANDLE = 2;
+	public final static int DATA = 3;
+	public final static int ACK = 4;
+	public final static int HEARTBEAT = 5;
+	public final static int FLOW = 6;
+
+	/* cadrul are un numar de ordine si cere confirmarea primirii */
+	public final static int FLAG_ACK_REQUESTED = 1;
+
+	private int type, flags, epoch, handle, seq;
+	private long pause;
+	private int[] acks;
+	private String senderID, senderName, receiverID, data;
+
+	private Packet(int type)
+	{
+		this.type = type;
+	}
+
+	/**
+	 * @param epoch epoca sesiunii expeditorului
+	 * @param senderID
+	 * @param senderName
+	 * @param receiverID
+	 * @param data mesajul
+	 * @return cadru FULL
+	 */
+	public static Packet full(int epoch, String senderID, String senderName, String receiverID, String data)
+	{
+		Packet p = new Packet(FULL);
+		p.epoch = epoch;
+		p.senderID = senderID;
+		p.senderName = senderName;
+		p.receiverID = receiverID;
+		p.data = data;
+		return p;
+	}
+
+	/**
+	 * @param epoch epoca sesiunii celui care atribuie numarul
+	 * @param senderID cel care atribuie numarul
+	 * @param receiverID partenerul caruia i se atribuie numarul
+	 * @param handle numarul atribuit
+	 * @return cadru HANDLE
+	 */
+	public static Packet handle(int epoch, String senderID, String receiverID, int handle)
+	{
+		Packet p = new Packet(HANDLE);
+		p.epoch = epoch;
+		p.senderID = senderID;
+		p.receiverID = receiverID;
+		p.handle = handle;
+		return p;
+	}
+
+	/**
+	 * @param epoch epoca sesiunii destinatarului
+	 * @param handle numarul expeditorului atribuit de destinatar
+	 * @param data mesajul
+	 * @return cadru DATA
+	 */
+	public static Packet data(int epoch, int handle, String data)
+	{
+		Packet p = new Packet(DATA);
+		p.epoch = epoch;
+		p.handle = handle;
+		p.data = data;
+		return p;
+	}
+
+	/**
+	 * @param epoch epoca sesiunii celui care a cerut confirmarea
+	 * @param senderID partenerul care confirma
+	 * @param acks numerele de ordine confirmate
+	 * @return cadru ACK
+	 */
+	public static Packet ack(int epoch, String senderID, int[] acks)
+	{
+		Packet p = new Packet(ACK);
+		p.epoch = epoch;
+		p.senderID = senderID;
+		p.acks = acks;
+		return p;
+	}
+
+	/**
+	 * @param epoch epoca sesiunii expeditorului
+	 * @param senderID
+	 * @param senderName
+	 * @return cadru HEARTBEAT
+	 */
+	public static Packet heartbeat(int epoch, String senderID, String senderName)
+	{
+		Packet p = new Packet(HEARTBEAT);
+		p.epoch = epoch;
+		p.senderID = senderID;
+		p.senderName = senderName;
+		return p;
+	}
+
+	/**
+	 * @param epoch epoca sesiunii expeditorului
+	 * @param senderID partenerul care cere pauza
+	 * @param receiverID partenerul care trebuie sa astepte
+	 * @param pause cat timp (ms) sa astepte destinatarul; 0 pentru a relua
+	 * @return cadru FLOW
+	 */
+	public static Packet flow(int epoch, String senderID, String receiverID, long pause)
+	{
+		Packet p = new Packet(FLOW);
+		p.epoch = epoch;
+		p.senderID = senderID;
+		p.receiverID = receiverID;
+		p.pause = pause;
+		return p;
+	}
+
+	/**
+	 * Cere confirmarea primirii acestui cadru.
+	 * 
+	 * @param seq numarul de ordine, unic in sesiunea expeditorului
+	 * @return acest cadru
+	 */
+	public Packet requestAck(int seq)
+	{
+		this.seq = seq;
+		flags |= FLAG_ACK_REQUESTED;
+		return this;
+	}
+
+	public boolean isAckRequested()
+	{
+		return (flags & FLAG_ACK_REQUESTED) != 0;
+	}
+
+	static Packet empty(int type)
+	{
+		return new Packet(type);
+	}
+
+	public int getType()
+	{
+		return type;
+	}
+
+	public int getFlags()
+	{
+		return flags;
+	}
+
+	void setFlags(int flags)
+	{
+		this.flags = flags;
+	}
+
+	public int getEpoch()
+	{
+		return epoch;
+	}
+
+	void setEpoch(int epoch)
+	{
+		this.epoch = epoch;
+	}
+
+	public int getHandle()
+	{
+		return handle;
+	}
+
+	void setHandle(int handle)
+	{
+		this.handle = handle;
+	}
+
+	public int getSeq()
+	{
+		return seq;
+	}
+
+	void setSeq(int seq)
+	{
+		this.seq = seq;
+	}
+
+	public long getPause()
+	{
+		return pause;
+	}
+
+	void setPause(long pause)
+	{
+		this.pause = pause;
+	}
+
+	public int[] getAcks()
+	{
+		return acks;
+	}
+
+	void setAcks(int[] acks)
+	{
+		this.acks = acks;
+	}
+
+	public String getSenderID()
+	{
+		return senderID;
+	}
+
+	void setSenderID(String senderID)
+	{
+		this.senderID = senderID;
+	}
+
+	public String getSenderName()
+	{
+		return senderName;
+	}
+
+	void setSenderName(String senderName)
+	{
+		this.senderName = senderName;
+	}
+
+	public String getReceiverID()
+	{
+		return receiverID;
+	}
+
+	void setReceiverID(String receiverID)
+	{
+		this.receiverID = receiverID;
+	}
+
+	public String getData()
+	{
+		return data;
+	}
+
+	void setData(String data)
+	{
+		this.data = data;
+	}
+}
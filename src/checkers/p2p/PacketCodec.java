@@ -0,0 +1,391 @@
+package checkers.p2p;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codarea binara a cadrelor {@link Packet}.
+ * 
+ * Format: [versiune][cadru]... unde fiecare cadru este
+ * [lungime varint][tip][flags][continut][seq]; seq apare doar daca cadrul
+ * cere confirmare. Numerele intregi mici se scriu ca varint, sirurile ca
+ * lungime varint + octeti UTF-8. Cadrele cu un tip necunoscut sunt sarite, iar
+ * octetii de la sfarsitul unui cadru, dupa campurile cunoscute, sunt ignorati;
+ * deci se pot adauga tipuri noi si campuri noi la sfarsitul cadrelor (cum
+ * este seq) fara o versiune noua.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class PacketCodec
+{
+	public final static int VERSION = 1;
+
+	private PacketCodec()
+	{
+	}
+
+	/**
+	 * Codeaza un singur cadru.
+	 * 
+	 * @param packet
+	 * @return octetii de trimis
+	 */
+	public static byte[] encode(Packet packet)
+	{
+		List<Packet> packets = new ArrayList<Packet>(1);
+		packets.add(packet);
+		return encode(packets);
+	}
+
+	/**
+	 * Codeaza mai multe cadre, in ordine, in acelasi mesaj.
+	 * 
+	 * @param packets
+	 * @return octetii de trimis
+	 */
+	public static byte[] encode(List<Packet> packets)
+	{
+		Buffer out = new Buffer(64);
+		Buffer frame = new Buffer(64);
+		out.writeByte(VERSION);
+		for (Packet p : packets)
+		{
+			frame.reset();
+			frame.writeByte(p.getType());
+			frame.writeByte(p.getFlags());
+			switch (p.getType())
+			{
+				case Packet.FULL:
+				{
+					frame.writeInt(p.getEpoch());
+					frame.writeString(p.getSenderID());
+					frame.writeString(p.getSenderName());
+					frame.writeString(p.getReceiverID());
+					frame.writeString(p.getData());
+					break;
+				}
+				case Packet.HANDLE:
+				{
+					frame.writeInt(p.getEpoch());
+					frame.writeString(p.getSenderID());
+					frame.writeString(p.getReceiverID());
+					frame.writeVarint(p.getHandle());
+					break;
+				}
+				case Packet.DATA:
+				{
+					frame.writeInt(p.getEpoch());
+					frame.writeVarint(p.getHandle());
+					frame.writeString(p.getData());
+					break;
+				}
+				case Packet.ACK:
+				{
+					int[] acks = p.getAcks();
+					frame.writeInt(p.getEpoch());
+					frame.writeVarint(acks.length);
+					for (int i = 0; i < acks.length; i++)
+					{
+						frame.writeVarint(acks[i]);
+					}
+					frame.writeString(p.getSenderID());
+					break;
+				}
+				case Packet.HEARTBEAT:
+				{
+					frame.writeInt(p.getEpoch());
+					frame.writeString(p.getSenderID());
+					frame.writeString(p.getSenderName());
+					break;
+				}
+				case Packet.FLOW:
+				{
+					frame.writeInt(p.getEpoch());
+					frame.writeString(p.getSenderID());
+					frame.writeString(p.getReceiverID());
+					frame.writeVarint((int) Math.min(p.getPause(), Integer.MAX_VALUE));
+					break;
+				}
+				default:
+					throw new IllegalArgumentException("Tip de cadru necunoscut: " + p.getType());
+			}
+			if (p.isAckRequested())
+			{
+				frame.writeVarint(p.getSeq());
+			}
+			out.writeVarint(frame.size());
+			out.write(frame.bytes(), 0, frame.size());
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodeaza cadrele dintr-un mesaj.
+	 * 
+	 * @param bytes
+	 * @return cadrele cunoscute, in ordinea din mesaj
+	 * @throws IOException daca mesajul este incomplet sau are alta versiune
+	 */
+	public static List<Packet> decode(byte[] bytes) throws IOException
+	{
+		Reader in = new Reader(bytes, 0, bytes.length);
+		int version = in.readByte();
+		if (version != VERSION)
+		{
+			throw new IOException("Versiune necunoscuta a formatului: " + version);
+		}
+
+		List<Packet> packets = new ArrayList<Packet>(1);
+		while (in.remaining() > 0)
+		{
+			int length = in.readVarint();
+			Reader frame = in.slice(length);
+			int type = frame.readByte();
+			int flags = frame.readByte();
+			Packet p = Packet.empty(type);
+			p.setFlags(flags);
+			switch (type)
+			{
+				case Packet.FULL:
+				{
+					p.setEpoch(frame.readInt());
+					p.setSenderID(frame.readString());
+					p.setSenderName(frame.readString());
+					p.setReceiverID(frame.readString());
+					p.setData(frame.readString());
+					break;
+				}
+				case Packet.HANDLE:
+				{
+					p.setEpoch(frame.readInt());
+					p.setSenderID(frame.readString());
+					p.setReceiverID(frame.readString());
+					p.setHandle(frame.readVarint());
+					break;
+				}
+				case Packet.DATA:
+				{
+					p.setEpoch(frame.readInt());
+					p.setHandle(frame.readVarint());
+					p.setData(frame.readString());
+					break;
+				}
+				case Packet.ACK:
+				{
+					p.setEpoch(frame.readInt());
+					int count = frame.readVarint();
+					if (count > frame.remaining())
+					{
+						throw new IOException("Mesaj incomplet");
+					}
+					int[] acks = new int[count];
+					for (int i = 0; i < count; i++)
+					{
+						acks[i] = frame.readVarint();
+					}
+					p.setAcks(acks);
+					p.setSenderID(frame.readString());
+					break;
+				}
+				case Packet.HEARTBEAT:
+				{
+					p.setEpoch(frame.readInt());
+					p.setSenderID(frame.readString());
+					p.setSenderName(frame.readString());
+					break;
+				}
+				case Packet.FLOW:
+				{
+					p.setEpoch(frame.readInt());
+					p.setSenderID(frame.readString());
+					p.setReceiverID(frame.readString());
+					p.setPause(frame.readVarint());
+					break;
+				}
+				default:
+					// tip introdus de o versiune mai noua
+					continue;
+			}
+			if (p.isAckRequested())
+			{
+				p.setSeq(frame.readVarint());
+			}
+			packets.add(p);
+		}
+		return packets;
+	}
+
+	/**
+	 * Tablou de octeti care creste la nevoie.
+	 */
+	private static class Buffer
+	{
+		private byte[] buf;
+		private int count;
+
+		private Buffer(int capacity)
+		{
+			buf = new byte[capacity];
+		}
+
+		private void ensure(int extra)
+		{
+			if (count + extra > buf.length)
+			{
+				byte[] tmp = new byte[Math.max(buf.length * 2, count + extra)];
+				System.arraycopy(buf, 0, tmp, 0, count);
+				buf = tmp;
+			}
+		}
+
+		private void writeByte(int b)
+		{
+			ensure(1);
+			buf[count++] = (byte) b;
+		}
+
+		private void write(byte[] b, int off, int len)
+		{
+			ensure(len);
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		private void writeInt(int v)
+		{
+			ensure(4);
+			buf[count++] = (byte) (v >>> 24);
+			buf[count++] = (byte) (v >>> 16);
+			buf[count++] = (byte) (v >>> 8);
+			buf[count++] = (byte) v;
+		}
+
+		private void writeVarint(int v)
+		{
+			ensure(5);
+			while ((v & ~0x7F) != 0)
+			{
+				buf[count++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[count++] = (byte) v;
+		}
+
+		private void writeString(String s)
+		{
+			byte[] b = utf8(s == null ? "" : s);
+			writeVarint(b.length);
+			write(b, 0, b.length);
+		}
+
+		private void reset()
+		{
+			count = 0;
+		}
+
+		private int size()
+		{
+			return count;
+		}
+
+		private byte[] bytes()
+		{
+			return buf;
+		}
+
+		private byte[] toByteArray()
+		{
+			byte[] result = new byte[count];
+			System.arraycopy(buf, 0, result, 0, count);
+			return result;
+		}
+	}
+
+	/**
+	 * Citeste dintr-o portiune a unui tablou de octeti.
+	 */
+	private static class Reader
+	{
+		private byte[] buf;
+		private int pos, end;
+
+		private Reader(byte[] buf, int off, int len)
+		{
+			this.buf = buf;
+			pos = off;
+			end = off + len;
+		}
+
+		private int remaining()
+		{
+			return end - pos;
+		}
+
+		private void need(int n) throws IOException
+		{
+			if (n < 0 || pos + n > end)
+			{
+				throw new IOException("Mesaj incomplet");
+			}
+		}
+
+		private Reader slice(int len) throws IOException
+		{
+			need(len);
+			Reader r = new Reader(buf, pos, len);
+			pos += len;
+			return r;
+		}
+
+		private int readByte() throws IOException
+		{
+			need(1);
+			return buf[pos++] & 0xFF;
+		}
+
+		private int readInt() throws IOException
+		{
+			need(4);
+			int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8)
+					| (buf[pos + 3] & 0xFF);
+			pos += 4;
+			return v;
+		}
+
+		private int readVarint() throws IOException
+		{
+			int v = 0;
+			for (int shift = 0; shift < 35; shift += 7)
+			{
+				int b = readByte();
+				v |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) return v;
+			}
+			throw new IOException("Varint incorect");
+		}
+
+		private String readString() throws IOException
+		{
+			int len = readVarint();
+			need(len);
+			String s = new String(buf, pos, len, "UTF-8");
+			pos += len;
+			return s;
+		}
+	}
+
+	private static byte[] utf8(String s)
+	{
+		try
+		{
+			return s.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException("codarea UTF-8 nu este suportata!");
+		}
+	}
+}
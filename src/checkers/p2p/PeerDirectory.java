@@ -0,0 +1,296 @@
+package checkers.p2p;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+/**
+ * Lista de parteneri salvata pe disc, ca la repornire lista sa fie completata
+ * imediat, fara a astepta cautarea in retea.
+ * 
+ * Fisierul are marime fixa si este mapat in memorie. Contine doua regiuni;
+ * fiecare salvare scrie in regiunea care nu contine ultima copie valida, cu o
+ * generatie mai mare si un CRC peste continut. Daca aplicatia se opreste in
+ * timpul unei salvari, regiunea incompleta este respinsa la citire si se
+ * foloseste cealalta. Cand partenerii nu incap toti, se pastreaza cei vazuti
+ * cel mai recent.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class PeerDirectory
+{
+	public final static int REGION_SIZE = 16 * 1024;
+	public final static int MAX_ENTRIES = 256;
+
+	private final static int MAGIC = 0x50445231; // "PDR1"
+	/* magic, generatie, lungime, crc */
+	private final static int HEADER = 4 + 8 + 4 + 4;
+
+	/**
+	 * Un partener din lista salvata.
+	 */
+	public static class Entry
+	{
+		private String id, name, pipeId;
+		private long lastSeen;
+
+		/**
+		 * @param id id-ul partenerului
+		 * @param name numele partenerului
+		 * @param lastSeen ultima data cand a fost vazut (ms)
+		 * @param pipeId id-ul pipe-ului unicast al partenerului
+		 */
+		public Entry(String id, String name, long lastSeen, String pipeId)
+		{
+			this.id = id;
+			this.name = name;
+			this.lastSeen = lastSeen;
+			this.pipeId = pipeId;
+		}
+
+		public String getId()
+		{
+			return id;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public long getLastSeen()
+		{
+			return lastSeen;
+		}
+
+		public String getPipeId()
+		{
+			return pipeId;
+		}
+	}
+
+	private File file;
+	private RandomAccessFile raf;
+	private MappedByteBuffer buffer;
+	/* regiunea cu ultima copie valida (-1 daca nu exista) si generatia ei */
+	private int current;
+	private long generation;
+
+	/**
+	 * Constructorul pentru clasa PeerDirectory. Fisierul este deschis la prima
+	 * folosire.
+	 * 
+	 * @param file
+	 */
+	public PeerDirectory(File file)
+	{
+		this.file = file;
+		current = -1;
+	}
+
+	private void open() throws IOException
+	{
+		if (buffer != null) return;
+		raf = new RandomAccessFile(file, "rw");
+		FileChannel channel = raf.getChannel();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * REGION_SIZE);
+
+		current = -1;
+		generation = 0;
+		for (int region = 0; region < 2; region++)
+		{
+			long g = validGeneration(region);
+			if (g > generation)
+			{
+				generation = g;
+				current = region;
+			}
+		}
+	}
+
+	/**
+	 * @param region
+	 * @return generatia regiunii, sau 0 daca regiunea nu este valida
+	 */
+	private long validGeneration(int region)
+	{
+		ByteBuffer b = buffer.duplicate();
+		b.position(region * REGION_SIZE);
+		if (b.getInt() != MAGIC) return 0;
+		long g = b.getLong();
+		int length = b.getInt();
+		int crc = b.getInt();
+		if (g <= 0 || length < 0 || length > REGION_SIZE - HEADER) return 0;
+		byte[] payload = new byte[length];
+		b.get(payload);
+		return (crc(g, payload) == crc) ? g : 0;
+	}
+
+	private static int crc(long generation, byte[] payload)
+	{
+		CRC32 crc = new CRC32();
+		for (int shift = 56; shift >= 0; shift -= 8)
+		{
+			crc.update((int) (generation >>> shift));
+		}
+		crc.update(payload.length >>> 24);
+		crc.update(payload.length >>> 16);
+		crc.update(payload.length >>> 8);
+		crc.update(payload.length);
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Citeste partenerii salvati.
+	 * 
+	 * @param maxAge varsta maxima (ms) a partenerilor intorsi
+	 * @return partenerii vazuti in ultimele maxAge ms, cel mai recent primul;
+	 *         lista goala daca fisierul lipseste sau nu poate fi citit
+	 */
+	public synchronized List<Entry> load(long maxAge)
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+		try
+		{
+			open();
+			if (current < 0) return entries;
+
+			ByteBuffer b = buffer.duplicate();
+			b.position(current * REGION_SIZE + 4 + 8);
+			byte[] payload = new byte[b.getInt()];
+			b.position(current * REGION_SIZE + HEADER);
+			b.get(payload);
+
+			long oldest = System.currentTimeMillis() - maxAge;
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+			int count = in.readInt();
+			for (int i = 0; i < count; i++)
+			{
+				Entry e = new Entry(in.readUTF(), in.readUTF(), in.readLong(), in.readUTF());
+				if (e.getLastSeen() >= oldest) entries.add(e);
+			}
+		}
+		catch (IOException e)
+		{
+			Log.e("PeerDirectory","nu s-a putut citi lista de parteneri: " + e.getMessage());
+		}
+		return entries;
+	}
+
+	/**
+	 * Salveaza partenerii, inlocuind lista salvata anterior.
+	 * 
+	 * @param entries
+	 * @return true daca lista a fost scrisa pe disc
+	 */
+	public synchronized boolean save(List<Entry> entries)
+	{
+		try
+		{
+			open();
+			byte[] payload = encode(entries);
+
+			int region = (current == 0) ? 1 : 0;
+			long g = generation + 1;
+			ByteBuffer b = buffer.duplicate();
+			b.position(region * REGION_SIZE + HEADER);
+			b.put(payload);
+			b.position(region * REGION_SIZE);
+			b.putInt(MAGIC);
+			b.putLong(g);
+			b.putInt(payload.length);
+			b.putInt(crc(g, payload));
+			buffer.force();
+
+			current = region;
+			generation = g;
+			return true;
+		}
+		catch (IOException e)
+		{
+			Log.e("PeerDirectory","nu s-a putut salva lista de parteneri: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Codeaza cei mai recenti parteneri care incap intr-o regiune.
+	 */
+	private static byte[] encode(List<Entry> entries) throws IOException
+	{
+		List<Entry> sorted = new ArrayList<Entry>(entries);
+		Collections.sort(sorted, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b)
+			{
+				if (a.getLastSeen() == b.getLastSeen()) return 0;
+				return (a.getLastSeen() > b.getLastSeen()) ? -1 : 1;
+			}
+		});
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		DataOutputStream out = new DataOutputStream(bytes);
+		int limit = REGION_SIZE - HEADER - 4;
+		int count = 0;
+		ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+		DataOutputStream entry = new DataOutputStream(body);
+		for (Entry e : sorted)
+		{
+			if (count == MAX_ENTRIES) break;
+			int before = body.size();
+			entry.writeUTF(e.getId());
+			entry.writeUTF(e.getName());
+			entry.writeLong(e.getLastSeen());
+			entry.writeUTF(e.getPipeId() == null ? "" : e.getPipeId());
+			if (body.size() > limit)
+			{
+				// nu mai incape; se pastreaza doar partenerii de pana acum
+				byte[] tmp = body.toByteArray();
+				body.reset();
+				body.write(tmp, 0, before);
+				break;
+			}
+			count++;
+		}
+		out.writeInt(count);
+		body.writeTo(out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Inchide fisierul. Urmatoarea folosire il redeschide.
+	 */
+	public synchronized void close()
+	{
+		buffer = null;
+		current = -1;
+		if (raf != null)
+		{
+			try
+			{
+				raf.close();
+			}
+			catch (IOException e)
+			{
+				Log.e("PeerDirectory","nu s-a putut inchide fisierul.");
+			}
+			raf = null;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package checkers.p2p;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Numerele scurte folosite in locul id-urilor complete ale partenerilor, pe
+ * durata unei sesiuni. Fiecare partener atribuie numere celor care ii trimit
+ * mesaje si le comunica printr-un cadru HANDLE; expeditorul foloseste apoi
+ * cadre DATA cu epoca destinatarului si numarul primit.
+ * 
+ * Epoca este aleasa la intamplare la pornire, astfel incat numerele primite
+ * de la o sesiune anterioara a partenerului nu mai sunt acceptate.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class PeerHandles
+{
+	private int epoch;
+	private int nextHandle;
+
+	/* numerele atribuite de noi: numar -> expeditor si id -> numar */
+	private HashMap<Integer, Sender> inbound;
+	private HashMap<String, Integer> inboundIds;
+	/* numerele atribuite noua de parteneri: id partener -> {epoca, numar} */
+	private HashMap<String, int[]> outbound;
+
+	public PeerHandles()
+	{
+		inbound = new HashMap<Integer, Sender>();
+		inboundIds = new HashMap<String, Integer>();
+		outbound = new HashMap<String, int[]>();
+		reset();
+	}
+
+	/**
+	 * Incepe o sesiune noua: epoca noua, fara numere atribuite.
+	 */
+	public synchronized void reset()
+	{
+		int e;
+		do
+		{
+			e = new Random().nextInt();
+		}
+		while (e == 0);
+		epoch = e;
+		nextHandle = 1;
+		inbound.clear();
+		inboundIds.clear();
+		outbound.clear();
+	}
+
+	/**
+	 * @return epoca sesiunii locale
+	 */
+	public synchronized int getEpoch()
+	{
+		return epoch;
+	}
+
+	/**
+	 * Atribuie un numar unui expeditor, sau il intoarce pe cel existent.
+	 * 
+	 * @param peerId
+	 * @param peerName
+	 * @param peerEpoch epoca sesiunii expeditorului
+	 * @return numarul expeditorului
+	 */
+	public synchronized int bind(String peerId, String peerName, int peerEpoch)
+	{
+		Integer handle = inboundIds.get(peerId);
+		if (handle == null)
+		{
+			handle = Integer.valueOf(nextHandle++);
+			inboundIds.put(peerId, handle);
+		}
+		inbound.put(handle, new Sender(peerId, peerName, peerEpoch));
+		return handle.intValue();
+	}
+
+	/**
+	 * @param handle
+	 * @return expeditorul caruia i-am atribuit numarul, sau null
+	 */
+	public synchronized Sender lookup(int handle)
+	{
+		return inbound.get(Integer.valueOf(handle));
+	}
+
+	/**
+	 * Retine numarul atribuit noua de un partener.
+	 * 
+	 * @param peerId partenerul care a atribuit numarul
+	 * @param peerEpoch epoca partenerului
+	 * @param handle numarul
+	 */
+	public synchronized void learn(String peerId, int peerEpoch, int handle)
+	{
+		outbound.put(peerId, new int[] { peerEpoch, handle });
+	}
+
+	/**
+	 * Noteaza epoca vazuta intr-un mesaj de la partener. Daca partenerul a
+	 * repornit, numarul primit anterior si cel atribuit lui nu mai sunt
+	 * valabile.
+	 * 
+	 * @param peerId
+	 * @param peerEpoch
+	 */
+	public synchronized void seen(String peerId, int peerEpoch)
+	{
+		int[] binding = outbound.get(peerId);
+		if (binding != null && binding[0] != peerEpoch)
+		{
+			outbound.remove(peerId);
+		}
+		Integer handle = inboundIds.get(peerId);
+		if (handle != null && inbound.get(handle).epoch != peerEpoch)
+		{
+			inboundIds.remove(peerId);
+			inbound.remove(handle);
+		}
+	}
+
+	/**
+	 * @param peerId
+	 * @param peerEpoch
+	 * @return true daca epoca este cea a sesiunii curente a partenerului, asa
+	 *         cum a aparut intr-un cadru HANDLE sau FULL de la el
+	 */
+	public synchronized boolean isCurrent(String peerId, int peerEpoch)
+	{
+		int[] binding = outbound.get(peerId);
+		if (binding != null) return binding[0] == peerEpoch;
+		Integer handle = inboundIds.get(peerId);
+		return handle != null && inbound.get(handle).epoch == peerEpoch;
+	}
+
+	/**
+	 * Uita numarul primit de la partener; urmatorul mesaj va fi un cadru FULL.
+	 * 
+	 * @param peerId
+	 */
+	public synchronized void forget(String peerId)
+	{
+		outbound.remove(peerId);
+	}
+
+	/**
+	 * Uita toate numerele partenerului, cand acesta a plecat.
+	 * 
+	 * @param peerId
+	 */
+	public synchronized void expire(String peerId)
+	{
+		outbound.remove(peerId);
+		Integer handle = inboundIds.remove(peerId);
+		if (handle != null) inbound.remove(handle);
+	}
+
+	/**
+	 * @param peerId
+	 * @return {epoca, numar} atribuite noua de partener, sau null
+	 */
+	public synchronized int[] getBinding(String peerId)
+	{
+		return outbound.get(peerId);
+	}
+
+	/**
+	 * Un partener caruia i-am atribuit un numar.
+	 */
+	public static class Sender
+	{
+		private String id, name;
+		private int epoch;
+
+		private Sender(String id, String name, int epoch)
+		{
+			this.id = id;
+			this.name = name;
+			this.epoch = epoch;
+		}
+
+		public String getId()
+		{
+			return id;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public int getEpoch()
+		{
+			return epoch;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package checkers.p2p;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Momentul in care fiecare partener a fost vazut ultima data. Partenerii sunt
+ * tinuti in ordinea in care au fost vazuti, cel mai vechi primul, deci
+ * cautarea celor expirati se opreste la primul partener inca activ si costa
+ * doar cat numarul partenerilor scosi.
+ * 
+ * Clasa nu este sincronizata; {@link Peers} o foloseste sub lock-ul listei de
+ * parteneri.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class PeerLiveness
+{
+	/* un partener este considerat plecat dupa trei semnale ratate */
+	public final static long DEFAULT_HEARTBEAT = 30 * 1000;
+	public final static long DEFAULT_TTL = 3 * DEFAULT_HEARTBEAT;
+
+	/* id partener -> ultima data cand a fost vazut (ms); ordonata dupa acces */
+	private LinkedHashMap<String, Long> lastSeen;
+
+	public PeerLiveness()
+	{
+		lastSeen = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	}
+
+	/**
+	 * Marcheaza partenerul ca fiind vazut acum si il muta la sfarsitul listei.
+	 * 
+	 * @param peerId
+	 * @param now momentul curent (ms)
+	 */
+	public void touch(String peerId, long now)
+	{
+		lastSeen.put(peerId, Long.valueOf(now));
+	}
+
+	/**
+	 * @return o copie cu ultima data cand a fost vazut fiecare partener, cel
+	 *         mai vechi primul
+	 */
+	public Map<String, Long> copy()
+	{
+		// parcurgerea nu schimba ordinea, spre deosebire de get()
+		return new LinkedHashMap<String, Long>(lastSeen);
+	}
+
+	public void remove(String peerId)
+	{
+		lastSeen.remove(peerId);
+	}
+
+	/**
+	 * Scoate partenerii care nu au mai fost vazuti de mai mult de ttl ms.
+	 * 
+	 * @param now momentul curent (ms)
+	 * @param ttl timpul (ms) dupa care un partener este considerat plecat
+	 * @return id-urile partenerilor scosi, cel mai vechi primul
+	 */
+	public List<String> expire(long now, long ttl)
+	{
+		List<String> expired = null;
+		Iterator<Map.Entry<String, Long>> it = lastSeen.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<String, Long> e = it.next();
+			if (now - e.getValue().longValue() <= ttl) break;
+			if (expired == null) expired = new ArrayList<String>();
+			expired.add(e.getKey());
+			it.remove();
+		}
+		if (expired == null) return new ArrayList<String>(0);
+		return expired;
+	}
+
+	public int size()
+	{
+		return lastSeen.size();
+	}
+
+	public void clear()
+	{
+		lastSeen.clear();
+	}
+}
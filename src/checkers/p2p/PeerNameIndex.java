@@ -0,0 +1,157 @@
+package checkers.p2p;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index in memorie al numelor partenerilor, pentru cautarea dupa o parte din
+ * nume. Fiecare nume este impartit in toate secventele de 1, 2 si 3 caractere;
+ * o cautare intersecteaza listele secventelor filtrului si verifica apoi doar
+ * candidatii ramasi. Cautarea nu tine cont de litere mari si mici.
+ * 
+ * Clasa nu este sincronizata; {@link Peers} o foloseste sub lock-ul listei de
+ * parteneri.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class PeerNameIndex
+{
+	private final static int GRAM = 3;
+
+	/* id partener -> numele cu litere mici */
+	private HashMap<String, String> names;
+	/* secventa -> id-urile partenerilor al caror nume o contine */
+	private HashMap<String, Set<String>> grams;
+
+	public PeerNameIndex()
+	{
+		names = new HashMap<String, String>();
+		grams = new HashMap<String, Set<String>>();
+	}
+
+	/**
+	 * Adauga partenerul sau ii schimba numele.
+	 * 
+	 * @param id
+	 * @param name
+	 */
+	public void put(String id, String name)
+	{
+		String key = normalize(name);
+		String old = names.put(id, key);
+		if (key.equals(old)) return;
+		if (old != null) unindex(id, old);
+		for (String g : grams(key))
+		{
+			Set<String> ids = grams.get(g);
+			if (ids == null)
+			{
+				ids = new HashSet<String>(4);
+				grams.put(g, ids);
+			}
+			ids.add(id);
+		}
+	}
+
+	public void remove(String id)
+	{
+		String old = names.remove(id);
+		if (old != null) unindex(id, old);
+	}
+
+	private void unindex(String id, String key)
+	{
+		for (String g : grams(key))
+		{
+			Set<String> ids = grams.get(g);
+			if (ids != null)
+			{
+				ids.remove(id);
+				if (ids.isEmpty()) grams.remove(g);
+			}
+		}
+	}
+
+	public void clear()
+	{
+		names.clear();
+		grams.clear();
+	}
+
+	/**
+	 * Cauta partenerii al caror nume contine filtrul.
+	 * 
+	 * @param filter o parte din nume; sirul vid gaseste toti partenerii
+	 * @param max numarul maxim de id-uri intoarse
+	 * @return id-urile partenerilor gasiti
+	 */
+	public Set<String> find(String filter, int max)
+	{
+		String key = normalize(filter);
+		Set<String> result = new HashSet<String>();
+		if (key.length() == 0)
+		{
+			for (String id : names.keySet())
+			{
+				if (result.size() >= max) break;
+				result.add(id);
+			}
+			return result;
+		}
+
+		// lista cea mai scurta dintre secventele filtrului
+		Set<String> candidates = null;
+		int gram = Math.min(GRAM, key.length());
+		for (int i = 0; i + gram <= key.length(); i++)
+		{
+			Set<String> ids = grams.get(key.substring(i, i + gram));
+			if (ids == null) return result;
+			if (candidates == null || ids.size() < candidates.size()) candidates = ids;
+		}
+		for (String id : candidates)
+		{
+			if (result.size() >= max) break;
+			if (key.length() <= GRAM || names.get(id).indexOf(key) >= 0) result.add(id);
+		}
+		return result;
+	}
+
+	/**
+	 * @param filter
+	 * @return numarul partenerilor al caror nume contine filtrul
+	 */
+	public int count(String filter)
+	{
+		return find(filter, Integer.MAX_VALUE).size();
+	}
+
+	public int size()
+	{
+		return names.size();
+	}
+
+	private static String normalize(String s)
+	{
+		return (s == null) ? "" : s.toLowerCase(Locale.US);
+	}
+
+	/**
+	 * @return toate secventele distincte de 1..GRAM caractere ale cheii
+	 */
+	private static Set<String> grams(String key)
+	{
+		Set<String> result = new HashSet<String>();
+		for (int n = 1; n <= GRAM; n++)
+		{
+			for (int i = 0; i + n <= key.length(); i++)
+			{
+				result.add(key.substring(i, i + n));
+			}
+		}
+		return result;
+	}
+}
@@ -1,56 +1,68 @@
 package checkers.p2p;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import android.util.Log;
 
-import net.jxta.discovery.DiscoveryEvent;
-import net.jxta.discovery.DiscoveryListener;
-import net.jxta.discovery.DiscoveryService;
-import net.jxta.document.Advertisement;
-import net.jxta.document.AdvertisementFactory;
-import net.jxta.endpoint.Message;
-import net.jxta.endpoint.MessageElement;
-import net.jxta.endpoint.StringMessageElement;
-import net.jxta.id.IDFactory;
-import net.jxta.peer.PeerID;
 import net.jxta.peergroup.PeerGroup;
-import net.jxta.pipe.*;
-import net.jxta.protocol.DiscoveryResponseMsg;
-import net.jxta.protocol.PeerAdvertisement;
-import net.jxta.protocol.PipeAdvertisement;
 
 import checkers.p2p.event.*;
 
 /**
- * Operatii pe parteneri.
+ * Operatii pe parteneri. Reteaua propriu-zisa este un {@link Transport}.
  * 
  * @author Hasna Octavian-Lucian
  * @version 15.12.2011
  */
-public class Peers implements DiscoveryListener, PipeMsgListener, OutputPipeListener
+public class Peers implements Transport.Receiver
 {
-	private PipeAdvertisement pipeAdv;
-	private PeerAdvertisement peerAdv;
-
 	private EventListenerList listenerList;
 
-	private DiscoveryService discovery;
-	private PipeService pipeService;
+	private Transport transport;
 
 	private HashMap<String, String> peers;
+	/* versiunea listei de parteneri, creste la fiecare schimbare */
+	private long version;
+	/* schimbarile inca nelivrate listenerilor, in ordinea versiunilor; sub lock-ul peers */
+	private LinkedList<PeerDelta> pendingDeltas;
+	/* cand a fost vazut ultima data fiecare partener; sub lock-ul peers */
+	private PeerLiveness liveness;
+	/* partenerii incarcati din lista salvata si inca neconfirmati (id -> ultima data vazut) */
+	private HashMap<String, Long> restored;
+	/* indexul numelor, pentru cautarea dupa o parte din nume; sub lock-ul peers */
+	private PeerNameIndex nameIndex;
+	private ScheduledExecutorService heartbeat;
+	private long heartbeatInterval, ttl;
 	private String numePeer;
 
-	private PeerID peerID;
-	private String peerName;
-	private InputPipe inputPipe;
-	private OutputPipe outputPipe;
+	private String myID, peerName;
+
+	private Dispatcher dispatcher;
+	private PeerHandles handles;
+	private OutboundQueue outbound;
+	private long flushWindow;
+	private int maxBatch;
+	private DeliveryTracker deliveries;
+	private Inbox inbox;
+	private Metrics.Counter messagesSent, messagesReceived, bytesSent, bytesReceived, sendFailures;
+	/* partea acestei conexiuni din valorile comune; inregistrate doar cat timp ruleaza */
+	private Metrics.Gauge inboxDepth, peerCount;
+	private DuplicateFilter duplicates;
+	private long ackTimeout;
+	private int retries;
+	private float backoff;
 
-	private boolean isRunning;
+	private boolean isRunning, unicast, compact;
 
 	/**
 	 * Constructorul pentru clasa Peers.
@@ -59,75 +71,231 @@ public class Peers implements DiscoveryListener, PipeMsgListener, OutputPipeList
 	 */
 	public Peers(PeerGroup defaultPeerGroup, String pipeId, String pipeName)
 	{
-		listenerList = new EventListenerList();
+		this(defaultPeerGroup, pipeId, pipeName, Dispatcher.getShared());
+	}
 
-		discovery = defaultPeerGroup.getDiscoveryService();
-		pipeService = defaultPeerGroup.getPipeService();
+	/**
+	 * Constructorul pentru clasa Peers.
+	 * 
+	 * @param defaultPeerGroup grupul in care se afla partenerii
+	 * @param dispatcher firele pe care se livreaza notificarile
+	 */
+	public Peers(PeerGroup defaultPeerGroup, String pipeId, String pipeName, Dispatcher dispatcher)
+	{
+		this(new JxtaTransport(defaultPeerGroup, pipeId, pipeName), dispatcher);
+	}
+
+	/**
+	 * Constructorul pentru clasa Peers.
+	 * 
+	 * @param transport reteaua prin care se gasesc partenerii si se trimit
+	 *            mesajele
+	 * @param dispatcher firele pe care se livreaza notificarile
+	 */
+	public Peers(Transport transport, Dispatcher dispatcher)
+	{
+		listenerList = new EventListenerList();
+		this.dispatcher = dispatcher;
+		this.transport = transport;
 
 		peers = new HashMap<String, String>();
-		peerID = defaultPeerGroup.getPeerID();
-		peerName = defaultPeerGroup.getPeerName();
-		pipeAdv = getPipeAdvertisement(pipeId, pipeName);
-		peerAdv = defaultPeerGroup.getPeerAdvertisement();
-		Log.i("Peers",peerAdv.toString());
+		pendingDeltas = new LinkedList<PeerDelta>();
+		liveness = new PeerLiveness();
+		restored = new HashMap<String, Long>();
+		nameIndex = new PeerNameIndex();
+		myID = transport.getLocalID();
+		peerName = transport.getLocalName();
+
+		Metrics metrics = Metrics.getShared();
+		messagesSent = metrics.counter(Metrics.MESSAGES_SENT);
+		messagesReceived = metrics.counter(Metrics.MESSAGES_RECEIVED);
+		bytesSent = metrics.counter(Metrics.BYTES_SENT);
+		bytesReceived = metrics.counter(Metrics.BYTES_RECEIVED);
+		sendFailures = metrics.counter(Metrics.SEND_FAILURES);
+		inbox = new Inbox(dispatcher, new Inbox.Consumer() {
+			public void deliver(String senderID, String senderName, String data)
+			{
+				fireMessageReceived(senderID, senderName, data);
+			}
+		}, new Inbox.FlowControl() {
+			public void flow(String senderID, long pause)
+			{
+				sendFlow(senderID, pause);
+			}
+		});
+		inboxDepth = new Metrics.Gauge() {
+			public long getValue()
+			{
+				return inbox.getDepth();
+			}
+		};
+		peerCount = new Metrics.Gauge() {
+			public long getValue()
+			{
+				synchronized (peers)
+				{
+					return peers.size();
+				}
+			}
+		};
+
+		handles = new PeerHandles();
+		flushWindow = OutboundQueue.DEFAULT_FLUSH_WINDOW;
+		maxBatch = OutboundQueue.DEFAULT_MAX_BATCH;
+		duplicates = new DuplicateFilter(DuplicateFilter.DEFAULT_WINDOW);
+		ackTimeout = DeliveryTracker.DEFAULT_TIMEOUT;
+		retries = DeliveryTracker.DEFAULT_RETRIES;
+		backoff = DeliveryTracker.DEFAULT_BACKOFF;
+		heartbeatInterval = PeerLiveness.DEFAULT_HEARTBEAT;
+		ttl = PeerLiveness.DEFAULT_TTL;
 		isRunning = false;
+		unicast = true;
+		compact = true;
+	}
+
+	/**
+	 * @return reteaua de sub lista de parteneri
+	 */
+	public Transport getTransport()
+	{
+		return transport;
 	}
 
 	/**
-	 * Creeaza un pipe advertisement din id-ul si umele primit.
+	 * Activeaza sau dezactiveaza trimiterea mesajelor pe pipe-uri unicast. Cand
+	 * este dezactivata, toate mesajele merg pe pipe-ul propagate, ca inainte.
 	 * 
-	 * @param pipeId
-	 * @param pipeName
-	 * @return pipe advertisement
+	 * @param unicast
 	 */
-	public static PipeAdvertisement getPipeAdvertisement(String pipeId, String pipeName)
+	public void setUnicast(boolean unicast)
 	{
-		PipeAdvertisement advertisement = (PipeAdvertisement) AdvertisementFactory.newAdvertisement(PipeAdvertisement.getAdvertisementType());
+		this.unicast = unicast;
+		transport.setDirect(unicast);
+	}
 
-		PipeID pipeID = null;
-		try
-		{
-			pipeID = (PipeID) IDFactory.fromURI(new URI(pipeId));
-		}
-		catch (URISyntaxException e)
-		{
-			Log.e("Peers","pipe id incorect!");
-		}
-		advertisement.setPipeID(pipeID);
-		advertisement.setType(PipeService.PropagateType);
-		advertisement.setName(pipeName);
-		return advertisement;
+	public boolean isUnicast()
+	{
+		return unicast;
 	}
 
 	/**
-	 * Anunta prezenta partenerului in retea P2P. Durata de viata = timpul de
-	 * expirare = 2 min
+	 * Alege formatul mesajelor trimise: binar, cu numere scurte pentru
+	 * parteneri (implicit), sau formatul vechi cu patru elemente text. Mesajele
+	 * in formatul vechi sunt citite in ambele cazuri.
+	 * 
+	 * @param compact
 	 */
-	public void announce()
+	public void setCompact(boolean compact)
+	{
+		this.compact = compact;
+	}
+
+	public boolean isCompact()
 	{
-		announce(60 * 2 * 1000, 60 * 2 * 1000);
+		return compact;
 	}
 
 	/**
-	 * Anunta prezenta partenerului in retea P2P.
+	 * Seteaza gruparea mesajelor in format binar: mesajele trimise aceluiasi
+	 * partener in fereastra data pleaca impreuna, intr-un singur mesaj JXTA.
 	 * 
-	 * @param lifetime durata de existenta a acestui advertisement
-	 * @param expiration durata de pastrare a acestui advertisement de catre
-	 *            ceilalti parteneri
+	 * @param flushWindow fereastra in ms; 0 trimite fiecare mesaj imediat
+	 * @param maxBatch numarul de mesaje dupa care grupul pleaca fara sa astepte
 	 */
-	public void announce(final long lifetime, final long expiration)
+	public synchronized void setBatching(long flushWindow, int maxBatch)
 	{
-		try
+		this.flushWindow = flushWindow;
+		this.maxBatch = maxBatch;
+		if (outbound != null)
 		{
-			discovery.publish(pipeAdv, lifetime, expiration);
-			discovery.remotePublish(peerID.toString(), pipeAdv, expiration);
-			discovery.publish(peerAdv, lifetime, expiration);
-			discovery.remotePublish(peerID.toString(), peerAdv, expiration);
+			outbound.setFlushWindow(flushWindow);
+			outbound.setMaxBatch(maxBatch);
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * Seteaza politica de retrimitere pentru {@link #sendAsync(String, String)}.
+	 * 
+	 * @param timeout timpul de asteptare (ms) pentru prima confirmare
+	 * @param retries numarul de retrimiteri
+	 * @param backoff factorul cu care creste timpul de asteptare la fiecare
+	 *            retrimitere
+	 */
+	public synchronized void setDeliveryPolicy(long timeout, int retries, float backoff)
+	{
+		if (deliveries != null) deliveries.setPolicy(timeout, retries, backoff);
+		this.ackTimeout = timeout;
+		this.retries = retries;
+		this.backoff = backoff;
+	}
+
+	/**
+	 * Seteaza cat de des isi anunta partenerul prezenta pe pipe-ul propagate si
+	 * dupa cat timp fara vesti un partener este scos din lista. Se aplica la
+	 * urmatoarea pornire a serviciilor.
+	 * 
+	 * @param heartbeatInterval intervalul (ms) dintre semnale
+	 * @param ttl timpul (ms) dupa care un partener este considerat plecat
+	 */
+	public synchronized void setLiveness(long heartbeatInterval, long ttl)
+	{
+		if (heartbeatInterval <= 0 || ttl < heartbeatInterval)
 		{
-			Log.e("Peers","nu s-a putut publica peer-ul");
+			throw new IllegalArgumentException("Intervale de verificare incorecte");
 		}
+		this.heartbeatInterval = heartbeatInterval;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Seteaza cate mesaje pot astepta livrarea de la acelasi partener si ce se
+	 * intampla cand sunt prea multe.
+	 * 
+	 * @param capacity numarul maxim de mesaje in asteptare pentru un partener
+	 * @param policy {@link Inbox#DROP_OLDEST}, {@link Inbox#DROP_NEWEST} sau
+	 *            {@link Inbox#COALESCE}
+	 * @param keys cheia mesajelor care se pot inlocui, pentru
+	 *            {@link Inbox#COALESCE}
+	 */
+	public void setInboxPolicy(int capacity, int policy, Inbox.KeyExtractor keys)
+	{
+		inbox.setPolicy(capacity, policy, keys);
+	}
+
+	/**
+	 * @return mesajele primite care asteapta livrarea, cu contoarele lor
+	 */
+	public Inbox getInbox()
+	{
+		return inbox;
+	}
+
+	/**
+	 * @return trimiterile asincrone neconfirmate, cu contoarele lor, sau null
+	 *         daca serviciile sunt oprite
+	 */
+	public DeliveryTracker getDeliveryTracker()
+	{
+		return deliveries;
+	}
+
+	/**
+	 * @return coada de iesire, cu contoarele ei, sau null daca serviciile sunt
+	 *         oprite
+	 */
+	public OutboundQueue getOutboundQueue()
+	{
+		return outbound;
+	}
+
+	/**
+	 * Anunta prezenta partenerului in retea P2P. Dupa pornire anuntul este
+	 * repetat automat de transport, deci apelul este necesar doar pentru a
+	 * forta o republicare.
+	 */
+	public void announce()
+	{
+		transport.announce();
 	}
 
 	/**
@@ -138,19 +306,45 @@ public class Peers implements DiscoveryListener, PipeMsgListener, OutputPipeList
 		if (!isRunning)
 		{
 			isRunning = true;
-			discovery.addDiscoveryListener(this);
-			try
-			{
-				announce();
-				inputPipe = pipeService.createInputPipe(pipeAdv, this);
-				// outputPipe = pipeService.createOutputPipe(pipeAdv, 1000);
-				pipeService.createOutputPipe(pipeAdv, this);
-			}
-			catch (IOException e)
-			{
-				Log.e("Peers","Nu s-a putut crea input/output pipe.");
-			}
+			Metrics.getShared().addGauge(Metrics.INBOX_DEPTH, inboxDepth);
+			Metrics.getShared().addGauge(Metrics.PEERS, peerCount);
+			handles.reset();
+			outbound = new OutboundQueue(new OutboundQueue.Sender() {
+				public boolean send(String toID, List<Packet> packets)
+				{
+					return sendPackets(toID, packets);
+				}
+			}, flushWindow, maxBatch);
+			duplicates.clear();
+			deliveries = new DeliveryTracker(new DeliveryTracker.Transmitter() {
+				public void transmit(Delivery delivery, int attempt)
+				{
+					transmitReliable(delivery, attempt);
+				}
 
+				public void failed(Delivery delivery)
+				{
+					Log.e("Peers","mesajul catre " + delivery.getReceiverID() + " nu a fost confirmat.");
+					handles.forget(delivery.getReceiverID());
+				}
+			}, ackTimeout, retries, backoff);
+			heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "P2P-heartbeat");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			heartbeat.scheduleWithFixedDelay(new Runnable() {
+				public void run()
+				{
+					sendHeartbeat();
+					expirePeers();
+				}
+			}, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+			transport.setDirect(unicast);
+			transport.start(this);
 		}
 	}
 
@@ -162,12 +356,21 @@ public class Peers implements DiscoveryListener, PipeMsgListener, OutputPipeList
 		if (isRunning)
 		{
 			isRunning = false;
-			peers.clear();
-			outputPipe.close();
-			outputPipe = null;
-			inputPipe.close();
-			inputPipe = null;
-			discovery.removeDiscoveryListener(this);
+			Metrics.getShared().removeGauge(Metrics.INBOX_DEPTH, inboxDepth);
+			Metrics.getShared().removeGauge(Metrics.PEERS, peerCount);
+			heartbeat.shutdownNow();
+			synchronized (peers)
+			{
+				peers.clear();
+				nameIndex.clear();
+				liveness.clear();
+				restored.clear();
+			}
+			deliveries.shutdown();
+			inbox.clear();
+			outbound.flushAll();
+			outbound.shutdown();
+			transport.stop();
 		}
 	}
 
@@ -187,196 +390,592 @@ public class Peers implements DiscoveryListener, PipeMsgListener, OutputPipeList
 	 */
 	public void search(String peerName, int maxPeers)
 	{
-		announce();
 		numePeer = peerName;
 		Log.i("Peers","Cautare locala.");
-		searchLocal("Name", numePeer);
-		if (peers.size() < maxPeers)
+		transport.searchLocal(numePeer);
+		if (getPeerCount() < maxPeers)
+		{
+			Log.i("Peers","Cautare externa.");
+			transport.searchRemote(peerName, maxPeers);
+		}
+	}
+
+	/**
+	 * Cauta partenerii al caror nume contine filtrul. Raspunsul vine din lista
+	 * din memorie; in retea se trimite o cerere doar daca in lista sunt mai
+	 * putin de maxPeers parteneri potriviti.
+	 * 
+	 * @param filter o parte din numele partenerului
+	 * @param maxPeers
+	 * @return numarul partenerilor potriviti deja cunoscuti
+	 */
+	public int searchByName(String filter, int maxPeers)
+	{
+		int found = countByName(filter);
+		if (found < maxPeers)
 		{
 			Log.i("Peers","Cautare externa.");
-			searchRemote("Name", peerName, maxPeers);
+			transport.searchRemote("*" + filter + "*", maxPeers);
+		}
+		return found;
+	}
+
+	/**
+	 * @param filter o parte din numele partenerului
+	 * @param max numarul maxim de parteneri intorsi
+	 * @return partenerii cunoscuti al caror nume contine filtrul (id, nume)
+	 */
+	public HashMap<String, String> findByName(String filter, int max)
+	{
+		synchronized (peers)
+		{
+			HashMap<String, String> result = new HashMap<String, String>();
+			for (String id : nameIndex.find(filter, max))
+			{
+				result.put(id, peers.get(id));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * @param filter o parte din numele partenerului
+	 * @return numarul partenerilor cunoscuti al caror nume contine filtrul
+	 */
+	public int countByName(String filter)
+	{
+		synchronized (peers)
+		{
+			return nameIndex.count(filter);
 		}
 	}
 
 	/**
 	 * Adauga partenerii gasiti in lista.
 	 * 
-	 * @param advs
+	 * @param found partenerii gasiti (id, nume)
+	 * @param fresh true pentru raspunsurile din retea, care arata ca partenerii
+	 *            sunt activi; raspunsurile din cache-ul local pot fi vechi si
+	 *            nu prelungesc viata partenerilor deja cunoscuti
 	 */
-	private void addPeers(Enumeration<Advertisement> advs)
+	public void peersFound(Map<String, String> found, boolean fresh)
 	{
-		if (advs != null)
+		HashMap<String, String> added = null, updated = null;
+		long now = System.currentTimeMillis();
+		synchronized (peers)
 		{
-			int aux = peers.size();
-			while (advs.hasMoreElements())
+			for (Map.Entry<String, String> e : found.entrySet())
 			{
-				Advertisement item = advs.nextElement();
-				if (item instanceof PeerAdvertisement)
+				String id = e.getKey(), name = e.getValue();
+				String old = peers.put(id, name);
+				nameIndex.put(id, name);
+				if (old == null || fresh) touch(id, now);
+				if (old == null)
 				{
-					PeerAdvertisement pa = (PeerAdvertisement) item;
-					/*if (!pa.getPeerID().equals(peerID))
-					{*/
-						peers.put(pa.getPeerID().toString(), pa.getName());
-						Log.i("Peers","A fost gasit:" + pa.getName());
-					/*}
-					else Log.i("Peers","Adv-ul meu");*/
+					if (added == null) added = new HashMap<String, String>();
+					added.put(id, name);
+					Log.i("Peers","A fost gasit:" + name);
+				}
+				else if (!old.equals(name))
+				{
+					if (updated == null) updated = new HashMap<String, String>();
+					updated.put(id, name);
 				}
 			}
-			if (peers.size() != aux)
-			{
-				Thread t = new Thread() {
-					public void run()
-					{
-						fireContentChanged(getPeers());
-					}
-				};
-				t.start();
-			}
+			if (added == null && updated == null) return;
+			// programata sub lock, ca versiunile sa plece in ordine
+			fireContentChangedLater(new PeerDelta(++version, added, updated, null));
 		}
 	}
 
 	/**
-	 * Cauta in exterior parteneri care au atributul attr cu valoarea val.
-	 * 
-	 * @param attr
-	 * @param val
-	 * @param maxPeers nr maxim de peers
+	 * Sterge partenerii stocati local.
 	 */
-	private void searchRemote(String attr, String val, int maxPeers)
+	public void flush()
 	{
-		discovery.getRemoteAdvertisements(null, DiscoveryService.PEER, attr, val, maxPeers);
+		transport.flushCache();
+		synchronized (peers)
+		{
+			if (peers.isEmpty()) return;
+			fireContentChangedLater(new PeerDelta(++version, null, null, new HashMap<String, String>(peers)));
+			peers.clear();
+			nameIndex.clear();
+			liveness.clear();
+			restored.clear();
+		}
 	}
 
 	/**
-	 * Cauta in cache parteneri care au atributul attr cu valoarea val.
-	 * 
-	 * @param attr
-	 * @param val
+	 * @return numarul partenerilor din lista
 	 */
-	private void searchLocal(String attr, String val)
+	public int getPeerCount()
 	{
-		Enumeration<Advertisement> rez;
-		try
+		synchronized (peers)
 		{
-			rez = discovery.getLocalAdvertisements(DiscoveryService.PEER, attr, val);
-			addPeers(rez);
+			return peers.size();
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * @return lista de parteneri
+	 */
+	public HashMap<String, String> getPeers()
+	{
+		synchronized (peers)
 		{
-			Log.e("Peers","nu s-au putut citi cache-ul local.");
+			return new HashMap<String, String>(peers);
 		}
 	}
 
 	/**
-	 * Sterge partenerii stocati local.
+	 * Adauga in lista partenerii salvati la rularea anterioara. Partenerii nu
+	 * sunt inca verificati: primesc un interval ttl in care sa raspunda, altfel
+	 * sunt scosi ca oricare alt partener tacut.
+	 * 
+	 * @param entries partenerii salvati
 	 */
-	public void flush()
+	public void restore(List<PeerDirectory.Entry> entries)
 	{
-		try
+		HashMap<String, String> added = null;
+		long now = System.currentTimeMillis();
+		synchronized (peers)
 		{
-			Enumeration<Advertisement> eachAdv = discovery.getLocalAdvertisements(DiscoveryService.PEER, null, null);
-			while (eachAdv.hasMoreElements())
+			for (PeerDirectory.Entry e : entries)
 			{
-				Advertisement anAdv = (Advertisement) eachAdv.nextElement();
-				discovery.flushAdvertisement(anAdv);
+				if (peers.containsKey(e.getId())) continue;
+				// salvat cand partenerul local era in alt grup
+				String address = transport.getAddress(e.getId());
+				if (address == null || !address.equals(e.getPipeId())) continue;
+
+				peers.put(e.getId(), e.getName());
+				nameIndex.put(e.getId(), e.getName());
+				liveness.touch(e.getId(), now);
+				restored.put(e.getId(), Long.valueOf(e.getLastSeen()));
+				if (added == null) added = new HashMap<String, String>();
+				added.put(e.getId(), e.getName());
 			}
-			peers.clear();
+			if (added == null) return;
+			Log.i("Peers","S-au incarcat " + added.size() + " parteneri salvati.");
+			fireContentChangedLater(new PeerDelta(++version, added, null, null));
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * @return partenerii din lista, pentru a fi salvati
+	 */
+	public List<PeerDirectory.Entry> getDirectoryEntries()
+	{
+		Map<String, Long> lastSeen;
+		HashMap<String, String> names;
+		synchronized (peers)
 		{
-			Log.e("Peers","nu s-au putut sterge peer advertisements.");
+			lastSeen = liveness.copy();
+			// partenerii neconfirmati isi pastreaza data salvata
+			lastSeen.putAll(restored);
+			names = new HashMap<String, String>(peers);
 		}
+		List<PeerDirectory.Entry> entries = new ArrayList<PeerDirectory.Entry>(lastSeen.size());
+		for (Map.Entry<String, Long> e : lastSeen.entrySet())
+		{
+			String name = names.get(e.getKey());
+			String address = transport.getAddress(e.getKey());
+			if (name == null || address == null) continue;
+			entries.add(new PeerDirectory.Entry(e.getKey(), name, e.getValue().longValue(), address));
+		}
+		return entries;
 	}
 
 	/**
-	 * @return lista de parteneri
+	 * @return o copie completa a listei de parteneri, cu versiunea ei
 	 */
-	public HashMap<String, String> getPeers()
+	public PeerDelta getSnapshot()
 	{
-		return new HashMap<String, String>(peers);
+		synchronized (peers)
+		{
+			return PeerDelta.snapshot(version, peers);
+		}
 	}
 
 	/**
-	 * Se ocupa cu evenimentul generat de gasirea unui partener.
+	 * @return versiunea curenta a listei de parteneri
 	 */
-	public void discoveryEvent(DiscoveryEvent event)
+	public long getVersion()
 	{
-		DiscoveryResponseMsg rez = event.getResponse();
-		addPeers(rez.getAdvertisements());
+		synchronized (peers)
+		{
+			return version;
+		}
 	}
 
 	/**
-	 * Trimite un mesaj prin output pipe.
+	 * Marcheaza partenerul ca fiind activ, dupa un mesaj sau un semnal primit de
+	 * la el. Un partener necunoscut este adaugat in lista.
+	 * 
+	 * @param id id-ul partenerului
+	 * @param name numele partenerului, sau null daca nu se cunoaste
+	 */
+	private void peerSeen(String id, String name)
+	{
+		if (id.equals(myID)) return;
+		synchronized (peers)
+		{
+			String old = peers.get(id);
+			if (old == null && name == null) return;
+			touch(id, System.currentTimeMillis());
+			if (old == null)
+			{
+				peers.put(id, name);
+				nameIndex.put(id, name);
+				Log.i("Peers","A fost gasit:" + name);
+				fireContentChangedLater(new PeerDelta(++version, Collections.singletonMap(id, name), null, null));
+			}
+			else if (name != null && !old.equals(name))
+			{
+				peers.put(id, name);
+				nameIndex.put(id, name);
+				fireContentChangedLater(new PeerDelta(++version, null, Collections.singletonMap(id, name), null));
+			}
+		}
+	}
+
+	/**
+	 * Marcheaza partenerul ca fiind vazut. Se apeleaza sub lock-ul peers.
+	 */
+	private void touch(String id, long now)
+	{
+		liveness.touch(id, now);
+		restored.remove(id);
+	}
+
+	/**
+	 * Scoate din lista partenerii de la care nu s-a mai primit nimic de mai mult
+	 * de ttl ms si uita pipe-urile si numerele scurte ale acestora.
+	 */
+	private void expirePeers()
+	{
+		HashMap<String, String> removed = null;
+		synchronized (peers)
+		{
+			// partenerul local nu trimite semnale catre el insusi
+			if (peers.containsKey(myID))
+			{
+				touch(myID, System.currentTimeMillis());
+			}
+			for (String id : liveness.expire(System.currentTimeMillis(), ttl))
+			{
+				String name = peers.remove(id);
+				nameIndex.remove(id);
+				restored.remove(id);
+				if (name == null) continue;
+				if (removed == null) removed = new HashMap<String, String>();
+				removed.put(id, name);
+				Log.i("Peers","A plecat:" + name);
+			}
+			if (removed == null) return;
+			fireContentChangedLater(new PeerDelta(++version, null, null, removed));
+		}
+		DeliveryTracker tracker = deliveries;
+		for (String id : removed.keySet())
+		{
+			handles.expire(id);
+			duplicates.forget(id);
+			if (tracker != null) tracker.forget(id);
+			transport.forget(id);
+		}
+	}
+
+	/**
+	 * Anunta pe pipe-ul propagate ca partenerul este inca activ. Partenerii
+	 * care nu cunosc cadrul HEARTBEAT il ignora.
+	 */
+	private void sendHeartbeat()
+	{
+		if (!transport.isReady()) return;
+		byte[] bytes = PacketCodec.encode(Packet.heartbeat(handles.getEpoch(), myID, peerName));
+		if (transport.broadcast(bytes)) bytesSent.add(bytes.length);
+		else sendFailures.inc();
+	}
+
+	/**
+	 * Trimite un mesaj prin transport. In modul unicast mesajul merge direct
+	 * la partener; pana cand canalul direct este gata, mesajul este trimis pe
+	 * canalul comun. In format binar mesajul este pus in coada de
+	 * iesire si pleaca la sfarsitul ferestrei de grupare.
 	 * 
 	 * @param toID id-ul partenerului la care se trimite mesajul
 	 * @param message mesajul de trimis
-	 * @return true daca s-a reusit trimiterea
+	 * @return true daca s-a reusit trimiterea (sau punerea in coada)
 	 */
 	public boolean sendMessage(String toID, String message)
 	{
-		if (outputPipe != null)
-		{
-			Message msg = new Message();
-			StringMessageElement senderID = new StringMessageElement("SenderID", peerID.toString(), null);
-			StringMessageElement senderName = new StringMessageElement("SenderName", peerName, null);
-			StringMessageElement receiverID = new StringMessageElement("ReceiverID", toID, null);
-			StringMessageElement data = new StringMessageElement("Data", message, null);
-			msg.addMessageElement(null, senderID);
-			msg.addMessageElement(null, senderName);
-			msg.addMessageElement(null, receiverID);
-			msg.addMessageElement(null, data);
-			try
-			{
-				return outputPipe.send(msg);
-			}
-			catch (IOException e)
+		if (transport.isReady())
+		{
+			messagesSent.inc();
+			if (compact)
 			{
-				Log.e("Peers","nu s-a putut trimite mesajul.");
+				int[] binding = handles.getBinding(toID);
+				if (binding != null)
+				{
+					return sendPacket(toID, Packet.data(binding[0], binding[1], message));
+				}
+				return sendPacket(toID, Packet.full(handles.getEpoch(), myID, peerName, toID, message));
 			}
+
+			return count(transport.sendText(toID, message), message.length());
 		}
 		return false;
 	}
 
 	/**
-	 * Se ocupa cu evenimentele generate de primirea unui mesaj prin input pipe.
+	 * Trimite un mesaj si asteapta confirmarea primirii lui, fara a bloca
+	 * firul apelantului. Daca destinatarul nu confirma in timpul dat, mesajul
+	 * este retrimis cu id-urile complete, pentru cazul in care partenerul a
+	 * repornit intre timp; destinatarul ignora copiile primite de mai multe ori.
+	 * In formatul text vechi nu exista confirmari, iar rezultatul este cel al
+	 * trimiterii.
+	 * 
+	 * @param toID id-ul partenerului la care se trimite mesajul
+	 * @param message mesajul de trimis
+	 * @return rezultatul livrarii
+	 */
+	public Delivery sendAsync(String toID, String message)
+	{
+		if (!transport.isReady() || !isRunning)
+		{
+			return Delivery.completed(toID, message, false);
+		}
+		if (!compact)
+		{
+			return Delivery.completed(toID, message, sendMessage(toID, message));
+		}
+		messagesSent.inc();
+		return deliveries.track(new Delivery(toID, message));
+	}
+
+	/**
+	 * Trimite o incercare a unei livrari asincrone. Prima incercare foloseste
+	 * numarul scurt, daca exista; retrimiterile folosesc cadre FULL.
 	 */
-	public void pipeMsgEvent(PipeMsgEvent event)
+	private void transmitReliable(Delivery delivery, int attempt)
 	{
-		Message msg = event.getMessage();
-		Log.i("Peers","PipeMsgEvent");
-		if (msg != null)
+		String toID = delivery.getReceiverID();
+		int[] binding = (attempt == 0) ? handles.getBinding(toID) : null;
+		Packet packet;
+		if (binding != null)
+		{
+			packet = Packet.data(binding[0], binding[1], delivery.getMessage());
+		}
+		else
 		{
-			final MessageElement receiverID = msg.getMessageElement(null, "ReceiverID");
-			if (receiverID != null && receiverID.toString().equals(peerID.toString()))
+			packet = Packet.full(handles.getEpoch(), myID, peerName, toID, delivery.getMessage());
+		}
+		sendPacket(toID, packet.requestAck(delivery.getSeq()));
+	}
+
+	/**
+	 * Pune un cadru in format binar in coada de iesire a partenerului.
+	 * 
+	 * @param toID id-ul partenerului la care se trimite cadrul
+	 * @param packet
+	 * @return true daca cadrul a fost acceptat
+	 */
+	private boolean sendPacket(String toID, Packet packet)
+	{
+		return outbound.enqueue(toID, packet);
+	}
+
+	/**
+	 * Trimite un grup de cadre intr-un singur mesaj.
+	 * 
+	 * @param toID id-ul partenerului la care se trimit cadrele
+	 * @param packets
+	 * @return true daca s-a reusit trimiterea
+	 */
+	private boolean sendPackets(String toID, List<Packet> packets)
+	{
+		byte[] bytes = PacketCodec.encode(packets);
+		return count(transport.send(toID, bytes), bytes.length);
+	}
+
+	/**
+	 * Actualizeaza contoarele dupa o trimitere.
+	 * 
+	 * @param sent rezultatul trimiterii
+	 * @param bytes numarul de octeti utili din mesaj
+	 * @return sent
+	 */
+	private boolean count(boolean sent, int bytes)
+	{
+		if (sent) bytesSent.add(bytes);
+		else sendFailures.inc();
+		return sent;
+	}
+
+	/**
+	 * Se ocupa cu mesajele in formatul text vechi.
+	 */
+	public void textReceived(String senderID, String senderName, String receiverID, String data)
+	{
+		if (receiverID.equals(myID) && !senderID.equals(myID))
+		{
+			bytesReceived.add(data.length());
+			peerSeen(senderID, senderName);
+			deliver(senderID, senderName, data);
+		}
+	}
+
+	/**
+	 * Trateaza cadrele unui mesaj in format binar.
+	 * 
+	 * @param bytes continutul mesajului
+	 */
+	public void packetsReceived(byte[] bytes)
+	{
+		bytesReceived.add(bytes.length);
+		List<Packet> packets;
+		try
+		{
+			packets = PacketCodec.decode(bytes);
+		}
+		catch (IOException e)
+		{
+			Log.e("Peers","mesaj binar incorect: " + e.getMessage());
+			return;
+		}
+
+		for (Packet p : packets)
+		{
+			switch (p.getType())
 			{
-				final MessageElement senderID = msg.getMessageElement(null, "SenderID");
-				if (senderID != null && !senderID.toString().equals(peerID.toString()))
+				case Packet.FULL:
 				{
-					final MessageElement senderName = msg.getMessageElement(null, "SenderName");
-					final MessageElement data = msg.getMessageElement(null, "Data");
-					if (senderName != null && data != null)
+					if (myID.equals(p.getReceiverID()) && !myID.equals(p.getSenderID()))
 					{
-
-						Log.i("Peers","s-a primit un mesaj de la " + senderName + " ce contine [" + data.toString() + "]");
-						Thread t = new Thread() {
-							public void run()
+						handles.seen(p.getSenderID(), p.getEpoch());
+						peerSeen(p.getSenderID(), p.getSenderName());
+						int handle = handles.bind(p.getSenderID(), p.getSenderName(), p.getEpoch());
+						sendPacket(p.getSenderID(), Packet.handle(handles.getEpoch(), myID, p.getSenderID(), handle));
+						if (accept(p, p.getSenderID(), p.getEpoch()))
+						{
+							deliver(p.getSenderID(), p.getSenderName(), p.getData());
+						}
+					}
+					break;
+				}
+				case Packet.HANDLE:
+				{
+					if (myID.equals(p.getReceiverID()))
+					{
+						handles.learn(p.getSenderID(), p.getEpoch(), p.getHandle());
+						peerSeen(p.getSenderID(), null);
+					}
+					break;
+				}
+				case Packet.DATA:
+				{
+					if (p.getEpoch() == handles.getEpoch())
+					{
+						PeerHandles.Sender sender = handles.lookup(p.getHandle());
+						if (sender != null)
+						{
+							peerSeen(sender.getId(), sender.getName());
+							if (accept(p, sender.getId(), sender.getEpoch()))
 							{
-								fireMessageReceived(senderID.toString(), senderName.toString(), data.toString());
+								deliver(sender.getId(), sender.getName(), p.getData());
 							}
-						};
-						t.start();
+						}
+						else Log.e("Peers","numar de partener necunoscut: " + p.getHandle());
+					}
+					break;
+				}
+				case Packet.ACK:
+				{
+					if (p.getEpoch() == handles.getEpoch())
+					{
+						int[] acks = p.getAcks();
+						for (int i = 0; i < acks.length; i++)
+						{
+							deliveries.acknowledge(p.getSenderID(), acks[i]);
+						}
 					}
+					break;
+				}
+				case Packet.HEARTBEAT:
+				{
+					if (!myID.equals(p.getSenderID()))
+					{
+						// un partener repornit are o epoca noua; numerele vechi nu mai sunt valabile
+						handles.seen(p.getSenderID(), p.getEpoch());
+						peerSeen(p.getSenderID(), p.getSenderName());
+					}
+					break;
+				}
+				case Packet.FLOW:
+				{
+					OutboundQueue queue = outbound;
+					// doar o cerere adresata noua, de la sesiunea curenta a partenerului
+					if (myID.equals(p.getReceiverID()) && queue != null
+							&& handles.isCurrent(p.getSenderID(), p.getEpoch()))
+					{
+						queue.pause(p.getSenderID(), p.getPause());
+					}
+					break;
 				}
 			}
 		}
 	}
 
 	/**
-	 * Se ocupa cu evenimentul generat de crearea lui output pipe.
+	 * Confirma un cadru care a cerut confirmare si verifica daca nu a mai fost
+	 * primit.
+	 * 
+	 * @param p cadrul primit
+	 * @param senderID expeditorul
+	 * @param senderEpoch epoca sesiunii expeditorului
+	 * @return true daca mesajul trebuie livrat
+	 */
+	private boolean accept(Packet p, String senderID, int senderEpoch)
+	{
+		if (!p.isAckRequested()) return true;
+		int result = duplicates.accept(senderID, senderEpoch, p.getSeq());
+		// un mesaj despre care nu se mai stie daca a fost livrat nu este confirmat
+		if (result != DuplicateFilter.UNKNOWN)
+		{
+			sendPacket(senderID, Packet.ack(senderEpoch, myID, new int[] { p.getSeq() }));
+		}
+		return result == DuplicateFilter.NEW;
+	}
+
+	/**
+	 * Pune un mesaj primit in cutia postala; de acolo ajunge la listeneri, in
+	 * ordinea primirii pentru fiecare expeditor.
+	 */
+	private void deliver(String senderID, String senderName, String data)
+	{
+		messagesReceived.inc();
+		inbox.offer(senderID, senderName, data);
+	}
+
+	/**
+	 * Roaga un partener sa nu mai trimita o perioada, sau sa reia trimiterea.
+	 * Cadrul pleaca imediat, fara sa treaca prin coada de iesire, si doar pe
+	 * canalul direct: pe canalul comun ar ajunge la toti partenerii.
+	 * 
+	 * @param toID partenerul
+	 * @param pause durata pauzei (ms); 0 pentru a relua
+	 */
+	private void sendFlow(String toID, long pause)
+	{
+		if (!transport.isReady()) return;
+		byte[] bytes = PacketCodec.encode(Packet.flow(handles.getEpoch(), myID, toID, pause));
+		count(transport.sendDirect(toID, bytes), bytes.length);
+	}
+
+	/**
+	 * Canalul comun al transportului este gata.
 	 */
-	public void outputPipeEvent(OutputPipeEvent event)
+	public void ready()
 	{
-		outputPipe = event.getOutputPipe();
 		fireOutputPipeReady();
 	}
 
@@ -401,28 +1000,60 @@ public class Peers implements DiscoveryListener, PipeMsgListener, OutputPipeList
 	 * 
 	 * @param peersList
 	 */
-	private synchronized void fireOutputPipeReady()
+	private void fireOutputPipeReady()
 	{
-		P2PListener[] listeners = listenerList.getListeners(P2PListener.class);
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.PEER_READY);
 
 		for (int i = listeners.length - 1; i >= 0; --i)
 		{
-			listeners[i].stateChanged(new P2PEvent(this, P2PEvent.PEER_READY));
+			listeners[i].stateChanged(event);
 		}
 	}
 
+	/**
+	 * Programeaza notificarea schimbarii listei de parteneri, in ordinea
+	 * versiunilor. Schimbarile asteapta in lista lui Peers, nu in dispatcher,
+	 * deci nu se pierd cand coada dispatcher-ului este plina. Se apeleaza sub
+	 * lock-ul peers.
+	 * 
+	 * @param delta
+	 */
+	private void fireContentChangedLater(PeerDelta delta)
+	{
+		pendingDeltas.addLast(delta);
+		dispatcher.dispatchLatest(this, Integer.valueOf(P2PEvent.PEERS_CHANGED), new Runnable() {
+			public void run()
+			{
+				List<PeerDelta> deltas;
+				synchronized (peers)
+				{
+					deltas = new ArrayList<PeerDelta>(pendingDeltas);
+					pendingDeltas.clear();
+				}
+				for (PeerDelta delta : deltas)
+				{
+					fireContentChanged(delta);
+				}
+			}
+		});
+	}
+
 	/**
 	 * Notifica schimbarea continutului listei de parteneri.
 	 * 
-	 * @param peersList
+	 * @param delta partenerii adaugati, modificati si scosi
 	 */
-	private synchronized void fireContentChanged(HashMap<String, String> peersList)
+	private void fireContentChanged(PeerDelta delta)
 	{
-		P2PListener[] listeners = listenerList.getListeners(P2PListener.class);
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.PEERS_CHANGED, delta);
 
 		for (int i = listeners.length - 1; i >= 0; --i)
 		{
-			listeners[i].stateChanged(new P2PEvent(this, P2PEvent.PEER_FOUND, peersList));
+			listeners[i].stateChanged(event);
 		}
 	}	
 
@@ -433,13 +1064,15 @@ public class Peers implements DiscoveryListener, PipeMsgListener, OutputPipeList
 	 * @param senderName numele partenerului care a trimis
 	 * @param data mesajul trimis
 	 */
-	private synchronized void fireMessageReceived(String senderID, String senderName, String data)
+	private void fireMessageReceived(String senderID, String senderName, String data)
 	{
-		P2PListener[] listeners = listenerList.getListeners(P2PListener.class);
+		P2PListener[] listeners = listenerList.getSnapshot(P2PListener.class);
+		if (listeners.length == 0) return;
+		P2PEvent event = new P2PEvent(this, P2PEvent.MESSAGE_RECEIVED, senderID, senderName, data);
 
 		for (int i = listeners.length - 1; i >= 0; --i)
 		{
-			listeners[i].stateChanged(new P2PEvent(this, P2PEvent.MESSAGE_RECEIVED, senderID, senderName, data));
+			listeners[i].stateChanged(event);
 		}
 	}
 }
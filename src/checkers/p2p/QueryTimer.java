@@ -0,0 +1,49 @@
+package checkers.p2p;
+
+import java.util.HashMap;
+
+/**
+ * Masoara timpul dintre trimiterea unei cereri de cautare si primul raspuns
+ * la ea. Cererile fara raspuns sunt uitate cand sunt prea multe.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class QueryTimer
+{
+	private final static int MAX_PENDING = 64;
+
+	private HashMap<Integer, Long> pending;
+	private Metrics.Histogram rtt;
+
+	/**
+	 * @param rtt distributia in care se inregistreaza duratele
+	 */
+	public QueryTimer(Metrics.Histogram rtt)
+	{
+		this.rtt = rtt;
+		pending = new HashMap<Integer, Long>();
+	}
+
+	/**
+	 * @param queryId id-ul intors de getRemoteAdvertisements
+	 */
+	public synchronized void sent(int queryId)
+	{
+		if (pending.size() >= MAX_PENDING) pending.clear();
+		pending.put(Integer.valueOf(queryId), Long.valueOf(System.nanoTime()));
+	}
+
+	/**
+	 * @param queryId id-ul din DiscoveryEvent
+	 */
+	public void received(int queryId)
+	{
+		Long start;
+		synchronized (this)
+		{
+			start = pending.remove(Integer.valueOf(queryId));
+		}
+		if (start != null) rtt.since(start.longValue());
+	}
+}
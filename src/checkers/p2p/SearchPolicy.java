@@ -0,0 +1,140 @@
+package checkers.p2p;
+
+/**
+ * Parametrii unei cautari in retea: cand incepe, cat de des se repeta si
+ * cand se opreste. Intervalul dintre cautari creste exponential, iar cautarea
+ * se termina devreme cand s-au gasit destule rezultate, cand numarul lor nu
+ * se mai schimba (si cand nu se gaseste nimic) sau la expirarea timpului
+ * maxim.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class SearchPolicy
+{
+	private long firstDelay, period, maxPeriod, maxTime;
+	private float backoff;
+	private int maxRounds, stableRounds, targetCount;
+
+	/**
+	 * Constructorul pentru clasa SearchPolicy.
+	 * 
+	 * @param firstDelay intarzierea (ms) pana la prima cautare
+	 * @param period intervalul (ms) dupa prima cautare
+	 * @param backoff factorul cu care creste intervalul dupa fiecare cautare
+	 * @param maxPeriod intervalul maxim (ms)
+	 * @param maxRounds numarul maxim de cautari
+	 * @param stableRounds dupa cate cautari fara rezultate noi se opreste
+	 *            cautarea; 0 pentru a nu se opri din acest motiv
+	 * @param targetCount numarul de rezultate dupa care se opreste cautarea
+	 */
+	public SearchPolicy(long firstDelay, long period, float backoff, long maxPeriod, int maxRounds,
+			int stableRounds, int targetCount)
+	{
+		this(firstDelay, period, backoff, maxPeriod, maxRounds, stableRounds, targetCount, 0);
+	}
+
+	/**
+	 * Constructorul pentru clasa SearchPolicy, cu o durata maxima.
+	 * 
+	 * @param firstDelay intarzierea (ms) pana la prima cautare
+	 * @param period intervalul (ms) dupa prima cautare
+	 * @param backoff factorul cu care creste intervalul dupa fiecare cautare
+	 * @param maxPeriod intervalul maxim (ms)
+	 * @param maxRounds numarul maxim de cautari
+	 * @param stableRounds dupa cate cautari fara rezultate noi se opreste
+	 *            cautarea; 0 pentru a nu se opri din acest motiv
+	 * @param targetCount numarul de rezultate dupa care se opreste cautarea
+	 * @param maxTime durata maxima (ms) a cautarii; 0 pentru nelimitat
+	 */
+	public SearchPolicy(long firstDelay, long period, float backoff, long maxPeriod, int maxRounds,
+			int stableRounds, int targetCount, long maxTime)
+	{
+		if (firstDelay < 0 || period <= 0 || backoff < 1 || maxPeriod < period || maxRounds < 1
+				|| stableRounds < 0 || targetCount < 1 || maxTime < 0)
+		{
+			throw new IllegalArgumentException("Parametri de cautare incorecti");
+		}
+		this.firstDelay = firstDelay;
+		this.period = period;
+		this.backoff = backoff;
+		this.maxPeriod = maxPeriod;
+		this.maxRounds = maxRounds;
+		this.stableRounds = stableRounds;
+		this.targetCount = targetCount;
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * @return politica implicita pentru cautarea grupului dupa id: o singura
+	 *         cerere, trimisa imediat; daca nu raspunde nimeni in 1,5 s grupul
+	 *         este creat local
+	 */
+	public static SearchPolicy forGroups()
+	{
+		return new SearchPolicy(0, 1500, 1, 1500, 1, 0, 1);
+	}
+
+	/**
+	 * @param targetCount cati parteneri ajung
+	 * @return politica implicita pentru cautarea partenerilor; dureaza cel
+	 *         mult 5 s, cat dura cautarea cu intervale fixe
+	 */
+	public static SearchPolicy forPeers(int targetCount)
+	{
+		return new SearchPolicy(200, 500, 1.5f, 4000, 6, 2, targetCount, 5000);
+	}
+
+	public long getFirstDelay()
+	{
+		return firstDelay;
+	}
+
+	public long getPeriod()
+	{
+		return period;
+	}
+
+	public float getBackoff()
+	{
+		return backoff;
+	}
+
+	public long getMaxPeriod()
+	{
+		return maxPeriod;
+	}
+
+	public int getMaxRounds()
+	{
+		return maxRounds;
+	}
+
+	public int getStableRounds()
+	{
+		return stableRounds;
+	}
+
+	public int getTargetCount()
+	{
+		return targetCount;
+	}
+
+	/**
+	 * @return durata maxima (ms) a cautarii, sau 0 daca nu este limitata
+	 */
+	public long getMaxTime()
+	{
+		return maxTime;
+	}
+
+	/**
+	 * @param round numarul cautarii, de la 1
+	 * @return intervalul (ms) dintre cautarea data si urmatoarea
+	 */
+	public long getPeriod(int round)
+	{
+		double p = period * Math.pow(backoff, round - 1);
+		return (long) Math.min(p, maxPeriod);
+	}
+}
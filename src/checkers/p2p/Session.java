@@ -0,0 +1,215 @@
+package checkers.p2p;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * O conversatie logica (un joc, o urmarire a unui joc) peste o conexiune
+ * comuna. Mesajele primite pentru sesiune merg doar la handler-ul ei.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Session
+{
+	/**
+	 * Cel care primeste mesajele unei sesiuni.
+	 */
+	public interface Handler
+	{
+		/**
+		 * Un participant a trimis un mesaj in sesiune.
+		 * 
+		 * @param session
+		 * @param senderID
+		 * @param senderName
+		 * @param data mesajul
+		 */
+		public void messageReceived(Session session, String senderID, String senderName, String data);
+
+		/**
+		 * Sesiunea a fost inchisa de ceilalti participanti.
+		 * 
+		 * @param session
+		 */
+		public void sessionClosed(Session session);
+	}
+
+	private Sessions owner;
+	private String id, type;
+	private boolean local;
+	private volatile Handler handler;
+	private LinkedHashSet<String> members;
+	private volatile boolean closed;
+
+	Session(Sessions owner, String id, String type, boolean local)
+	{
+		this.owner = owner;
+		this.id = id;
+		this.type = type;
+		this.local = local;
+		members = new LinkedHashSet<String>();
+	}
+
+	/**
+	 * @return id-ul sesiunii, acelasi la toti participantii
+	 */
+	public String getId()
+	{
+		return id;
+	}
+
+	/**
+	 * @return tipul sesiunii, ales de cel care a deschis-o (de exemplu "joc")
+	 */
+	public String getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return true daca sesiunea a fost deschisa de partenerul local
+	 */
+	public boolean isLocal()
+	{
+		return local;
+	}
+
+	public boolean isClosed()
+	{
+		return closed;
+	}
+
+	public Handler getHandler()
+	{
+		return handler;
+	}
+
+	public void setHandler(Handler handler)
+	{
+		this.handler = handler;
+	}
+
+	/**
+	 * @return participantii de la distanta
+	 */
+	public List<String> getMembers()
+	{
+		synchronized (members)
+		{
+			return new ArrayList<String>(members);
+		}
+	}
+
+	/**
+	 * @param peerID
+	 * @return true daca partenerul participa la sesiune
+	 */
+	public boolean isMember(String peerID)
+	{
+		synchronized (members)
+		{
+			return members.contains(peerID);
+		}
+	}
+
+	boolean addMember(String peerID)
+	{
+		synchronized (members)
+		{
+			return members.add(peerID);
+		}
+	}
+
+	/**
+	 * @return true daca nu a mai ramas niciun participant
+	 */
+	boolean removeMember(String peerID)
+	{
+		synchronized (members)
+		{
+			members.remove(peerID);
+			return members.isEmpty();
+		}
+	}
+
+	void markClosed()
+	{
+		closed = true;
+	}
+
+	/**
+	 * Invita un partener in sesiune, de exemplu un spectator. De acum primeste
+	 * toate mesajele trimise in sesiune; ceilalti participanti afla de el si ii
+	 * trimit si ei mesajele lor.
+	 * 
+	 * @param peerID
+	 * @return true daca s-a reusit trimiterea invitatiei
+	 */
+	public boolean invite(String peerID)
+	{
+		if (closed || !addMember(peerID)) return false;
+		return owner.sendOpen(this, peerID, true);
+	}
+
+	/**
+	 * Trimite un mesaj tuturor participantilor.
+	 * 
+	 * @param data mesajul
+	 * @return true daca mesajul a fost trimis tuturor
+	 */
+	public boolean send(String data)
+	{
+		if (closed) return false;
+		boolean sent = true;
+		for (String peerID : getMembers())
+		{
+			sent &= owner.sendData(this, peerID, data);
+		}
+		return sent;
+	}
+
+	/**
+	 * Trimite un mesaj tuturor participantilor si urmareste confirmarea
+	 * primirii lui de catre fiecare.
+	 * 
+	 * @param data mesajul
+	 * @param listener apelat pentru fiecare participant cand livrarea se
+	 *            termina; poate fi null
+	 * @return false daca sesiunea este inchisa sau o trimitere a esuat imediat
+	 */
+	public boolean sendReliable(String data, DeliveryListener listener)
+	{
+		if (closed) return false;
+		boolean sent = true;
+		for (String peerID : getMembers())
+		{
+			Delivery delivery = owner.sendReliableData(this, peerID, data);
+			if (listener != null) delivery.addListener(listener);
+			sent &= !delivery.isDone() || delivery.isDelivered();
+		}
+		return sent;
+	}
+
+	/**
+	 * Trimite un mesaj unui singur participant.
+	 * 
+	 * @param peerID
+	 * @param data mesajul
+	 * @return true daca s-a reusit trimiterea
+	 */
+	public boolean sendTo(String peerID, String data)
+	{
+		if (closed || !isMember(peerID)) return false;
+		return owner.sendData(this, peerID, data);
+	}
+
+	/**
+	 * Inchide sesiunea si anunta participantii.
+	 */
+	public void close()
+	{
+		owner.close(this);
+	}
+}
@@ -0,0 +1,387 @@
+package checkers.p2p;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.util.Log;
+
+/**
+ * Mai multe sesiuni peste aceeasi conexiune. Mesajele unei sesiuni au un
+ * antet: [MARK][id sesiune][MARK][tip][continut]. Mesajele primite sunt
+ * trimise direct handler-ului sesiunii dupa id, printr-o tabela de rutare;
+ * mesajele fara antet nu sunt atinse.
+ * 
+ * Tipuri: OPEN - invitatia in sesiune, continutul este tipul ei urmat de
+ * ceilalti participanti ([MARK][id]...); acelasi mesaj anunta participantii
+ * existenti cand este invitat cineva nou, astfel incat fiecare participant
+ * poate trimite tuturor celorlalti. DATA - un mesaj al aplicatiei; CLOSE -
+ * expeditorul iese din sesiune.
+ * 
+ * OPEN si CLOSE sunt trimise cu confirmare
+ * ({@link Sender#sendReliable(String, String)}): un participant care nu
+ * confirma invitatia este scos din sesiune, ca si cum ar fi iesit. Un mesaj
+ * DATA care ajunge inaintea invitatiei (de exemplu cand OPEN a fost retrimis)
+ * sau de la un participant inca necunoscut este pastrat si livrat dupa
+ * invitatie, in limita a {@link #EARLY_LIMIT} mesaje pentru fiecare sesiune.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class Sessions
+{
+	/* caracterul de control cu care incepe antetul; nu apare in mutari */
+	public final static char MARK = '\u0010';
+
+	private final static char OPEN = 'O';
+	private final static char DATA = 'D';
+	private final static char CLOSE = 'C';
+
+	/* mesajele pastrate pentru o sesiune inca necunoscuta */
+	public final static int EARLY_LIMIT = 32;
+	/* numarul maxim de sesiuni necunoscute pentru care se pastreaza mesaje */
+	private final static int EARLY_SESSIONS = 16;
+
+	/**
+	 * Cel care trimite efectiv mesajele, de obicei
+	 * {@link Connection#sendMessage(String, String)} si
+	 * {@link Connection#sendAsync(String, String)}.
+	 */
+	public interface Sender
+	{
+		public boolean send(String toID, String message);
+
+		/**
+		 * Trimite un mesaj si urmareste confirmarea primirii lui.
+		 */
+		public Delivery sendReliable(String toID, String message);
+	}
+
+	/**
+	 * Cel care decide ce se intampla cu sesiunile deschise de alti parteneri.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Un partener a deschis o sesiune. Pentru a o accepta, listener-ul
+		 * seteaza un handler cu {@link Session#setHandler(Session.Handler)};
+		 * sesiunile fara handler sunt inchise.
+		 * 
+		 * @param session
+		 * @param senderID cel care a deschis sesiunea
+		 * @param senderName
+		 */
+		public void sessionRequested(Session session, String senderID, String senderName);
+	}
+
+	private Sender sender;
+	private volatile Listener listener;
+	/* tabela de rutare (id sesiune -> sesiune) */
+	private ConcurrentHashMap<String, Session> sessions;
+	/* mesajele sosite inaintea invitatiei: id sesiune -> {expeditor, nume, mesaj} */
+	private LinkedHashMap<String, List<String[]>> early;
+	private Random random;
+
+	public Sessions(Sender sender)
+	{
+		this.sender = sender;
+		sessions = new ConcurrentHashMap<String, Session>();
+		early = new LinkedHashMap<String, List<String[]>>();
+		random = new Random();
+	}
+
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Deschide o sesiune cu un partener.
+	 * 
+	 * @param type tipul sesiunii, trimis partenerului
+	 * @param peerID partenerul invitat
+	 * @param handler cel care primeste mesajele sesiunii
+	 * @return sesiunea noua
+	 */
+	public Session open(String type, String peerID, Session.Handler handler)
+	{
+		Session session;
+		synchronized (random)
+		{
+			do
+			{
+				session = new Session(this, Long.toString(random.nextLong() & Long.MAX_VALUE, 36), type, true);
+			}
+			while (sessions.putIfAbsent(session.getId(), session) != null);
+		}
+		session.setHandler(handler);
+		if (peerID != null) session.invite(peerID);
+		return session;
+	}
+
+	/**
+	 * @param id
+	 * @return sesiunea cu id-ul dat, sau null
+	 */
+	public Session get(String id)
+	{
+		return sessions.get(id);
+	}
+
+	/**
+	 * @return sesiunile deschise
+	 */
+	public List<Session> getSessions()
+	{
+		return new ArrayList<Session>(sessions.values());
+	}
+
+	public int size()
+	{
+		return sessions.size();
+	}
+
+	/**
+	 * Trimite un mesaj primit catre sesiunea lui.
+	 * 
+	 * @param senderID
+	 * @param senderName
+	 * @param data mesajul primit
+	 * @return true daca mesajul apartine unei sesiuni (chiar daca a fost
+	 *         ignorat), false daca trebuie tratat ca un mesaj obisnuit
+	 */
+	public boolean route(String senderID, String senderName, String data)
+	{
+		if (data == null || data.length() < 3 || data.charAt(0) != MARK) return false;
+		int end = data.indexOf(MARK, 1);
+		if (end < 0 || end + 1 >= data.length())
+		{
+			Log.e("Sessions","antet de sesiune incorect.");
+			return true;
+		}
+		String id = data.substring(1, end);
+		char kind = data.charAt(end + 1);
+		String body = data.substring(end + 2);
+
+		Session session = sessions.get(id);
+		switch (kind)
+		{
+			case OPEN:
+			{
+				String[] parts = body.split(String.valueOf(MARK), -1);
+				if (session == null) requested(id, parts, senderID, senderName);
+				else if (session.isMember(senderID))
+				{
+					// un participant a invitat pe altcineva
+					for (int i = 1; i < parts.length; i++)
+					{
+						session.addMember(parts[i]);
+					}
+					replay(session);
+				}
+				break;
+			}
+			case DATA:
+			{
+				if (session == null || !session.isMember(senderID))
+				{
+					keep(id, senderID, senderName, body);
+					break;
+				}
+				Session.Handler handler = session.getHandler();
+				if (handler != null) handler.messageReceived(session, senderID, senderName, body);
+				break;
+			}
+			case CLOSE:
+			{
+				if (session != null && session.isMember(senderID) && session.removeMember(senderID))
+				{
+					remove(session);
+					Session.Handler handler = session.getHandler();
+					if (handler != null) handler.sessionClosed(session);
+				}
+				break;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Trateaza o sesiune deschisa de alt partener.
+	 * 
+	 * @param parts tipul sesiunii si ceilalti participanti
+	 */
+	private void requested(String id, String[] parts, String senderID, String senderName)
+	{
+		Session session = new Session(this, id, parts[0], false);
+		session.addMember(senderID);
+		for (int i = 1; i < parts.length; i++)
+		{
+			session.addMember(parts[i]);
+		}
+		if (sessions.putIfAbsent(id, session) != null) return;
+		Listener l = listener;
+		if (l != null) l.sessionRequested(session, senderID, senderName);
+		if (session.getHandler() == null)
+		{
+			Log.i("Sessions","sesiune refuzata: " + id);
+			close(session);
+			synchronized (early)
+			{
+				early.remove(id);
+			}
+			return;
+		}
+		replay(session);
+	}
+
+	/**
+	 * Pastreaza un mesaj DATA sosit inaintea invitatiei in sesiune sau inaintea
+	 * listei de participanti care il contine pe expeditor.
+	 */
+	private void keep(String id, String senderID, String senderName, String body)
+	{
+		synchronized (early)
+		{
+			List<String[]> list = early.get(id);
+			if (list == null)
+			{
+				if (early.size() >= EARLY_SESSIONS)
+				{
+					Iterator<String> oldest = early.keySet().iterator();
+					oldest.next();
+					oldest.remove();
+				}
+				list = new ArrayList<String[]>();
+				early.put(id, list);
+			}
+			if (list.size() >= EARLY_LIMIT)
+			{
+				Log.e("Sessions","prea multe mesaje pentru o sesiune necunoscuta: " + id);
+				return;
+			}
+			list.add(new String[] { senderID, senderName, body });
+		}
+	}
+
+	/**
+	 * Livreaza mesajele pastrate de la participantii sesiunii.
+	 */
+	private void replay(Session session)
+	{
+		List<String[]> list;
+		synchronized (early)
+		{
+			list = early.remove(session.getId());
+			if (list == null) return;
+			List<String[]> others = new ArrayList<String[]>();
+			for (String[] m : list)
+			{
+				if (!session.isMember(m[0])) others.add(m);
+			}
+			// mesajele altor parteneri asteapta in continuare lista noua de participanti
+			if (!others.isEmpty()) early.put(session.getId(), others);
+		}
+		Session.Handler handler = session.getHandler();
+		if (handler == null) return;
+		for (String[] m : list)
+		{
+			if (session.isMember(m[0])) handler.messageReceived(session, m[0], m[1], m[2]);
+		}
+	}
+
+	/**
+	 * Trimite unui participant tipul sesiunii si lista celorlalti participanti.
+	 * Daca nu confirma primirea, participantul este scos din sesiune.
+	 * 
+	 * @param invited true pentru un participant nou: dupa confirmare, ceilalti
+	 *            participanti primesc lista noua
+	 * @return false daca trimiterea a esuat imediat
+	 */
+	boolean sendOpen(final Session session, final String peerID, final boolean invited)
+	{
+		StringBuilder sb = new StringBuilder(header(session, OPEN)).append(session.getType());
+		for (String member : session.getMembers())
+		{
+			if (!member.equals(peerID)) sb.append(MARK).append(member);
+		}
+		Delivery delivery = sender.sendReliable(peerID, sb.toString());
+		delivery.addListener(new DeliveryListener() {
+			public void deliveryCompleted(Delivery delivery)
+			{
+				if (!delivery.isDelivered()) lost(session, peerID);
+				else if (invited && !session.isClosed())
+				{
+					for (String member : session.getMembers())
+					{
+						if (!member.equals(peerID)) sendOpen(session, member, false);
+					}
+				}
+			}
+		});
+		return !delivery.isDone() || delivery.isDelivered();
+	}
+
+	/**
+	 * Un participant nu a confirmat invitatia: este scos din sesiune.
+	 */
+	private void lost(Session session, String peerID)
+	{
+		Log.e("Sessions","invitatia in sesiunea " + session.getId() + " nu a fost confirmata.");
+		if (session.isClosed() || !session.isMember(peerID) || !session.removeMember(peerID)) return;
+		if (!remove(session)) return;
+		Session.Handler handler = session.getHandler();
+		if (handler != null) handler.sessionClosed(session);
+	}
+
+	boolean sendData(Session session, String peerID, String data)
+	{
+		return sender.send(peerID, header(session, DATA) + data);
+	}
+
+	Delivery sendReliableData(Session session, String peerID, String data)
+	{
+		return sender.sendReliable(peerID, header(session, DATA) + data);
+	}
+
+	/**
+	 * Inchide o sesiune locala si anunta participantii.
+	 */
+	void close(Session session)
+	{
+		if (!remove(session)) return;
+		String message = header(session, CLOSE);
+		for (String peerID : session.getMembers())
+		{
+			sender.sendReliable(peerID, message);
+		}
+	}
+
+	/**
+	 * Inchide toate sesiunile.
+	 */
+	public void closeAll()
+	{
+		for (Session session : getSessions())
+		{
+			close(session);
+		}
+	}
+
+	private boolean remove(Session session)
+	{
+		if (!sessions.remove(session.getId(), session)) return false;
+		session.markClosed();
+		return true;
+	}
+
+	private static String header(Session session, char kind)
+	{
+		StringBuilder sb = new StringBuilder(session.getId().length() + 3);
+		sb.append(MARK).append(session.getId()).append(MARK).append(kind);
+		return sb.toString();
+	}
+}
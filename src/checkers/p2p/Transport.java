@@ -0,0 +1,169 @@
+package checkers.p2p;
+
+import java.util.Map;
+
+/**
+ * Reteaua de sub {@link Peers}: descoperirea partenerilor si transportul
+ * mesajelor. Implementarea obisnuita este {@link JxtaTransport}; pentru
+ * teste si masuratori exista {@link LoopbackTransport}, care simuleaza mai
+ * multi parteneri in aceeasi masina virtuala.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public interface Transport
+{
+	/**
+	 * Cel care primeste ce vine din retea. Metodele sunt apelate pe firele
+	 * transportului si nu trebuie sa blocheze.
+	 */
+	public interface Receiver
+	{
+		/**
+		 * Canalul comun este gata; de acum se pot trimite mesaje.
+		 */
+		public void ready();
+
+		/**
+		 * A sosit un mesaj in format binar.
+		 * 
+		 * @param bytes cadrele codate cu {@link PacketCodec}
+		 */
+		public void packetsReceived(byte[] bytes);
+
+		/**
+		 * A sosit un mesaj in formatul text vechi. Mesajele trimise pe canalul
+		 * comun ajung la toti partenerii, deci destinatarul trebuie verificat.
+		 * 
+		 * @param senderID
+		 * @param senderName
+		 * @param receiverID
+		 * @param data mesajul
+		 */
+		public void textReceived(String senderID, String senderName, String receiverID, String data);
+
+		/**
+		 * Au fost gasiti parteneri.
+		 * 
+		 * @param found partenerii gasiti (id, nume)
+		 * @param fresh true pentru raspunsurile din retea, false pentru cele din
+		 *            cache-ul local
+		 */
+		public void peersFound(Map<String, String> found, boolean fresh);
+	}
+
+	/**
+	 * @return id-ul partenerului local
+	 */
+	public String getLocalID();
+
+	/**
+	 * @return numele partenerului local
+	 */
+	public String getLocalName();
+
+	/**
+	 * Porneste transportul. Cand canalul comun este gata se apeleaza
+	 * {@link Receiver#ready()}.
+	 * 
+	 * @param receiver
+	 */
+	public void start(Receiver receiver);
+
+	/**
+	 * Opreste transportul si inchide canalele.
+	 */
+	public void stop();
+
+	/**
+	 * @return true daca se pot trimite mesaje
+	 */
+	public boolean isReady();
+
+	/**
+	 * Activeaza sau dezactiveaza trimiterea directa catre destinatar. Cand este
+	 * dezactivata, toate mesajele merg pe canalul comun.
+	 * 
+	 * @param direct
+	 */
+	public void setDirect(boolean direct);
+
+	/**
+	 * Trimite un mesaj in format binar, direct la destinatar daca se poate,
+	 * altfel pe canalul comun.
+	 * 
+	 * @param toID id-ul destinatarului
+	 * @param bytes cadrele codate
+	 * @return true daca s-a reusit trimiterea
+	 */
+	public boolean send(String toID, byte[] bytes);
+
+	/**
+	 * Trimite un mesaj in format binar doar pe canalul direct catre
+	 * destinatar, fara sa treaca pe canalul comun.
+	 * 
+	 * @param toID id-ul destinatarului
+	 * @param bytes cadrele codate
+	 * @return true daca s-a reusit trimiterea; false daca nu exista (inca) un
+	 *         canal direct
+	 */
+	public boolean sendDirect(String toID, byte[] bytes);
+
+	/**
+	 * Trimite un mesaj in formatul text vechi.
+	 * 
+	 * @param toID id-ul destinatarului
+	 * @param data mesajul
+	 * @return true daca s-a reusit trimiterea
+	 */
+	public boolean sendText(String toID, String data);
+
+	/**
+	 * Trimite un mesaj in format binar tuturor partenerilor, pe canalul comun.
+	 * 
+	 * @param bytes cadrele codate
+	 * @return true daca s-a reusit trimiterea
+	 */
+	public boolean broadcast(byte[] bytes);
+
+	/**
+	 * Cauta parteneri in cache-ul local; rezultatele sunt date lui
+	 * {@link Receiver#peersFound(Map, boolean)} inainte de intoarcere.
+	 * 
+	 * @param name numele cautat, cu * pentru orice sir, sau null pentru toti
+	 */
+	public void searchLocal(String name);
+
+	/**
+	 * Trimite o cerere de cautare in retea; raspunsurile vin mai tarziu, prin
+	 * {@link Receiver#peersFound(Map, boolean)}.
+	 * 
+	 * @param name numele cautat, cu * pentru orice sir, sau null pentru toti
+	 * @param max numarul maxim de raspunsuri
+	 */
+	public void searchRemote(String name, int max);
+
+	/**
+	 * Sterge partenerii din cache-ul local.
+	 */
+	public void flushCache();
+
+	/**
+	 * Anunta imediat prezenta partenerului local.
+	 */
+	public void announce();
+
+	/**
+	 * @param peerID
+	 * @return adresa directa a partenerului in grupul curent (id-ul pipe-ului
+	 *         unicast), sau null daca nu se poate calcula
+	 */
+	public String getAddress(String peerID);
+
+	/**
+	 * Inchide canalul direct catre un partener, de exemplu dupa ce a plecat.
+	 * 
+	 * @param peerID
+	 */
+	public void forget(String peerID);
+}
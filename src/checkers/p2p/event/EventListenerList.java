@@ -100,7 +100,10 @@ public class EventListenerList implements Serializable {
     /* A null array to be shared by all empty listener lists*/
     private final static Object[] NULL_ARRAY = new Object[0];
     /* The list of ListenerType - Listener pairs */
-    protected transient Object[] listenerList = NULL_ARRAY;
+    protected transient volatile Object[] listenerList = NULL_ARRAY;
+    /* Typed listener arrays, rebuilt on every change (copy-on-write) */
+    private transient volatile Map<Class<?>, EventListener[]> snapshots =
+        Collections.emptyMap();
 
     /**
      * Passes back the event listener list as an array
@@ -132,18 +135,92 @@ public class EventListenerList implements Serializable {
      * @since 1.3
      */
     public <T extends EventListener> T[] getListeners(Class<T> t) {
+        return EventListenerList.<T>typed(listenersOf(t));
+    }
+
+    /**
+     * Collects the listeners of the given type into an array whose
+     * component type is t.
+     */
+    private EventListener[] listenersOf(Class<?> t) {
         Object[] lList = listenerList;
         int n = getListenerCount(lList, t);
-        T[] result = (T[])Array.newInstance(t, n);
+        EventListener[] result = (EventListener[])Array.newInstance(t, n);
         int j = 0;
         for (int i = lList.length-2; i>=0; i-=2) {
             if (lList[i] == t) {
-                result[j++] = (T)lList[i+1];
+                result[j++] = (EventListener)lList[i+1];
             }
         }
         return result;
     }
 
+    /**
+     * Every array handed out was created with Array.newInstance for
+     * the class it is stored under, so this is the only cast needed.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends EventListener> T[] typed(EventListener[] a) {
+        return (T[])a;
+    }
+
+    /**
+     * Returns the listeners of the given type, in the same order as
+     * {@link #getListeners(Class)}, without counting them or allocating
+     * a new array.  The array is shared by all callers until the next
+     * add or remove, and is never changed after it is published, so fire
+     * methods can iterate it without holding any lock.
+     *
+     * WARNING!!! Absolutely NO modification of the returned array
+     * should be made.
+     *
+     * @return all of the listeners of the specified type
+     */
+    public <T extends EventListener> T[] getSnapshot(Class<T> t) {
+        EventListener[] result = snapshots.get(t);
+        if (result == null) {
+            result = emptySnapshot(t);
+        }
+        return EventListenerList.<T>typed(result);
+    }
+
+    /**
+     * Remembers an empty array for a type with no listeners, so that
+     * firing to nobody does not allocate either.
+     */
+    private synchronized EventListener[] emptySnapshot(Class<?> t) {
+        EventListener[] result = snapshots.get(t);
+        if (result == null) {
+            result = (EventListener[])Array.newInstance(t, 0);
+            Map<Class<?>, EventListener[]> map =
+                new HashMap<Class<?>, EventListener[]>(snapshots);
+            map.put(t, result);
+            snapshots = map;
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the typed arrays after a change to the listener list.
+     * Types that are no longer listened to keep an empty array.
+     * Called with the lock held.
+     */
+    private void updateSnapshots() {
+        Map<Class<?>, EventListener[]> map =
+            new HashMap<Class<?>, EventListener[]>();
+        for (Class<?> t : snapshots.keySet()) {
+            map.put(t, listenersOf(t));
+        }
+        Object[] lList = listenerList;
+        for (int i = 0; i < lList.length; i+=2) {
+            Class<?> t = (Class<?>)lList[i];
+            if (!map.containsKey(t)) {
+                map.put(t, listenersOf(t));
+            }
+        }
+        snapshots = map;
+    }
+
     /**
      * Returns the total number of listeners for this listener list.
      */
@@ -160,10 +237,10 @@ public class EventListenerList implements Serializable {
         return getListenerCount(lList, t);
     }
 
-    private int getListenerCount(Object[] list, Class t) {
+    private int getListenerCount(Object[] list, Class<?> t) {
         int count = 0;
         for (int i = 0; i < list.length; i+=2) {
-            if (t == (Class)list[i])
+            if (t == list[i])
                 count++;
         }
         return count;
@@ -200,6 +277,7 @@ public class EventListenerList implements Serializable {
 
             listenerList = tmp;
         }
+        updateSnapshots();
     }
 
     /**
@@ -240,6 +318,7 @@ public class EventListenerList implements Serializable {
                                  tmp.length - index);
             // set the listener array to the new array or null
             listenerList = (tmp.length == 0) ? NULL_ARRAY : tmp;
+            updateSnapshots();
             }
     }
 
@@ -264,6 +343,7 @@ public class EventListenerList implements Serializable {
     private void readObject(ObjectInputStream s)
         throws IOException, ClassNotFoundException {
         listenerList = NULL_ARRAY;
+        snapshots = Collections.emptyMap();
         s.defaultReadObject();
         Object listenerTypeOrNull;
 
@@ -1,9 +1,12 @@
 package checkers.p2p.event;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Evenimentele din reteaua P2P.
+ * Evenimentele din reteaua P2P. Un eveniment nu se mai schimba dupa creare,
+ * deci aceeasi instanta este trimisa tuturor listenerilor.
  * 
  * @author Hasna Octavian-Lucian
  * @version 15.12.2011
@@ -12,6 +15,11 @@ public class P2PEvent extends java.util.EventObject
 {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * @deprecated lista completa nu mai este trimisa la fiecare schimbare;
+	 *             vezi {@link #PEERS_CHANGED}
+	 */
+	@Deprecated
 	public static final int PEER_FOUND = 1;
 	public static final int GROUP_FOUND = 2;
 	public static final int PEER_SEARCH_FINISHED = 3;
@@ -19,41 +27,91 @@ public class P2PEvent extends java.util.EventObject
 	public static final int MESSAGE_RECEIVED = 5;
 	public static final int PEER_READY = 6;
 	public static final int CONNECTION_READY = 7;
-
-	private int tip;
-	private HashMap<String, String> list;
-	private String senderID, senderName;
-	private String message;
+	public static final int SEARCH_PROGRESS = 8;
+	public static final int PEERS_CHANGED = 9;
+	/**
+	 * O etapa a pornirii s-a terminat: getPhase() este numele etapei,
+	 * getStage() numarul ei, getStageCount() numarul total de etape, iar
+	 * getDuration() durata etapei in ms.
+	 */
+	public static final int STARTUP_PROGRESS = 10;
+	/**
+	 * Pornirea a esuat in etapa getPhase(), dupa getDuration() ms.
+	 */
+	public static final int STARTUP_FAILED = 11;
+
+	private final int tip;
+	private final Map<String, String> list;
+	private final String senderID, senderName;
+	private final String message;
+	private final String phase;
+	private final int round, count;
+	private final long duration;
+	private final PeerDelta delta;
 
 	public P2PEvent(Object source, int tip)
 	{
-		this(source, tip, null, "", "", "");
+		this(source, tip, null, "", "", "", null, null, 0, 0, 0);
 	}
 
-	public P2PEvent(Object source, int tip, HashMap<String, String> list)
+	/**
+	 * @param source
+	 * @param tip
+	 * @param list lista (id, nume); listenerii primesc o copie nemodificabila
+	 */
+	public P2PEvent(Object source, int tip, Map<String, String> list)
 	{
-		this(source, tip, list, "", "", "");
+		this(source, tip, list, "", "", "", null, null, 0, 0, 0);
 	}
 
 	public P2PEvent(Object source, int tip, String senderID, String senderName, String message)
 	{
-		this(source, tip, null, senderID, senderName, message);
+		this(source, tip, null, senderID, senderName, message, null, null, 0, 0, 0);
 	}
 
-	private P2PEvent(Object source, int tip, HashMap<String, String> list, String senderID,
-			String senderName, String message)
+	/**
+	 * Eveniment pentru schimbarea listei de parteneri.
+	 * 
+	 * @param source
+	 * @param tip
+	 * @param delta partenerii adaugati, modificati si scosi
+	 */
+	public P2PEvent(Object source, int tip, PeerDelta delta)
 	{
-		super(source);
-		this.setTip(tip);
-		this.setList(list);
-		this.setSenderID(senderID);
-		this.setSenderName(senderName);
-		this.setMessage(message);
+		this(source, tip, null, "", "", "", delta, null, 0, 0, 0);
+	}
+
+	/**
+	 * Eveniment pentru progresul unei operatii in mai multi pasi. Pentru
+	 * evenimentele de pornire, round este numarul etapei si count numarul
+	 * total de etape (vezi {@link #getStage()}, {@link #getStageCount()}).
+	 * 
+	 * @param source
+	 * @param tip
+	 * @param phase numele operatiei (de exemplu "groups" sau "peers")
+	 * @param round numarul pasului
+	 * @param duration timpul (ms) de la inceputul operatiei
+	 * @param count numarul de rezultate de pana acum
+	 */
+	public P2PEvent(Object source, int tip, String phase, int round, long duration, int count)
+	{
+		this(source, tip, null, "", "", "", null, phase, round, duration, count);
 	}
 
-	private void setMessage(String message)
+	private P2PEvent(Object source, int tip, Map<String, String> list, String senderID, String senderName,
+			String message, PeerDelta delta, String phase, int round, long duration, int count)
 	{
+		super(source);
+		this.tip = tip;
+		this.list = (list == null) ? null : Collections.unmodifiableMap(new LinkedHashMap<String, String>(list));
+		this.senderID = senderID;
+		this.senderName = senderName;
 		this.message = message;
+		this.delta = delta;
+		this.phase = phase;
+		this.round = round;
+		this.duration = duration;
+		this.count = count;
 	}
 
 	public String getMessage()
@@ -61,43 +119,75 @@ public class P2PEvent extends java.util.EventObject
 		return message;
 	}
 
-	private void setSenderID(String senderID)
+	public String getSenderID()
 	{
-		this.senderID = senderID;
+		return senderID;
 	}
 
-	public String getSenderID()
+	/**
+	 * @return lista (id, nume), nemodificabila, sau null
+	 */
+	public Map<String, String> getList()
 	{
-		return senderID;
+		return list;
 	}
 
-	private void setList(HashMap<String, String> list)
+	public int getTip()
 	{
-		this.list = list;
+		return tip;
 	}
 
-	public HashMap<String, String> getList()
+	public String getSenderName()
 	{
-		return list;
+		return senderName;
 	}
 
-	private void setTip(int tip)
+	public String getPhase()
 	{
-		this.tip = tip;
+		return phase;
 	}
 
-	public int getTip()
+	/**
+	 * @return numarul pasului unei cautari ({@link #SEARCH_PROGRESS})
+	 */
+	public int getRound()
 	{
-		return tip;
+		return round;
 	}
 
-	private void setSenderName(String senderName)
+	/**
+	 * @return numarul etapei pornirii ({@link #STARTUP_PROGRESS}), de la 1
+	 */
+	public int getStage()
 	{
-		this.senderName = senderName;
+		return round;
 	}
 
-	public String getSenderName()
+	/**
+	 * @return numarul total de etape ale pornirii ({@link #STARTUP_PROGRESS},
+	 *         {@link #STARTUP_FAILED})
+	 */
+	public int getStageCount()
 	{
-		return senderName;
+		return count;
+	}
+
+	public long getDuration()
+	{
+		return duration;
+	}
+
+	/**
+	 * @return numarul de rezultate de pana acum ale unei cautari
+	 *         ({@link #SEARCH_PROGRESS})
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	public PeerDelta getDelta()
+	{
+		return delta;
 	}
 }
@@ -0,0 +1,101 @@
+package checkers.p2p.event;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Schimbarile listei de parteneri fata de versiunea anterioara. Versiunea
+ * creste cu fiecare schimbare, deci un listener care a ratat o versiune isi
+ * poate cere o copie completa a listei.
+ * 
+ * @author Hasna Octavian-Lucian
+ * @version 15.12.2011
+ */
+public class PeerDelta
+{
+	private long version;
+	private Map<String, String> added, updated, removed;
+
+	/**
+	 * Constructorul pentru clasa PeerDelta.
+	 * 
+	 * @param version versiunea listei dupa aceste schimbari
+	 * @param added partenerii noi (id, nume)
+	 * @param updated partenerii care si-au schimbat numele (id, nume nou)
+	 * @param removed partenerii scosi din lista (id, ultimul nume)
+	 */
+	public PeerDelta(long version, Map<String, String> added, Map<String, String> updated,
+			Map<String, String> removed)
+	{
+		this.version = version;
+		this.added = unmodifiable(added);
+		this.updated = unmodifiable(updated);
+		this.removed = unmodifiable(removed);
+	}
+
+	private static Map<String, String> unmodifiable(Map<String, String> map)
+	{
+		if (map == null || map.isEmpty())
+		{
+			return Collections.emptyMap();
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * @return versiunea listei dupa aplicarea acestor schimbari
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	public Map<String, String> getAdded()
+	{
+		return added;
+	}
+
+	public Map<String, String> getUpdated()
+	{
+		return updated;
+	}
+
+	public Map<String, String> getRemoved()
+	{
+		return removed;
+	}
+
+	/**
+	 * @return true daca nu exista nicio schimbare
+	 */
+	public boolean isEmpty()
+	{
+		return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+	}
+
+	/**
+	 * Aplica schimbarile pe o copie locala a listei.
+	 * 
+	 * @param peers lista (id, nume) de actualizat
+	 */
+	public void applyTo(Map<String, String> peers)
+	{
+		for (String id : removed.keySet())
+		{
+			peers.remove(id);
+		}
+		peers.putAll(added);
+		peers.putAll(updated);
+	}
+
+	/**
+	 * @param version
+	 * @param peers lista completa (id, nume)
+	 * @return o copie completa a listei, sub forma de schimbari fata de o lista goala
+	 */
+	public static PeerDelta snapshot(long version, Map<String, String> peers)
+	{
+		return new PeerDelta(version, new HashMap<String, String>(peers), null, null);
+	}
+}